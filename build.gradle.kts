@@ -1,6 +1,7 @@
 plugins {
     id("java-library")
     id("org.allaymc.gradle.plugin") version "0.2.1"
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 group = "org.allaymc.deathchest"
@@ -26,4 +27,36 @@ allay {
 dependencies {
     compileOnly(group = "org.projectlombok", name = "lombok", version = "1.18.34")
     annotationProcessor(group = "org.projectlombok", name = "lombok", version = "1.18.34")
+    implementation(group = "com.h2database", name = "h2", version = "2.3.232")
+    testImplementation(platform("org.junit:junit-bom:5.11.4"))
+    testImplementation(group = "org.junit.jupiter", name = "junit-jupiter")
+    testRuntimeOnly(group = "org.junit.platform", name = "junit-platform-launcher")
+}
+
+// Tests run against the Allay API like the plugin does on the server
+configurations.named("testImplementation") {
+    extendsFrom(configurations.compileOnly.get())
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+// Bundle runtime dependencies (the H2 database of the "sql" storage engine) into the plugin jar
+tasks.jar {
+    from(configurations.runtimeClasspath.map { classpath -> classpath.map { zipTree(it) } })
+    duplicatesStrategy = DuplicatesStrategy.EXCLUDE
+    exclude("META-INF/*.SF", "META-INF/*.DSA", "META-INF/*.RSA")
+}
+
+// The Allay API is compileOnly for the plugin, but the benchmarks need it at runtime
+configurations.named("jmhImplementation") {
+    extendsFrom(configurations.compileOnly.get())
+}
+
+jmh {
+    jmhVersion = "1.37"
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("reports/jmh/results.json")
+    providers.gradleProperty("jmhIncludes").orNull?.let { includes.add(it) }
 }
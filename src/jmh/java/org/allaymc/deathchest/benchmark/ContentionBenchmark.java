@@ -0,0 +1,69 @@
+package org.allaymc.deathchest.benchmark;
+
+import org.allaymc.deathchest.data.ItemData;
+import org.allaymc.deathchest.serialization.BinaryChestFormat;
+import org.allaymc.deathchest.storage.StripedLocks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves of many players from all cores at once, serialized by one lock for everything (the old
+ * {@code synchronized} save) against the per-player {@link StripedLocks}.
+ * The critical section encodes the player's items, which is what a save spends its CPU time on.
+ * Run on a host with many cores; with a single core both variants are equal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(Threads.MAX)
+@Fork(1)
+public class ContentionBenchmark {
+
+    private static final int PLAYERS = 256;
+
+    @Param({"global", "striped"})
+    public String lock;
+
+    private final Object globalLock = new Object();
+    private final StripedLocks stripedLocks = StripedLocks.forPlayers();
+    private final UUID[] players = new UUID[PLAYERS];
+    private final List<List<ItemData>> items = new ArrayList<>(PLAYERS);
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < PLAYERS; i++) {
+            players[i] = UUID.randomUUID();
+            items.add(SyntheticItems.chest(players[i], random).getItems());
+        }
+    }
+
+    @Benchmark
+    public int save() throws IOException {
+        int player = ThreadLocalRandom.current().nextInt(PLAYERS);
+        Object monitor = "global".equals(lock) ? globalLock : stripedLocks.get(players[player]);
+        synchronized (monitor) {
+            return BinaryChestFormat.encodeItems(items.get(player), true).length;
+        }
+    }
+}
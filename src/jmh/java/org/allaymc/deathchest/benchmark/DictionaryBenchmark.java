@@ -0,0 +1,137 @@
+package org.allaymc.deathchest.benchmark;
+
+import org.allaymc.deathchest.serialization.BinaryChestFormat;
+import org.allaymc.deathchest.serialization.ItemDictionary;
+import org.cloudburstmc.nbt.NbtMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressing single items as the item pool stores them: uncompressed, deflate on its own and
+ * deflate primed with an {@link ItemDictionary} trained on other inventories.
+ * The compression ratio of each codec is printed once during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DictionaryBenchmark {
+
+    @Param({"raw", "deflate", "dictionary"})
+    public String codec;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+    private final Inflater inflater = new Inflater(true);
+    private ItemDictionary dictionary;
+    private byte[][] raw;
+    private byte[][] encoded;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        Random training = new Random(1);
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            for (NbtMap nbt : SyntheticItems.inventory(training)) {
+                samples.add(BinaryChestFormat.encodeNbt(nbt));
+            }
+        }
+        dictionary = ItemDictionary.train(1, samples);
+
+        Random random = new Random(42);
+        List<byte[]> items = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            for (NbtMap nbt : SyntheticItems.inventory(random)) {
+                items.add(BinaryChestFormat.encodeNbt(nbt));
+            }
+        }
+        raw = items.toArray(new byte[0][]);
+        encoded = new byte[raw.length][];
+        long rawBytes = 0;
+        long encodedBytes = 0;
+        for (int i = 0; i < raw.length; i++) {
+            encoded[i] = encode(raw[i]);
+            rawBytes += raw[i].length;
+            encodedBytes += encoded[i].length;
+        }
+        System.out.printf(Locale.US, "%n%s: %d items, %.2fx compression, dictionary %d bytes%n",
+                codec, raw.length, rawBytes / (double) encodedBytes, dictionary.size());
+    }
+
+    @Benchmark
+    public byte[] encodeItem() {
+        next = (next + 1) % raw.length;
+        return encode(raw[next]);
+    }
+
+    @Benchmark
+    public byte[] decodeItem() throws IOException {
+        next = (next + 1) % raw.length;
+        return decode(encoded[next], raw[next].length);
+    }
+
+    private byte[] encode(byte[] item) {
+        return switch (codec) {
+            case "deflate" -> deflate(item);
+            case "dictionary" -> dictionary.compress(item);
+            default -> item.clone();
+        };
+    }
+
+    private byte[] decode(byte[] item, int rawLength) throws IOException {
+        return switch (codec) {
+            case "deflate" -> inflate(item, rawLength);
+            case "dictionary" -> dictionary.decompress(item, rawLength);
+            default -> item.clone();
+        };
+    }
+
+    private byte[] deflate(byte[] item) {
+        deflater.reset();
+        deflater.setInput(item);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(item.length);
+        byte[] chunk = new byte[256];
+        while (!deflater.finished()) {
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] inflate(byte[] item, int rawLength) throws IOException {
+        inflater.reset();
+        inflater.setInput(item);
+        byte[] out = new byte[rawLength];
+        try {
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                length += inflater.inflate(out, length, rawLength - length);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,119 @@
+package org.allaymc.deathchest.benchmark;
+
+import org.allaymc.deathchest.data.ChestSummary;
+import org.allaymc.deathchest.managers.ChestIndex;
+import org.allaymc.deathchest.managers.ExpiryQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One run of {@code cleanExpiredChests} over 10k players, comparing the full scan of every
+ * player with the time-ordered {@link ExpiryQueue} the plugin uses now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExpiryBenchmark {
+
+    private static final long EXPIRATION_TIME = TimeUnit.HOURS.toMillis(24);
+    private static final int CHESTS_PER_PLAYER = 3;
+
+    @Param({"10000"})
+    public int players;
+
+    /**
+     * Number of chests that are due in this run.
+     */
+    @Param({"0", "50", "5000"})
+    public int expired;
+
+    private final long now = System.currentTimeMillis();
+    private List<ChestSummary> summaries;
+    private ChestIndex index;
+    private ExpiryQueue expiryQueue;
+
+    @Setup(Level.Trial)
+    public void createChests() {
+        Random random = new Random(42);
+        summaries = new ArrayList<>(players * CHESTS_PER_PLAYER);
+        for (int p = 0; p < players; p++) {
+            UUID playerId = UUID.randomUUID();
+            for (int c = 0; c < CHESTS_PER_PLAYER; c++) {
+                ChestSummary summary = new ChestSummary();
+                summary.setChestId(UUID.randomUUID());
+                summary.setPlayerId(playerId);
+                summary.setWorldName("world");
+                summary.setItemCount(20);
+                // Not yet due: somewhere within the last 23 hours
+                summary.setDeathTime(now - random.nextLong(TimeUnit.HOURS.toMillis(23)));
+                summaries.add(summary);
+            }
+        }
+        for (int i = 0; i < expired; i++) {
+            ChestSummary summary = summaries.get(random.nextInt(summaries.size()));
+            summary.setDeathTime(now - EXPIRATION_TIME - 1);
+        }
+    }
+
+    /**
+     * Both benchmarks remove chests, so every invocation starts from the same state.
+     */
+    @Setup(Level.Invocation)
+    public void fillIndex() {
+        index = new ChestIndex();
+        expiryQueue = new ExpiryQueue();
+        for (ChestSummary summary : summaries) {
+            index.add(summary);
+            expiryQueue.schedule(summary.getPlayerId(), summary.getChestId(), summary.getDeathTime() + EXPIRATION_TIME);
+        }
+    }
+
+    @Benchmark
+    public int fullScan() {
+        int removed = 0;
+        for (UUID playerId : index.getPlayers()) {
+            removed += index.removeIf(playerId, chest -> now - chest.getDeathTime() >= EXPIRATION_TIME).size();
+        }
+        return removed;
+    }
+
+    @Benchmark
+    public int expiryQueue() {
+        if (expiryQueue.nextExpiration() > now) {
+            return 0;
+        }
+        Map<UUID, Set<UUID>> dueByPlayer = new HashMap<>();
+        for (ExpiryQueue.Entry entry : expiryQueue.pollDue(now)) {
+            dueByPlayer.computeIfAbsent(entry.playerId(), k -> new HashSet<>()).add(entry.chestId());
+        }
+        int removed = 0;
+        for (Map.Entry<UUID, Set<UUID>> due : dueByPlayer.entrySet()) {
+            Set<UUID> dueIds = due.getValue();
+            removed += index.removeIf(due.getKey(), chest -> dueIds.contains(chest.getChestId())).size();
+        }
+        return removed;
+    }
+}
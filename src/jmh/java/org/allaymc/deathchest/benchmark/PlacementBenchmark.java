@@ -0,0 +1,149 @@
+package org.allaymc.deathchest.benchmark;
+
+import org.allaymc.deathchest.managers.PlacementPlanner;
+import org.cloudburstmc.nbt.NbtMap;
+import org.cloudburstmc.nbt.NbtMapBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Placing recovered items into an inventory: the old per-item two-pass loop of
+ * {@code giveItemToPlayer} against the {@link PlacementPlanner}.
+ * Real {@code ItemStack}s need a running server, so both work on item NBT; the legacy loop compares
+ * names the way it compared item types, the planner uses the NBT without the count as stack key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlacementBenchmark {
+
+    private static final int INVENTORY_SIZE = 36;
+    private static final int MAX_STACK_SIZE = 64;
+    private static final PlacementPlanner<NbtMap> PLANNER = new PlacementPlanner<>(new NbtView());
+
+    /**
+     * empty: nothing in the inventory; partial: some slots hold partial stacks of the same items;
+     * fragmented: every other slot holds a partial stack.
+     */
+    @Param({"empty", "partial", "fragmented"})
+    public String inventory;
+
+    private List<NbtMap> items;
+    private String[] initialNames;
+    private int[] initialCounts;
+    private List<NbtMap> initialSlots;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        items = SyntheticItems.inventory(random).subList(0, 16);
+        initialNames = new String[INVENTORY_SIZE];
+        initialCounts = new int[INVENTORY_SIZE];
+        int step = switch (inventory) {
+            case "empty" -> 0;
+            case "partial" -> 6;
+            case "fragmented" -> 2;
+            default -> throw new IllegalArgumentException("Unknown inventory: " + inventory);
+        };
+        NbtMap[] slots = new NbtMap[INVENTORY_SIZE];
+        for (int slot = 0; step > 0 && slot < INVENTORY_SIZE; slot += step) {
+            NbtMap stack = SyntheticItems.stack(random);
+            initialNames[slot] = stack.getString("Name");
+            initialCounts[slot] = 1 + random.nextInt(MAX_STACK_SIZE - 1);
+            slots[slot] = stack.toBuilder().putByte("Count", (byte) initialCounts[slot]).build();
+        }
+        initialSlots = Arrays.asList(slots);
+    }
+
+    @Benchmark
+    public PlacementPlanner.Plan<NbtMap> planner() {
+        return PLANNER.plan(initialSlots, items);
+    }
+
+    @Benchmark
+    public int legacyLoop() {
+        String[] names = initialNames.clone();
+        int[] counts = initialCounts.clone();
+        int placed = 0;
+        for (NbtMap item : items) {
+            if (give(names, counts, item.getString("Name"), item.getByte("Count"))) {
+                placed++;
+            }
+        }
+        return placed;
+    }
+
+    private static boolean give(String[] names, int[] counts, String name, int count) {
+        int remaining = count;
+
+        // First pass: stack with existing items of the same type
+        for (int i = 0; i < names.length && remaining > 0; i++) {
+            if (name.equals(names[i])) {
+                int canAdd = Math.min(MAX_STACK_SIZE - counts[i], remaining);
+                if (canAdd > 0) {
+                    counts[i] += canAdd;
+                    remaining -= canAdd;
+                }
+            }
+        }
+
+        // Second pass: fill empty slots
+        for (int i = 0; i < names.length && remaining > 0; i++) {
+            if (names[i] == null) {
+                int toAdd = Math.min(MAX_STACK_SIZE, remaining);
+                names[i] = name;
+                counts[i] = toAdd;
+                remaining -= toAdd;
+            }
+        }
+        return remaining == 0;
+    }
+
+    private static final class NbtView implements PlacementPlanner.ItemView<NbtMap> {
+
+        @Override
+        public boolean isEmpty(NbtMap item) {
+            return item == null;
+        }
+
+        @Override
+        public Object getType(NbtMap item) {
+            return item.getString("Name");
+        }
+
+        @Override
+        public int getCount(NbtMap item) {
+            return item.getByte("Count");
+        }
+
+        @Override
+        public int getMaxStackSize(NbtMap item) {
+            // Tools and books carry a tag and do not stack, like in the game
+            return item.containsKey("tag") ? 1 : MAX_STACK_SIZE;
+        }
+
+        @Override
+        public Object getStackKey(NbtMap item) {
+            NbtMapBuilder builder = item.toBuilder();
+            builder.remove("Count");
+            return builder.build();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.allaymc.deathchest.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.data.ItemData;
+import org.allaymc.deathchest.serialization.BinaryChestFormat;
+import org.allaymc.deathchest.serialization.NbtMapAdapter;
+import org.cloudburstmc.nbt.NbtMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a full death inventory into stored bytes and back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final Type ITEM_LIST = new TypeToken<List<ItemData>>() {}.getType();
+
+    @Param({"false", "true"})
+    public boolean compress;
+
+    private final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(NbtMap.class, new NbtMapAdapter())
+            .create();
+
+    private List<NbtMap> inventory;
+    private List<ItemData> items;
+    private String json;
+    private byte[] binary;
+
+    @Setup
+    public void setup() throws IOException {
+        inventory = SyntheticItems.inventory(new Random(42));
+        items = wrap(inventory);
+        json = gson.toJson(items, ITEM_LIST);
+        binary = BinaryChestFormat.encodeItems(items, compress);
+    }
+
+    /**
+     * What {@code DeathListener} does with the NBT of every non-empty slot,
+     * followed by the encoding the store performs when the chest is written.
+     */
+    @Benchmark
+    public byte[] captureInventory() throws IOException {
+        ChestData chest = new ChestData();
+        chest.setChestId(UUID.randomUUID());
+        chest.setDeathTime(System.currentTimeMillis());
+        chest.setItems(wrap(inventory));
+        return BinaryChestFormat.encodeItems(chest.getItems(), compress);
+    }
+
+    @Benchmark
+    public String jsonSerialize() {
+        return gson.toJson(items, ITEM_LIST);
+    }
+
+    @Benchmark
+    public List<ItemData> jsonDeserialize() {
+        return gson.fromJson(json, ITEM_LIST);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() throws IOException {
+        return BinaryChestFormat.encodeItems(items, compress);
+    }
+
+    @Benchmark
+    public List<ItemData> binaryDecode() throws IOException {
+        return BinaryChestFormat.decodeItems(binary, items.size(), compress);
+    }
+
+    private static List<ItemData> wrap(List<NbtMap> inventory) {
+        List<ItemData> items = new ArrayList<>(inventory.size());
+        for (NbtMap nbt : inventory) {
+            ItemData item = new ItemData();
+            item.setNbtData(nbt);
+            items.add(item);
+        }
+        return items;
+    }
+}
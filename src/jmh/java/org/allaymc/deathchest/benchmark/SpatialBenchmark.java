@@ -0,0 +1,91 @@
+package org.allaymc.deathchest.benchmark;
+
+import org.allaymc.deathchest.data.ChestSummary;
+import org.allaymc.deathchest.managers.ChestIndex;
+import org.allaymc.deathchest.managers.SpatialIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code /deathchest near} over a few hundred thousand chests: the {@link SpatialIndex} grid
+ * against scanning every indexed chest. Deaths cluster around spawn like on a real server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpatialBenchmark {
+
+    private static final String WORLD = "world";
+    private static final double SPREAD = 3000;
+
+    @Param({"300000"})
+    public int chests;
+
+    @Param({"32", "256", "2048"})
+    public int radius;
+
+    private ChestIndex index;
+    private List<ChestSummary> all;
+    private double x;
+    private double z;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        index = new ChestIndex();
+        all = new ArrayList<>(chests);
+        for (int i = 0; i < chests; i++) {
+            ChestSummary summary = new ChestSummary();
+            summary.setChestId(UUID.randomUUID());
+            summary.setPlayerId(new UUID(0, random.nextInt(chests / 3)));
+            summary.setWorldName(WORLD);
+            summary.setX(random.nextGaussian() * SPREAD);
+            summary.setY(64);
+            summary.setZ(random.nextGaussian() * SPREAD);
+            index.add(summary);
+            all.add(summary);
+        }
+        x = random.nextGaussian() * SPREAD;
+        z = random.nextGaussian() * SPREAD;
+    }
+
+    @Benchmark
+    public List<ChestSummary> grid() {
+        return index.getSpatialIndex().findNear(WORLD, 0, x, z, radius, chest -> true);
+    }
+
+    @Benchmark
+    public List<ChestSummary> fullScan() {
+        double radiusSquared = (double) radius * radius;
+        List<ChestSummary> result = new ArrayList<>();
+        for (ChestSummary chest : all) {
+            double dx = chest.getX() - x;
+            double dz = chest.getZ() - z;
+            if (WORLD.equals(chest.getWorldName()) && chest.getDimensionId() == 0 && dx * dx + dz * dz <= radiusSquared) {
+                result.add(chest);
+            }
+        }
+        result.sort((a, b) -> Double.compare(
+                (a.getX() - x) * (a.getX() - x) + (a.getZ() - z) * (a.getZ() - z),
+                (b.getX() - x) * (b.getX() - x) + (b.getZ() - z) * (b.getZ() - z)));
+        return result;
+    }
+}
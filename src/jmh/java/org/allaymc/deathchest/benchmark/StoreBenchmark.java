@@ -0,0 +1,128 @@
+package org.allaymc.deathchest.benchmark;
+
+import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.serialization.BinaryChestFormat;
+import org.allaymc.deathchest.serialization.JsonChestFormat;
+import org.allaymc.deathchest.storage.ChestStore;
+import org.allaymc.deathchest.storage.PlayerFileStore;
+import org.allaymc.deathchest.storage.SegmentedChestStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Saving and loading one player's chests with every storage engine.
+ * <p>
+ * Each save replaces the player's newest chest with a fresh one, the way a death followed
+ * by the expiry of an old chest changes the list between two writes.
+ * <p>
+ * The engines run without the item pool, so items are stored inline; for {@code log} that means loads
+ * decode them from the mapped segments. With {@code deduplicateItems} enabled, as by default, item NBT
+ * is read from the pool file instead and these numbers only cover the chest records.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StoreBenchmark.class);
+    private static final int FRESH_CHESTS = 64;
+
+    @Param({"files-json", "files-binary", "log"})
+    public String engine;
+
+    @Param({"1", "10", "100"})
+    public int chestsPerPlayer;
+
+    private Path folder;
+    private ChestStore store;
+    private final UUID savedPlayer = UUID.randomUUID();
+    private final UUID loadedPlayer = UUID.randomUUID();
+    private List<ChestData> chests;
+    private final List<ChestData> freshChests = new ArrayList<>();
+    private int nextFresh;
+
+    @Setup
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("deathchest-bench");
+        store = switch (engine) {
+            case "files-json" -> new PlayerFileStore(folder, new JsonChestFormat(), List.of(), LOGGER);
+            case "files-binary" -> new PlayerFileStore(folder, new BinaryChestFormat(true), List.of(), LOGGER);
+            case "log" -> new SegmentedChestStore(folder, 16L * 1024 * 1024, true, LOGGER);
+            default -> throw new IllegalArgumentException("Unknown engine: " + engine);
+        };
+        store.scan(summary -> {
+        });
+
+        Random random = new Random(42);
+        chests = new ArrayList<>(chestsPerPlayer);
+        List<ChestData> loaded = new ArrayList<>(chestsPerPlayer);
+        for (int i = 0; i < chestsPerPlayer; i++) {
+            chests.add(SyntheticItems.chest(savedPlayer, random));
+            loaded.add(SyntheticItems.chest(loadedPlayer, random));
+        }
+        for (int i = 0; i < FRESH_CHESTS; i++) {
+            freshChests.add(SyntheticItems.chest(savedPlayer, random));
+        }
+        store.save(savedPlayer, chests);
+        store.save(loadedPlayer, loaded);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(folder)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public void savePlayerChests() throws IOException {
+        ChestData fresh = freshChests.get(nextFresh++ % FRESH_CHESTS);
+        ChestData copy = new ChestData();
+        copy.setChestId(UUID.randomUUID());
+        copy.setPlayerId(fresh.getPlayerId());
+        copy.setPlayerName(fresh.getPlayerName());
+        copy.setWorldName(fresh.getWorldName());
+        copy.setDeathTime(fresh.getDeathTime());
+        copy.setX(fresh.getX());
+        copy.setY(fresh.getY());
+        copy.setZ(fresh.getZ());
+        copy.setDimensionId(fresh.getDimensionId());
+        copy.setItems(fresh.getItems());
+        chests.set(chests.size() - 1, copy);
+        store.save(savedPlayer, chests);
+    }
+
+    @Benchmark
+    public List<ChestData> loadPlayerChests() throws IOException {
+        return store.load(loadedPlayer);
+    }
+}
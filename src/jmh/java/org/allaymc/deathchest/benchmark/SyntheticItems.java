@@ -0,0 +1,139 @@
+package org.allaymc.deathchest.benchmark;
+
+import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.data.ItemData;
+import org.cloudburstmc.nbt.NbtMap;
+import org.cloudburstmc.nbt.NbtType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Builds item NBT shaped like what {@code ItemStack.saveNBT()} produces, so the benchmarks
+ * work on realistic payloads without a running server.
+ */
+public final class SyntheticItems {
+
+    /**
+     * Main inventory + armor + offhand, the slots {@code DeathListener.collectItems} empties.
+     */
+    public static final int INVENTORY_SLOTS = 36 + 4 + 1;
+
+    private static final String[] TOOLS = {
+            "minecraft:diamond_sword", "minecraft:netherite_pickaxe", "minecraft:diamond_axe",
+            "minecraft:bow", "minecraft:trident", "minecraft:netherite_chestplate"
+    };
+    private static final String[] STACKABLES = {
+            "minecraft:cobblestone", "minecraft:oak_log", "minecraft:torch", "minecraft:cooked_beef",
+            "minecraft:iron_ingot", "minecraft:redstone", "minecraft:arrow", "minecraft:ender_pearl"
+    };
+
+    private SyntheticItems() {
+    }
+
+    /**
+     * A full death inventory: mostly stacks, a few enchanted tools and books and one shulker box.
+     */
+    public static List<NbtMap> inventory(Random random) {
+        List<NbtMap> items = new ArrayList<>(INVENTORY_SLOTS);
+        for (int slot = 0; slot < INVENTORY_SLOTS; slot++) {
+            int kind = random.nextInt(20);
+            if (kind < 3) {
+                items.add(enchantedTool(random));
+            } else if (kind < 5) {
+                items.add(enchantedBook(random));
+            } else if (kind == 5) {
+                items.add(shulkerBox(random));
+            } else {
+                items.add(stack(random));
+            }
+        }
+        return items;
+    }
+
+    public static ChestData chest(UUID playerId, Random random) {
+        List<ItemData> items = new ArrayList<>();
+        for (NbtMap nbt : inventory(random)) {
+            ItemData item = new ItemData();
+            item.setNbtData(nbt);
+            items.add(item);
+        }
+
+        ChestData chest = new ChestData();
+        chest.setChestId(UUID.randomUUID());
+        chest.setPlayerId(playerId);
+        chest.setPlayerName("Player" + (playerId.getLeastSignificantBits() & 0xFFFF));
+        chest.setWorldName("world");
+        chest.setDeathTime(System.currentTimeMillis() - random.nextInt(3_600_000));
+        chest.setX(random.nextInt(20_000) - 10_000);
+        chest.setY(random.nextInt(300) - 60);
+        chest.setZ(random.nextInt(20_000) - 10_000);
+        chest.setDimensionId(random.nextInt(3));
+        chest.setItems(items);
+        return chest;
+    }
+
+    public static NbtMap stack(Random random) {
+        return item(STACKABLES[random.nextInt(STACKABLES.length)], 1 + random.nextInt(64), 0, null);
+    }
+
+    public static NbtMap enchantedTool(Random random) {
+        NbtMap tag = NbtMap.builder()
+                .putInt("Damage", random.nextInt(1500))
+                .putInt("RepairCost", 3)
+                .putList("ench", NbtType.COMPOUND, enchantments(random, 2 + random.nextInt(4)))
+                .putCompound("display", NbtMap.builder()
+                        .putString("Name", "Trusty Tool #" + random.nextInt(1000))
+                        .putList("Lore", NbtType.STRING, List.of("Forged in the nether", "Do not lose"))
+                        .build())
+                .build();
+        return item(TOOLS[random.nextInt(TOOLS.length)], 1, 0, tag);
+    }
+
+    public static NbtMap enchantedBook(Random random) {
+        NbtMap tag = NbtMap.builder()
+                .putList("ench", NbtType.COMPOUND, enchantments(random, 1 + random.nextInt(2)))
+                .build();
+        return item("minecraft:enchanted_book", 1, 0, tag);
+    }
+
+    /**
+     * A shulker box holding a full set of nested items, the largest payload a single slot can carry.
+     */
+    public static NbtMap shulkerBox(Random random) {
+        List<NbtMap> contents = new ArrayList<>(27);
+        for (int slot = 0; slot < 27; slot++) {
+            NbtMap nested = random.nextInt(4) == 0 ? enchantedTool(random) : stack(random);
+            contents.add(nested.toBuilder().putByte("Slot", (byte) slot).build());
+        }
+        NbtMap tag = NbtMap.builder()
+                .putList("Items", NbtType.COMPOUND, contents)
+                .build();
+        return item("minecraft:shulker_box", 1, random.nextInt(16), tag);
+    }
+
+    private static List<NbtMap> enchantments(Random random, int count) {
+        List<NbtMap> enchantments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            enchantments.add(NbtMap.builder()
+                    .putShort("id", (short) random.nextInt(37))
+                    .putShort("lvl", (short) (1 + random.nextInt(5)))
+                    .build());
+        }
+        return enchantments;
+    }
+
+    private static NbtMap item(String name, int count, int damage, NbtMap tag) {
+        var builder = NbtMap.builder()
+                .putString("Name", name)
+                .putByte("Count", (byte) count)
+                .putShort("Damage", (short) damage)
+                .putByte("WasPickedUp", (byte) 0);
+        if (tag != null) {
+            builder.putCompound("tag", tag);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,201 @@
+package org.allaymc.deathchest.benchmark;
+
+import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.serialization.BinaryChestFormat;
+import org.allaymc.deathchest.serialization.JsonChestFormat;
+import org.allaymc.deathchest.storage.ChestStore;
+import org.allaymc.deathchest.storage.PlayerFileStore;
+import org.allaymc.deathchest.storage.SegmentedChestStore;
+import org.allaymc.deathchest.storage.SqlChestStore;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Bytes written to disk for a single chest change, depending on how many chests the player already has.
+ * <p>
+ * Every operation is one save followed by a sync, as the write-behind queue does it: adding a chest,
+ * marking one recovered, or dropping one (expired or archived). The {@code bytesPerWrite} counter
+ * is the average number of bytes the process handed to the OS per operation in the iteration, read
+ * from {@code /proc/self/io}, so temporary files, renames and database pages are all included.
+ * It stays 0 on systems without that file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteAmplificationBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteAmplificationBenchmark.class);
+    private static final int FRESH_CHESTS = 64;
+    private static final Path PROCESS_IO = Path.of("/proc/self/io");
+
+    @Param({"files-binary", "files-json", "log", "sql"})
+    public String engine;
+
+    @Param({"1", "50", "500"})
+    public int historicalChests;
+
+    @Param({"add", "recover", "expire"})
+    public String operation;
+
+    /**
+     * Reported next to the time per operation; reset at every iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Written {
+        public long bytesPerWrite;
+        long totalBytes;
+        long writes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytesPerWrite = 0;
+            totalBytes = 0;
+            writes = 0;
+        }
+
+        void add(long bytes) {
+            totalBytes += bytes;
+            writes++;
+            bytesPerWrite = totalBytes / writes;
+        }
+    }
+
+    private Path folder;
+    private ChestStore store;
+    private final UUID playerId = UUID.randomUUID();
+    private List<ChestData> chests;
+    private final List<ChestData> freshChests = new ArrayList<>();
+    private int nextFresh;
+    private ChestData changed;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("deathchest-bench");
+        store = switch (engine) {
+            case "files-binary" -> new PlayerFileStore(folder, new BinaryChestFormat(true), List.of(), LOGGER);
+            case "files-json" -> new PlayerFileStore(folder, new JsonChestFormat(), List.of(), LOGGER);
+            // Large enough that no segment is sealed or compacted during a run
+            case "log" -> new SegmentedChestStore(folder, 1L << 30, true, LOGGER);
+            case "sql" -> new SqlChestStore(folder, true, LOGGER);
+            default -> throw new IllegalArgumentException("Unknown engine: " + engine);
+        };
+        store.scan(summary -> {
+        });
+
+        Random random = new Random(42);
+        chests = new ArrayList<>(historicalChests + 1);
+        for (int i = 0; i < historicalChests; i++) {
+            chests.add(SyntheticItems.chest(playerId, random));
+        }
+        for (int i = 0; i < FRESH_CHESTS; i++) {
+            freshChests.add(SyntheticItems.chest(playerId, random));
+        }
+        store.save(playerId, chests);
+        store.sync();
+    }
+
+    /**
+     * Brings the player back to their historical chests, plus the chest to change unless it is being added.
+     * Not measured.
+     */
+    @Setup(Level.Invocation)
+    public void prepare() throws IOException {
+        if (changed != null) {
+            chests.remove(changed);
+        }
+        changed = freshCopy();
+        if (!operation.equals("add")) {
+            chests.add(changed);
+        }
+        store.save(playerId, chests);
+        store.sync();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(folder)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public void writeOneChange(Written written) throws IOException {
+        long before = writtenBytes();
+        switch (operation) {
+            case "add" -> chests.add(changed);
+            case "recover" -> changed.setRecovered(true);
+            case "expire" -> {
+                chests.remove(changed);
+                changed = null;
+            }
+            default -> throw new IllegalArgumentException("Unknown operation: " + operation);
+        }
+        store.save(playerId, chests);
+        store.sync();
+        written.add(writtenBytes() - before);
+    }
+
+    private ChestData freshCopy() {
+        ChestData fresh = freshChests.get(nextFresh++ % FRESH_CHESTS);
+        ChestData copy = new ChestData();
+        copy.setChestId(UUID.randomUUID());
+        copy.setPlayerId(fresh.getPlayerId());
+        copy.setPlayerName(fresh.getPlayerName());
+        copy.setWorldName(fresh.getWorldName());
+        copy.setDeathTime(fresh.getDeathTime());
+        copy.setX(fresh.getX());
+        copy.setY(fresh.getY());
+        copy.setZ(fresh.getZ());
+        copy.setDimensionId(fresh.getDimensionId());
+        copy.setItems(fresh.getItems());
+        return copy;
+    }
+
+    /**
+     * Bytes this process has passed to write calls so far ({@code wchar}), or 0 if unknown.
+     */
+    private static long writtenBytes() {
+        try {
+            for (String line : Files.readAllLines(PROCESS_IO)) {
+                if (line.startsWith("wchar:")) {
+                    return Long.parseLong(line.substring("wchar:".length()).trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not Linux, or /proc is not mounted
+        }
+        return 0;
+    }
+}
@@ -4,8 +4,12 @@ import org.allaymc.api.plugin.Plugin;
 import org.allaymc.api.registry.Registries;
 import org.allaymc.api.server.Server;
 import org.allaymc.deathchest.commands.DeathChestCommand;
+import org.allaymc.deathchest.config.DeathChestConfig;
 import org.allaymc.deathchest.listeners.DeathListener;
+import org.allaymc.deathchest.listeners.PhysicalChestListener;
+import org.allaymc.deathchest.listeners.SessionListener;
 import org.allaymc.deathchest.managers.ChestManager;
+import org.allaymc.deathchest.metrics.MetricsReporter;
 
 import java.util.Set;
 import java.util.UUID;
@@ -14,7 +18,9 @@ import java.util.concurrent.ConcurrentHashMap;
 public class DeathChestPlugin extends Plugin {
 
     private static DeathChestPlugin instance;
+    private DeathChestConfig config;
     private ChestManager chestManager;
+    private MetricsReporter metricsReporter;
     private final Set<String> activeCleanupTasks = ConcurrentHashMap.newKeySet();
     
     @Override
@@ -26,11 +32,19 @@ public class DeathChestPlugin extends Plugin {
     @Override
     public void onEnable() {
         this.pluginLogger.info("DeathChest is enabling...");
+        this.config = DeathChestConfig.load(getPluginContainer().dataFolder().resolve("config.json"), this.pluginLogger);
         this.chestManager = new ChestManager(this);
         Server.getInstance().getEventBus().registerListener(new DeathListener(this));
+        Server.getInstance().getEventBus().registerListener(new SessionListener(this));
+        if (config.isPhysicalChests()) {
+            Server.getInstance().getEventBus().registerListener(new PhysicalChestListener(this));
+            // Chunks loaded before the listener existed, e.g. spawn chunks or after a reload
+            chestManager.getPhysicalChests().scanLoadedChunks();
+        }
         Registries.COMMANDS.register(new DeathChestCommand(this));
 
-        // Schedule periodic cleanup of expired chests (every 30 minutes = 36000 ticks)
+        // Expire chests as they become due (checked every second = 20 ticks).
+        // Each run only touches the chests that are due, so running it often is cheap.
         String taskId = UUID.randomUUID().toString();
         activeCleanupTasks.add(taskId);
         Server.getInstance().getScheduler().scheduleRepeating(this, () -> {
@@ -41,7 +55,23 @@ public class DeathChestPlugin extends Plugin {
                 this.chestManager.cleanExpiredChests();
             }
             return true;
-        }, 36000);
+        }, 20);
+
+        // Drop idle players from the chest cache (every minute = 1200 ticks)
+        Server.getInstance().getScheduler().scheduleRepeating(this, () -> {
+            if (!activeCleanupTasks.contains(taskId)) {
+                return false;
+            }
+            if (this.chestManager != null) {
+                this.chestManager.evictIdlePlayers();
+            }
+            return true;
+        }, 1200);
+
+        if (config.getMetricsIntervalSeconds() > 0) {
+            this.metricsReporter = new MetricsReporter(getPluginContainer().dataFolder().resolve("metrics.log"),
+                    chestManager::collectMetrics, config.getMetricsIntervalSeconds(), this.pluginLogger);
+        }
 
         this.pluginLogger.info("DeathChest enabled successfully!");
     }
@@ -51,8 +81,12 @@ public class DeathChestPlugin extends Plugin {
         this.pluginLogger.info("DeathChest is disabling...");
         // Stop all cleanup tasks by clearing the tracking set
         activeCleanupTasks.clear();
+        if (this.metricsReporter != null) {
+            this.metricsReporter.close();
+            this.metricsReporter = null;
+        }
         if (this.chestManager != null) {
-            this.chestManager.saveAllChests();
+            this.chestManager.shutdown();
         }
         this.pluginLogger.info("DeathChest disabled!");
     }
@@ -64,4 +98,8 @@ public class DeathChestPlugin extends Plugin {
     public ChestManager getChestManager() {
         return this.chestManager;
     }
+    
+    public DeathChestConfig getDeathChestConfig() {
+        return this.config;
+    }
 }
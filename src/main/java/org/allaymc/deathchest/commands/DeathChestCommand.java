@@ -1,19 +1,36 @@
 package org.allaymc.deathchest.commands;
 
 import org.allaymc.api.command.Command;
+import org.allaymc.api.command.CommandSender;
 import org.allaymc.api.command.tree.CommandTree;
 import org.allaymc.api.entity.interfaces.EntityPlayer;
+import org.allaymc.api.world.Dimension;
 import org.allaymc.deathchest.DeathChestPlugin;
 import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.data.ChestSummary;
+import org.allaymc.deathchest.data.ItemData;
+import org.allaymc.deathchest.managers.ChestListing;
 import org.allaymc.deathchest.managers.ChestManager;
+import org.allaymc.deathchest.storage.ChestArchive;
+import org.allaymc.deathchest.storage.FormatConverter;
+import org.cloudburstmc.nbt.NbtMap;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Predicate;
 
 public class DeathChestCommand extends Command {
     
+    public static final String ADMIN_PERMISSION = "deathchest.admin";
+    private static final int MAX_LISTED_ITEMS = 20;
+    private static final int MAX_LISTED_CHESTS = 20;
+    private static final String STILL_STORING = "§eThat death chest is still being stored, try again in a moment.";
+    
     private final DeathChestPlugin plugin;
     private final ChestManager chestManager;
     
@@ -28,33 +45,30 @@ public class DeathChestCommand extends Command {
     public void prepareCommandTree(CommandTree tree) {
         tree.getRoot()
             .key("list")
+            .intNum("page", 1)
+            .optional()
             .exec(context -> {
                 if (!(context.getSender() instanceof EntityPlayer player)) {
                     context.getSender().sendMessage("§cThis command can only be used by players!");
                     return context.fail();
                 }
                 
-                List<ChestData> chests = chestManager.getPlayerChests(player.getUniqueId());
+                int requested = context.getResult(1);
+                ChestListing.Page page = chestManager.getChestPage(player.getUniqueId(), requested);
                 
-                if (chests.isEmpty()) {
+                if (page.total() == 0) {
                     player.sendMessage("§7You have no death chests.");
                     return context.success();
                 }
                 
-                player.sendMessage("§6=== Your Death Chests ===");
-                
-                // Use locale-independent format to avoid issues on non-English systems
-                SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm", java.util.Locale.US);
-                
-                for (int i = 0; i < chests.size(); i++) {
-                    ChestData chest = chests.get(i);
-                    String dateStr = sdf.format(new Date(chest.getDeathTime()));
-                    int itemCount = chest.getItems() != null ? chest.getItems().size() : 0;
-                    player.sendMessage("§e[" + (i + 1) + "] §f" + chest.getWorldName() +
-                        " §7(§f" + (int)chest.getX() + ", " + (int)chest.getY() + ", " + (int)chest.getZ() + "§7)" +
-                        " §7- " + dateStr + " §7- " + itemCount + " items §7- ID: §f" + chest.getChestId().toString().substring(0, 8));
+                player.sendMessage("§6=== Your Death Chests (" + page.total() + ") - Page " + page.page() + "/" + page.pageCount() + " ===");
+                for (int i = 0; i < page.lines().size(); i++) {
+                    player.sendMessage("§e[" + (page.firstRank() + i) + "] " + page.lines().get(i));
                 }
                 
+                if (page.page() < page.pageCount()) {
+                    player.sendMessage("§7Use §e/deathchest list " + (page.page() + 1) + " §7for older chests");
+                }
                 player.sendMessage("§7Use §e/deathchest recover <id> §7to recover items");
                 return context.success();
             })
@@ -67,28 +81,18 @@ public class DeathChestCommand extends Command {
                     return context.fail();
                 }
                 
-                String chestIdStr = context.getResult(1);
-                UUID chestId;
-                
-                try {
-                    chestId = UUID.fromString(chestIdStr);
-                } catch (IllegalArgumentException e) {
-                    List<ChestData> chests = chestManager.getPlayerChests(player.getUniqueId());
-                    chestId = null;
-                    
-                    for (ChestData chest : chests) {
-                        if (chest.getChestId().toString().startsWith(chestIdStr.toLowerCase())) {
-                            chestId = chest.getChestId();
-                            break;
-                        }
-                    }
-                    
-                    if (chestId == null) {
-                        player.sendMessage("§cInvalid chest ID! Use §e/deathchest list §cto see valid IDs.");
-                        return context.fail();
-                    }
+                UUID playerId = player.getUniqueId();
+                chestManager.ensureIndexed(playerId);
+                UUID chestId = resolveChestId(player, context.getResult(1),
+                    chest -> chest.getPlayerId().equals(playerId) && chestManager.isActive(chest));
+                if (chestId == null) {
+                    return context.fail();
                 }
                 
+                if (chestManager.isStoring(chestId)) {
+                    player.sendMessage(STILL_STORING);
+                    return context.fail();
+                }
                 if (chestManager.recoverChest(player, chestId)) {
                     return context.success();
                 } else {
@@ -100,20 +104,414 @@ public class DeathChestCommand extends Command {
             .key("help")
             .exec(context -> {
                 context.getSender().sendMessage("§6=== DeathChest Help ===");
-                context.getSender().sendMessage("§e/deathchest list §7- List all your death chests");
+                context.getSender().sendMessage("§e/deathchest list [page] §7- List your death chests, newest first");
                 context.getSender().sendMessage("§e/deathchest recover <id> §7- Recover items from a death chest");
                 context.getSender().sendMessage("§e/deathchest help §7- Show this help message");
+                if (isAdmin(context.getSender())) {
+                    context.getSender().sendMessage("§e/deathchest admin convert §7- Convert chest files to the configured storage format");
+                    context.getSender().sendMessage("§e/deathchest admin reload §7- Reload retention.json and apply it to existing chests");
+                    context.getSender().sendMessage("§e/deathchest admin info <id> §7- Show any player's death chest");
+                    context.getSender().sendMessage("§e/deathchest admin recover <id> §7- Recover any player's death chest into your inventory");
+                    context.getSender().sendMessage("§e/deathchest admin delete <id> §7- Delete any player's death chest");
+                    context.getSender().sendMessage("§e/deathchest admin migrate <from> <to> §7- Copy all chests to another storage engine");
+                    context.getSender().sendMessage("§e/deathchest admin export <file> [filter] §7- Write chests to a file in exports/");
+                    context.getSender().sendMessage("§e/deathchest admin import <file> [filter] §7- Add the chests of a file in exports/, skipping existing ones");
+                    context.getSender().sendMessage("§e/deathchest near <radius> §7- List death chests around you");
+                    context.getSender().sendMessage("§e/deathchest area <x1> <z1> <x2> <z2> §7- List death chests in an area");
+                    context.getSender().sendMessage("§e/deathchest history <player> §7- Show a player's recovered, expired and deleted chests");
+                    context.getSender().sendMessage("§e/deathchest stats §7- Show performance counters and memory usage");
+                }
                 context.getSender().sendMessage("§7");
-                context.getSender().sendMessage("§7Death chests expire after 24 hours.");
+                context.getSender().sendMessage("§7Death chests expire after " + describeMinutes(chestManager.getPolicy().getExpirationMinutes()) + ".");
+                return context.success();
+            })
+            .root()
+            .key("admin")
+            .key("convert")
+            .exec(context -> {
+                if (!checkAdmin(context.getSender())) {
+                    return context.fail();
+                }
+                
+                CommandSender sender = context.getSender();
+                try {
+                    chestManager.convertLegacyFiles(sender::sendMessage);
+                } catch (IllegalStateException e) {
+                    sender.sendMessage("§c" + e.getMessage());
+                    return context.fail();
+                }
+                sender.sendMessage("§7Converting chest files to " + chestManager.getFormat().getName() + " format in the background...");
+                return context.success();
+            })
+            .up()
+            .key("reload")
+            .exec(context -> {
+                if (!checkAdmin(context.getSender())) {
+                    return context.fail();
+                }
+                
+                context.getSender().sendMessage("§7Reloading the retention policy...");
+                chestManager.reloadPolicy(context.getSender()::sendMessage);
+                return context.success();
+            })
+            .up()
+            .key("info")
+            .str("chestId")
+            .exec(context -> {
+                if (!checkAdmin(context.getSender())) {
+                    return context.fail();
+                }
+                
+                CommandSender sender = context.getSender();
+                UUID chestId = resolveChestId(sender, context.getResult(2), chest -> true);
+                if (chestId == null) {
+                    return context.fail();
+                }
+                if (chestManager.isStoring(chestId)) {
+                    sender.sendMessage(STILL_STORING);
+                    return context.fail();
+                }
+                ChestSummary summary = chestManager.getIndex().findById(chestId);
+                ChestData chest = chestManager.getChest(chestId);
+                if (summary == null || chest == null) {
+                    sender.sendMessage("§cCould not load that chest.");
+                    return context.fail();
+                }
+                
+                sender.sendMessage("§6=== Death Chest " + chestId + " ===");
+                sender.sendMessage("§7Owner: §f" + summary.getPlayerName() + " §7(" + summary.getPlayerId() + ")");
+                sender.sendMessage("§7Location: §f" + summary.getWorldName() + " §7(§f" + (int) summary.getX() + ", "
+                    + (int) summary.getY() + ", " + (int) summary.getZ() + "§7)");
+                sender.sendMessage("§7Died: §f" + formatTime(summary.getDeathTime()) + " §7- " + describeStatus(summary));
+                List<ItemData> items = chest.getItems() != null ? chest.getItems() : List.of();
+                sender.sendMessage("§7Items: §f" + items.size());
+                for (int i = 0; i < Math.min(items.size(), MAX_LISTED_ITEMS); i++) {
+                    NbtMap nbt = items.get(i).getNbtData();
+                    sender.sendMessage(nbt != null
+                        ? "§7- §f" + nbt.getByte("Count", (byte) 1) + "x " + nbt.getString("Name", "unknown")
+                        : "§7- §cunreadable item");
+                }
+                if (items.size() > MAX_LISTED_ITEMS) {
+                    sender.sendMessage("§7... and " + (items.size() - MAX_LISTED_ITEMS) + " more");
+                }
+                return context.success();
+            })
+            .up(2)
+            .key("recover")
+            .str("chestId")
+            .exec(context -> {
+                if (!checkAdmin(context.getSender())) {
+                    return context.fail();
+                }
+                if (!(context.getSender() instanceof EntityPlayer player)) {
+                    context.getSender().sendMessage("§cThis command can only be used by players!");
+                    return context.fail();
+                }
+                
+                UUID chestId = resolveChestId(player, context.getResult(2), chestManager::isActive);
+                if (chestId == null) {
+                    return context.fail();
+                }
+                if (chestManager.recoverAnyChest(player, chestId)) {
+                    return context.success();
+                } else {
+                    player.sendMessage("§cCould not recover chest. It may have expired, already been recovered, or your inventory is full.");
+                    return context.fail();
+                }
+            })
+            .up(2)
+            .key("migrate")
+            .str("from")
+            .str("to")
+            .exec(context -> {
+                if (!checkAdmin(context.getSender())) {
+                    return context.fail();
+                }
+                
+                CommandSender sender = context.getSender();
+                String from = context.getResult(2);
+                String to = context.getResult(3);
+                try {
+                    chestManager.migrate(from, to, sender::sendMessage);
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    sender.sendMessage("§c" + e.getMessage());
+                    return context.fail();
+                }
+                sender.sendMessage("§7Migrating chests from " + from + " to " + to + " in the background...");
+                return context.success();
+            })
+            .up(3)
+            .key("export")
+            .str("file")
+            .str("filter", "")
+            .optional()
+            .exec(context -> {
+                if (!checkAdmin(context.getSender())) {
+                    return context.fail();
+                }
+                
+                CommandSender sender = context.getSender();
+                String file = context.getResult(2);
+                try {
+                    chestManager.exportChests(file, context.getResult(3), sender::sendMessage);
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    sender.sendMessage("§c" + e.getMessage());
+                    return context.fail();
+                }
+                sender.sendMessage("§7Exporting chests to exports/" + file + " in the background...");
+                return context.success();
+            })
+            .up(3)
+            .key("import")
+            .str("file")
+            .str("filter", "")
+            .optional()
+            .exec(context -> {
+                if (!checkAdmin(context.getSender())) {
+                    return context.fail();
+                }
+                
+                CommandSender sender = context.getSender();
+                String file = context.getResult(2);
+                try {
+                    chestManager.importChests(file, context.getResult(3), sender::sendMessage);
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    sender.sendMessage("§c" + e.getMessage());
+                    return context.fail();
+                }
+                sender.sendMessage("§7Importing chests from exports/" + file + " in the background...");
+                return context.success();
+            })
+            .up(3)
+            .key("delete")
+            .str("chestId")
+            .exec(context -> {
+                if (!checkAdmin(context.getSender())) {
+                    return context.fail();
+                }
+                
+                CommandSender sender = context.getSender();
+                UUID chestId = resolveChestId(sender, context.getResult(2), chest -> true);
+                if (chestId == null) {
+                    return context.fail();
+                }
+                if (chestManager.deleteChest(chestId)) {
+                    sender.sendMessage("§aDeleted death chest " + chestId + ".");
+                    return context.success();
+                } else {
+                    sender.sendMessage("§cCould not delete the chest, it is being recovered or captured right now.");
+                    return context.fail();
+                }
+            })
+            .root()
+            .key("near")
+            .intNum("radius")
+            .exec(context -> {
+                if (!checkAdmin(context.getSender())) {
+                    return context.fail();
+                }
+                if (!(context.getSender() instanceof EntityPlayer player)) {
+                    context.getSender().sendMessage("§cThis command can only be used by players!");
+                    return context.fail();
+                }
+                
+                int radius = context.getResult(1);
+                if (radius < 1) {
+                    player.sendMessage("§cThe radius must be at least 1 block.");
+                    return context.fail();
+                }
+                int maxRadius = Math.max(1, plugin.getDeathChestConfig().getMaxNearRadius());
+                if (radius > maxRadius) {
+                    player.sendMessage("§7Limiting the radius to " + maxRadius + " blocks.");
+                    radius = maxRadius;
+                }
+                var location = player.getLocation();
+                Dimension dimension = location.dimension();
+                List<ChestSummary> chests = chestManager.getIndex().getSpatialIndex().findNear(
+                    dimension.getWorld().getName(), dimension.getDimensionInfo().dimensionId(),
+                    location.x(), location.z(), radius, chest -> true);
+                sendChestList(player, "Death chests within " + radius + " blocks", chests);
+                return context.success();
+            })
+            .root()
+            .key("area")
+            .intNum("x1")
+            .intNum("z1")
+            .intNum("x2")
+            .intNum("z2")
+            .exec(context -> {
+                if (!checkAdmin(context.getSender())) {
+                    return context.fail();
+                }
+                if (!(context.getSender() instanceof EntityPlayer player)) {
+                    context.getSender().sendMessage("§cThis command can only be used by players!");
+                    return context.fail();
+                }
+                
+                int x1 = context.getResult(1);
+                int z1 = context.getResult(2);
+                int x2 = context.getResult(3);
+                int z2 = context.getResult(4);
+                Dimension dimension = player.getLocation().dimension();
+                // Whole blocks, so the far corner block is included
+                List<ChestSummary> chests = chestManager.getIndex().getSpatialIndex().findInArea(
+                    dimension.getWorld().getName(), dimension.getDimensionInfo().dimensionId(),
+                    Math.min(x1, x2), Math.min(z1, z2), Math.max(x1, x2) + 1, Math.max(z1, z2) + 1, chest -> true);
+                chests.sort(Comparator.comparingLong(ChestSummary::getDeathTime).reversed());
+                sendChestList(player, "Death chests in " + x1 + ", " + z1 + " to " + x2 + ", " + z2, chests);
+                return context.success();
+            })
+            .root()
+            .key("history")
+            .str("player")
+            .exec(context -> {
+                if (!checkAdmin(context.getSender())) {
+                    return context.fail();
+                }
+                
+                CommandSender sender = context.getSender();
+                String player = context.getResult(1);
+                // The archive files are read on the manager's archiver thread
+                chestManager.getHistory(player, MAX_LISTED_CHESTS)
+                    .whenComplete((entries, error) -> sendHistory(sender, player, entries, error));
+                return context.success();
+            })
+            .root()
+            .key("stats")
+            .exec(context -> {
+                if (!checkAdmin(context.getSender())) {
+                    return context.fail();
+                }
+                
+                Map<String, Object> stats = chestManager.collectMetrics();
+                CommandSender sender = context.getSender();
+                sender.sendMessage("§6=== DeathChest Stats ===");
+                for (String timer : List.of("capture", "capture_tick", "capture_async", "save", "load", "recover", "cleanup")) {
+                    sender.sendMessage("§e" + timer + ": §f" + stats.get(timer + "_count") + " §7runs, p50 §f"
+                        + stats.get(timer + "_p50_ms") + "ms§7, p99 §f" + stats.get(timer + "_p99_ms")
+                        + "ms§7, max §f" + stats.get(timer + "_max_ms") + "ms");
+                }
+                sender.sendMessage("§7Recoveries: §f" + stats.get("recover_success") + " §7ok, §f"
+                    + stats.get("recover_failed") + " §7failed, expired chests: §f" + stats.get("cleanup_expired")
+                    + "§7, evicted over a limit: §f" + stats.get("evicted_chests"));
+                sender.sendMessage("§7In memory: §f" + stats.get("loaded_players") + " §7players, §f"
+                    + stats.get("memory_chests") + " §7chests, §f" + stats.get("memory_items") + " §7items (~"
+                    + FormatConverter.formatBytes((Long) stats.get("memory_payload_bytes")) + ")");
+                sender.sendMessage("§7Indexed: §f" + stats.get("indexed_chests") + " §7chests of §f"
+                    + stats.get("indexed_players") + " §7players, §f" + stats.get("indexed_items") + " §7items");
+                sender.sendMessage("§7Storage: §f" + chestManager.getStore().getName() + "§7, "
+                    + FormatConverter.formatBytes((Long) stats.get("disk_bytes")) + " on disk, write queue §f"
+                    + stats.get("write_queue_depth"));
+                if (stats.containsKey("archive_bytes")) {
+                    sender.sendMessage("§7Archive: §f" + stats.get("archived_chests") + " §7chests archived since startup, §f"
+                        + FormatConverter.formatBytes((Long) stats.get("archive_bytes")) + " §7on disk");
+                }
+                if (stats.containsKey("pool_items")) {
+                    sender.sendMessage("§7Item pool: §f" + stats.get("pool_items") + " §7distinct items, §f"
+                        + stats.get("pool_refs") + " §7references, dedup ratio §f" + stats.get("pool_dedup_ratio") + "x");
+                    sender.sendMessage("§7Item compression: dictionary §f" + stats.get("pool_dictionary") + "§7, ratio §f"
+                        + stats.get("pool_compression_ratio") + "x§7, encode §f" + stats.get("pool_encode_us")
+                        + "us§7, decode §f" + stats.get("pool_decode_us") + "us §7per item");
+                }
                 return context.success();
             })
             .root()
             .exec(context -> {
                 context.getSender().sendMessage("§6=== DeathChest Help ===");
-                context.getSender().sendMessage("§e/deathchest list §7- List all your death chests");
+                context.getSender().sendMessage("§e/deathchest list [page] §7- List your death chests, newest first");
                 context.getSender().sendMessage("§e/deathchest recover <id> §7- Recover items from a death chest");
                 context.getSender().sendMessage("§e/deathchest help §7- Show this help message");
                 return context.success();
             });
     }
+    
+    /**
+     * Resolves a full chest ID or a prefix of one, telling the sender if it matches no chest or several.
+     *
+     * @param filter Only chests matching it are considered
+     * @return the chest ID, or null
+     */
+    private UUID resolveChestId(CommandSender sender, String id, Predicate<ChestSummary> filter) {
+        List<ChestSummary> matches = chestManager.resolveChestId(id, filter);
+        if (matches.isEmpty()) {
+            sender.sendMessage("§cInvalid chest ID! Use §e/deathchest list §cto see valid IDs.");
+            return null;
+        }
+        if (matches.size() > 1) {
+            sender.sendMessage("§cChest ID §f" + id + " §cmatches several chests, use more characters.");
+            return null;
+        }
+        return matches.get(0).getChestId();
+    }
+    
+    /**
+     * Lists chests of any players, for the admin location queries.
+     */
+    private void sendChestList(CommandSender sender, String title, List<ChestSummary> chests) {
+        if (chests.isEmpty()) {
+            sender.sendMessage("§7" + title + ": none.");
+            return;
+        }
+        sender.sendMessage("§6=== " + title + " (" + chests.size() + ") ===");
+        for (int i = 0; i < Math.min(chests.size(), MAX_LISTED_CHESTS); i++) {
+            ChestSummary chest = chests.get(i);
+            sender.sendMessage("§e" + chest.getPlayerName() + " §7(§f" + (int) chest.getX() + ", " + (int) chest.getY()
+                + ", " + (int) chest.getZ() + "§7) - " + formatTime(chest.getDeathTime()) + " - " + chest.getItemCount()
+                + " items - " + describeStatus(chest) + " - ID: §f" + chest.getChestId().toString().substring(0, 8));
+        }
+        if (chests.size() > MAX_LISTED_CHESTS) {
+            sender.sendMessage("§7... and " + (chests.size() - MAX_LISTED_CHESTS) + " more");
+        }
+        sender.sendMessage("§7Use §e/deathchest admin info <id> §7for details");
+    }
+    
+    private void sendHistory(CommandSender sender, String player, List<ChestArchive.Entry> entries, Throwable error) {
+        if (error != null) {
+            plugin.getPluginLogger().error("Failed to read the chest archive", error);
+            sender.sendMessage("§cCould not read the chest archive: " + error.getMessage());
+            return;
+        }
+        if (entries.isEmpty()) {
+            sender.sendMessage("§7No archived death chests of " + player + ".");
+            return;
+        }
+        sender.sendMessage("§6=== Archived Death Chests of " + player + " (latest " + entries.size() + ") ===");
+        for (ChestArchive.Entry entry : entries) {
+            ChestSummary chest = entry.chest();
+            sender.sendMessage("§f" + chest.getWorldName() + " §7(§f" + (int) chest.getX() + ", " + (int) chest.getY()
+                + ", " + (int) chest.getZ() + "§7) - died " + formatTime(chest.getDeathTime()) + " - " + chest.getItemCount()
+                + " items - " + entry.reason().name().toLowerCase(Locale.ROOT) + " " + formatTime(entry.archivedAt())
+                + " - ID: §f" + chest.getChestId().toString().substring(0, 8));
+        }
+    }
+    
+    private String describeStatus(ChestSummary chest) {
+        return chest.isRecovered() ? "recovered" : chestManager.isActive(chest) ? "active" : "expired";
+    }
+    
+    private static String describeMinutes(int minutes) {
+        if (minutes % 60 != 0) {
+            return minutes + " minutes";
+        }
+        return minutes == 60 ? "1 hour" : minutes / 60 + " hours";
+    }
+    
+    private static String formatTime(long millis) {
+        return ChestListing.TIME_FORMAT.format(Instant.ofEpochMilli(millis));
+    }
+    
+    private static boolean isAdmin(CommandSender sender) {
+        return sender.hasPermission(ADMIN_PERMISSION).asBoolean();
+    }
+    
+    /**
+     * Returns whether the sender may use admin subcommands, telling them off if not.
+     */
+    private static boolean checkAdmin(CommandSender sender) {
+        if (!isAdmin(sender)) {
+            sender.sendMessage("§cYou don't have permission to use this command!");
+            return false;
+        }
+        return true;
+    }
 }
@@ -0,0 +1,152 @@
+package org.allaymc.deathchest.config;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import lombok.Data;
+import org.allaymc.deathchest.serialization.BinaryChestFormat;
+import org.allaymc.deathchest.storage.SegmentedChestStore;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Plugin settings, stored as {@code config.json} in the plugin data folder.
+ * Missing keys fall back to the defaults below and are written back on load,
+ * so new options show up in existing config files.
+ */
+@Data
+public class DeathChestConfig {
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    /**
+     * Storage engine: "log" (append-only segmented log, default), "files" (one file per player),
+     * "sql" (embedded H2 database) or the name of an engine registered through {@code ChestStores}.
+     * Existing config files keep the engine they were written with.
+     */
+    private String storageEngine = SegmentedChestStore.NAME;
+
+    /**
+     * Size in megabytes after which the active segment of the "log" engine is sealed.
+     */
+    private int logSegmentSizeMb = 16;
+
+    /**
+     * Format of the player chest files: "binary" (default) or "json" (human readable, for debugging).
+     */
+    private String storageFormat = BinaryChestFormat.NAME;
+
+    /**
+     * Whether item payloads in binary chest files are deflate-compressed, and items in the item pool
+     * compressed one by one with a trained dictionary.
+     */
+    private boolean compressItems = true;
+
+    /**
+     * Whether identical item NBT is stored once in {@code items.pool} and referenced from chests.
+     */
+    private boolean deduplicateItems = true;
+
+    /**
+     * Whether only chest metadata is read at startup, loading items on demand.
+     * Disable to load every chest fully at startup, as older versions did.
+     */
+    private boolean lazyLoading = true;
+
+    /**
+     * Maximum number of players whose full chest data is kept in memory.
+     */
+    private int cacheMaxPlayers = 500;
+
+    /**
+     * Minutes after which an offline player's cached chest data is dropped from memory.
+     */
+    private int cacheIdleMinutes = 15;
+
+    /**
+     * Seconds between two lines appended to {@code metrics.log}. 0 disables the metrics file.
+     */
+    private int metricsIntervalSeconds = 60;
+
+    /**
+     * Worker threads that serialize captured inventories off the server thread.
+     */
+    private int captureThreads = 2;
+
+    /**
+     * Background threads that write changed player chests to disk. Writes of the same player never overlap.
+     */
+    private int writerThreads = 2;
+
+    /**
+     * Threads that parse chest files in parallel at startup. 0 uses one per available processor.
+     */
+    private int loadThreads = 0;
+
+    /**
+     * Whether chests are indexed on a background thread, so the server does not wait for it to enable.
+     * Chests of a player that are needed before then are loaded on demand.
+     */
+    private boolean backgroundLoading = true;
+
+    /**
+     * When written chests are synced to disk: "none" (left to the OS), "batch" (once per group of writes, default)
+     * or "write" (after every player write).
+     */
+    private String durability = "batch";
+
+    /**
+     * Milliseconds a writer thread keeps collecting saves into one group before writing and syncing it.
+     */
+    private int groupCommitMillis = 5;
+
+    /**
+     * Days that recovered, expired and deleted chests are kept in the archive. 0 keeps them forever.
+     */
+    private int archiveRetentionDays = 30;
+
+    /**
+     * Places a chest block where a player died while the chest is active. Only its owner can open it,
+     * and nobody can break it.
+     */
+    private boolean physicalChests = false;
+
+    /**
+     * Largest radius in blocks that {@code /deathchest near} searches; larger radii are clamped to it.
+     */
+    private int maxNearRadius = 1024;
+
+    /**
+     * Loads the config file, creating it with default values if it does not exist.
+     */
+    public static DeathChestConfig load(Path file, Logger logger) {
+        DeathChestConfig config = null;
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                config = GSON.fromJson(reader, DeathChestConfig.class);
+            } catch (IOException | JsonParseException e) {
+                logger.error("Failed to read " + file.getFileName() + ", using default settings", e);
+                return new DeathChestConfig();
+            }
+        }
+        if (config == null) {
+            config = new DeathChestConfig();
+        }
+
+        try {
+            Files.createDirectories(file.getParent());
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                GSON.toJson(config, writer);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to write " + file.getFileName(), e);
+        }
+        return config;
+    }
+}
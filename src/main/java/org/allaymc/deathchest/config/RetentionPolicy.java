@@ -0,0 +1,138 @@
+package org.allaymc.deathchest.config;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import lombok.Data;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * How long chests are kept and how many a player may have, stored as {@code retention.json}
+ * in the plugin data folder and reloadable at runtime.
+ * <p>
+ * A chest expires after the time of the world it was created in, or the default time if its world
+ * has no rule. Permission rules can only extend that: a player holding one or more of the
+ * permissions gets the longest of their times if it is longer. Quotas of 0 are unlimited.
+ */
+@Data
+public class RetentionPolicy {
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    /**
+     * Minutes after which a chest expires, unless a world or permission rule applies.
+     */
+    private int expirationMinutes = 24 * 60;
+
+    /**
+     * Expiration time in minutes by world name, replacing the default for chests created in that world.
+     */
+    private Map<String, Integer> worldExpirationMinutes = new LinkedHashMap<>();
+
+    /**
+     * Expiration time in minutes by permission, for players holding the permission.
+     */
+    private Map<String, Integer> permissionExpirationMinutes = new LinkedHashMap<>();
+
+    /**
+     * Maximum number of active chests per player; the oldest ones are archived first.
+     */
+    private int maxChestsPerPlayer = 0;
+
+    /**
+     * Maximum number of items in a player's active chests; the oldest chests are archived first.
+     */
+    private int maxItemsPerPlayer = 0;
+
+    /**
+     * Size in megabytes the chest store may take on disk; the oldest chests of all players are archived first.
+     */
+    private int maxStoreMb = 0;
+
+    /**
+     * Reads the policy file, creating it with default values if it does not exist.
+     * Missing keys fall back to the defaults and are written back.
+     *
+     * @throws IOException if the file cannot be read or holds invalid values
+     */
+    public static RetentionPolicy load(Path file) throws IOException {
+        RetentionPolicy policy = null;
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                policy = GSON.fromJson(reader, RetentionPolicy.class);
+            } catch (JsonParseException e) {
+                throw new IOException("Invalid " + file.getFileName() + ": " + e.getMessage(), e);
+            }
+        }
+        if (policy == null) {
+            policy = new RetentionPolicy();
+        }
+        policy.validate(file);
+
+        Files.createDirectories(file.getParent());
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            GSON.toJson(policy, writer);
+        }
+        return policy;
+    }
+
+    private void validate(Path file) throws IOException {
+        if (worldExpirationMinutes == null) {
+            worldExpirationMinutes = new LinkedHashMap<>();
+        }
+        if (permissionExpirationMinutes == null) {
+            permissionExpirationMinutes = new LinkedHashMap<>();
+        }
+        if (expirationMinutes <= 0 || maxChestsPerPlayer < 0 || maxItemsPerPlayer < 0 || maxStoreMb < 0
+                || worldExpirationMinutes.values().stream().anyMatch(minutes -> minutes == null || minutes <= 0)
+                || permissionExpirationMinutes.values().stream().anyMatch(minutes -> minutes == null || minutes <= 0)) {
+            throw new IOException("Invalid " + file.getFileName() + ": expiration times must be positive and limits at least 0");
+        }
+    }
+
+    /**
+     * Expiration time of chests created in a world, before permission rules.
+     */
+    public long getWorldExpirationMillis(String worldName) {
+        Integer minutes = worldName != null ? worldExpirationMinutes.get(worldName) : null;
+        return TimeUnit.MINUTES.toMillis(minutes != null ? minutes : expirationMinutes);
+    }
+
+    /**
+     * Longest expiration time of the permission rules the player holds, or 0 if none applies.
+     */
+    public long getPermissionExpirationMillis(Predicate<String> hasPermission) {
+        long longest = 0;
+        for (Map.Entry<String, Integer> rule : permissionExpirationMinutes.entrySet()) {
+            if (hasPermission.test(rule.getKey())) {
+                longest = Math.max(longest, TimeUnit.MINUTES.toMillis(rule.getValue()));
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Longest expiration time any chest can have, for chests whose owner's permissions are unknown.
+     */
+    public long getLongestExpirationMillis() {
+        long longest = TimeUnit.MINUTES.toMillis(expirationMinutes);
+        for (Integer minutes : worldExpirationMinutes.values()) {
+            longest = Math.max(longest, TimeUnit.MINUTES.toMillis(minutes));
+        }
+        return Math.max(longest, getPermissionExpirationMillis(permission -> true));
+    }
+
+    public long getMaxStoreBytes() {
+        return maxStoreMb * 1024L * 1024L;
+    }
+}
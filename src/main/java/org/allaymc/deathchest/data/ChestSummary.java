@@ -0,0 +1,97 @@
+package org.allaymc.deathchest.data;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.UUID;
+
+/**
+ * Lightweight metadata of a death chest, without the item payloads.
+ * Kept in memory for every stored chest so that listings and lookups
+ * never have to decode item NBT.
+ * <p>
+ * The index holds exactly one summary per chest, which makes it the place where concurrent
+ * recoveries of the same chest are decided: {@link #tryClaimRecovery()} lets only one of them proceed.
+ */
+@Data
+public class ChestSummary {
+
+    private static final int ACTIVE = 0;
+    private static final int RECOVERING = 1;
+    private static final int RECOVERED = 2;
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(ChestSummary.class, "state", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private UUID chestId;
+    private UUID playerId;
+    private String playerName;
+    private String worldName;
+    private int dimensionId;
+    private double x;
+    private double y;
+    private double z;
+    private long deathTime;
+    private int itemCount;
+    /**
+     * When the chest expires under the current retention policy. Only kept in memory.
+     */
+    private volatile long expiresAt;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile int state;
+
+    public boolean isRecovered() {
+        return state == RECOVERED;
+    }
+
+    public void setRecovered(boolean recovered) {
+        state = recovered ? RECOVERED : ACTIVE;
+    }
+
+    /**
+     * Atomically moves an active chest into recovery.
+     *
+     * @return false if the chest is already recovered or another recovery of it is in progress
+     */
+    public boolean tryClaimRecovery() {
+        return STATE.compareAndSet(this, ACTIVE, RECOVERING);
+    }
+
+    /**
+     * Hands a claimed chest back after a recovery that did not go through, e.g. a full inventory.
+     * Does nothing if the chest was marked recovered meanwhile.
+     */
+    public void releaseRecovery() {
+        STATE.compareAndSet(this, RECOVERING, ACTIVE);
+    }
+
+    /**
+     * Creates the summary of a fully loaded chest.
+     */
+    public static ChestSummary of(ChestData chest) {
+        ChestSummary summary = new ChestSummary();
+        summary.setChestId(chest.getChestId());
+        summary.setPlayerId(chest.getPlayerId());
+        summary.setPlayerName(chest.getPlayerName());
+        summary.setWorldName(chest.getWorldName());
+        summary.setDimensionId(chest.getDimensionId());
+        summary.setX(chest.getX());
+        summary.setY(chest.getY());
+        summary.setZ(chest.getZ());
+        summary.setDeathTime(chest.getDeathTime());
+        summary.setItemCount(chest.getItems() != null ? chest.getItems().size() : 0);
+        summary.setRecovered(chest.isRecovered());
+        return summary;
+    }
+}
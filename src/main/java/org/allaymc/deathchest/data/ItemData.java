@@ -16,4 +16,10 @@ public class ItemData {
      * This preserves all item metadata including enchantments, durability, etc.
      */
     private NbtMap nbtData;
+    
+    /**
+     * SHA-256 (hex) of the item's NBT in the item pool, set instead of {@link #nbtData}
+     * when the item is stored as a reference.
+     */
+    private String poolRef;
 }
\ No newline at end of file
@@ -11,8 +11,6 @@ import org.allaymc.api.world.Dimension;
 import org.allaymc.api.world.World;
 import org.allaymc.deathchest.DeathChestPlugin;
 import org.allaymc.deathchest.data.ChestData;
-import org.allaymc.deathchest.data.ItemData;
-import org.cloudburstmc.nbt.NbtMap;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -23,6 +21,7 @@ import static org.allaymc.api.item.type.ItemTypes.AIR;
 /**
  * Listener for player death events.
  * Saves player inventory to a death chest when they die.
+ * Only the slot contents are taken here; NBT serialization runs in the {@link org.allaymc.deathchest.managers.CapturePipeline}.
  */
 public class DeathListener {
     
@@ -38,9 +37,15 @@ public class DeathListener {
             return;
         }
         
-        List<ItemData> items = collectItems(player);
+        if (!plugin.getChestManager().isCapturing()) {
+            // Shutting down, leave the items to drop as usual
+            return;
+        }
+        
+        long start = System.nanoTime();
+        List<ItemStack> stacks = collectStacks(player);
         
-        if (items.isEmpty()) {
+        if (stacks.isEmpty()) {
             return;
         }
         
@@ -64,10 +69,13 @@ public class DeathListener {
         chestData.setY(location.y());
         chestData.setZ(location.z());
         chestData.setDimensionId(dimension.getDimensionInfo().dimensionId());
-        chestData.setItems(items);
         chestData.setRecovered(false);
         
-        plugin.getChestManager().addChest(chestData);
+        // Permissions may have changed since the player joined, and decide how long the chest is kept
+        plugin.getChestManager().refreshPermissions(player);
+        // Items are serialized to NBT off the server thread
+        plugin.getChestManager().captureChest(chestData, stacks, start);
+        plugin.getChestManager().getMetrics().recordCaptureTick(System.nanoTime() - start);
         
         player.sendMessage("§aYour items have been stored in a death chest!");
         player.sendMessage("§7Use §e/deathchest list §7to see your chests");
@@ -75,71 +83,44 @@ public class DeathListener {
     }
     
     /**
-     * Collects all items from player's containers and clears them.
-     * Uses NBT serialization to preserve complete item state.
+     * Takes all items out of the player's containers and clears the slots.
+     * The stacks are handed over as they are; serializing them happens later.
      */
-    private List<ItemData> collectItems(EntityPlayer player) {
-        List<ItemData> items = new ArrayList<>();
+    private List<ItemStack> collectStacks(EntityPlayer player) {
+        List<ItemStack> stacks = new ArrayList<>();
         
         // Collect from main inventory
         Container inventory = player.getContainer(ContainerTypes.INVENTORY);
         if (inventory != null) {
-            items.addAll(collectFromContainer(inventory));
+            collectFromContainer(inventory, stacks);
         }
         
         // Collect from armor slots
         Container armor = player.getContainer(ContainerTypes.ARMOR);
         if (armor != null) {
-            items.addAll(collectFromContainer(armor));
+            collectFromContainer(armor, stacks);
         }
         
         // Collect from offhand
         Container offhand = player.getContainer(ContainerTypes.OFFHAND);
         if (offhand != null) {
-            items.addAll(collectFromContainer(offhand));
+            collectFromContainer(offhand, stacks);
         }
         
-        return items;
+        return stacks;
     }
     
     /**
-     * Collects items from a specific container.
+     * Moves the items of a specific container into the list.
      */
-    private List<ItemData> collectFromContainer(Container container) {
-        List<ItemData> items = new ArrayList<>();
-        
+    private void collectFromContainer(Container container, List<ItemStack> stacks) {
         int size = container.getContainerType().getSize();
         for (int i = 0; i < size; i++) {
             ItemStack item = container.getItemStack(i);
             if (item != null && item.getItemType() != AIR) {
-                ItemData itemData = serializeItem(item);
-                if (itemData != null) {
-                    items.add(itemData);
-                }
+                stacks.add(item);
                 container.setItemStack(i, ItemAirStack.AIR_STACK);
             }
         }
-        
-        return items;
-    }
-    
-    /**
-     * Serializes an ItemStack to ItemData using NBT.
-     * This preserves all item metadata including enchantments, durability, etc.
-     */
-    private ItemData serializeItem(ItemStack item) {
-        try {
-            NbtMap nbt = item.saveNBT();
-            if (nbt == null) {
-                return null;
-            }
-            
-            ItemData itemData = new ItemData();
-            itemData.setNbtData(nbt);
-            return itemData;
-        } catch (Exception e) {
-            plugin.getPluginLogger().warn("Failed to serialize item: " + item.getItemType().getIdentifier(), e);
-            return null;
-        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,97 @@
+package org.allaymc.deathchest.listeners;
+
+import org.allaymc.api.entity.interfaces.EntityPlayer;
+import org.allaymc.api.eventbus.EventHandler;
+import org.allaymc.api.eventbus.event.block.BlockBreakEvent;
+import org.allaymc.api.eventbus.event.block.BlockPistonEvent;
+import org.allaymc.api.eventbus.event.entity.EntityExplodeEvent;
+import org.allaymc.api.eventbus.event.player.PlayerInteractBlockEvent;
+import org.allaymc.api.eventbus.event.world.ChunkLoadEvent;
+import org.allaymc.api.eventbus.event.world.ChunkUnloadEvent;
+import org.allaymc.api.world.Dimension;
+import org.allaymc.deathchest.DeathChestPlugin;
+import org.allaymc.deathchest.data.ChestSummary;
+import org.allaymc.deathchest.managers.PhysicalChests;
+import org.joml.Vector3ic;
+
+/**
+ * Places and removes chest blocks as chunks load and unload, and protects them.
+ * Opening a chest block recovers it for its owner; it cannot be broken, blown up or moved by pistons.
+ * Only registered when {@code physicalChests} is enabled.
+ */
+public class PhysicalChestListener {
+
+    private final DeathChestPlugin plugin;
+
+    public PhysicalChestListener(DeathChestPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler
+    public void onChunkLoad(ChunkLoadEvent event) {
+        physicalChests().onChunkLoad(event.getDimension(), event.getChunk().getX(), event.getChunk().getZ());
+    }
+
+    @EventHandler
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        physicalChests().onChunkUnload(event.getDimension(), event.getChunk().getX(), event.getChunk().getZ());
+    }
+
+    @EventHandler
+    public void onInteract(PlayerInteractBlockEvent event) {
+        EntityPlayer player = event.getPlayer();
+        var pos = event.getInteractInfo().clickedBlockPos();
+        ChestSummary chest = physicalChests().getChestAt(player.getLocation().dimension(), pos.x(), pos.y(), pos.z());
+        if (chest == null) {
+            return;
+        }
+
+        event.setCancelled(true);
+        if (!chest.getPlayerId().equals(player.getUniqueId())) {
+            player.sendMessage("§cThis death chest belongs to " + chest.getPlayerName() + ".");
+            return;
+        }
+        if (plugin.getChestManager().isStoring(chest.getChestId())) {
+            player.sendMessage("§eThis death chest is still being stored, try again in a moment.");
+            return;
+        }
+        if (!plugin.getChestManager().recoverChest(player, chest.getChestId())) {
+            player.sendMessage("§cCould not recover chest. It may have expired, already been recovered, or your inventory is full.");
+        }
+    }
+
+    @EventHandler
+    public void onBlockBreak(BlockBreakEvent event) {
+        var pos = event.getBlock().pos();
+        ChestSummary chest = physicalChests().getChestAt(pos.dimension(), pos.x(), pos.y(), pos.z());
+        if (chest == null) {
+            return;
+        }
+
+        event.setCancelled(true);
+        if (event.getEntity() instanceof EntityPlayer player) {
+            player.sendMessage("§cThis is " + chest.getPlayerName() + "'s death chest and cannot be broken.");
+        }
+    }
+
+    @EventHandler
+    public void onExplode(EntityExplodeEvent event) {
+        Dimension dimension = event.getDimension();
+        event.getAffectedBlocks().removeIf(pos -> physicalChests().getChestAt(dimension, pos.x(), pos.y(), pos.z()) != null);
+    }
+
+    @EventHandler
+    public void onPiston(BlockPistonEvent event) {
+        Dimension dimension = event.getBlock().pos().dimension();
+        for (Vector3ic pos : event.getAffectedBlocks()) {
+            if (physicalChests().getChestAt(dimension, pos.x(), pos.y(), pos.z()) != null) {
+                event.setCancelled(true);
+                return;
+            }
+        }
+    }
+
+    private PhysicalChests physicalChests() {
+        return plugin.getChestManager().getPhysicalChests();
+    }
+}
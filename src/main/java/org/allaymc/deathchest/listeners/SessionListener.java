@@ -0,0 +1,29 @@
+package org.allaymc.deathchest.listeners;
+
+import org.allaymc.api.eventbus.EventHandler;
+import org.allaymc.api.eventbus.event.player.PlayerJoinEvent;
+import org.allaymc.api.eventbus.event.player.PlayerQuitEvent;
+import org.allaymc.deathchest.DeathChestPlugin;
+
+/**
+ * Keeps track of which players are online, so cached chest data
+ * of offline players can be evicted first and retention permissions are known.
+ */
+public class SessionListener {
+    
+    private final DeathChestPlugin plugin;
+    
+    public SessionListener(DeathChestPlugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        plugin.getChestManager().setOnline(event.getPlayer(), true);
+    }
+    
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        plugin.getChestManager().setOnline(event.getPlayer(), false);
+    }
+}
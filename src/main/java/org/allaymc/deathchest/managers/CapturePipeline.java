@@ -0,0 +1,175 @@
+package org.allaymc.deathchest.managers;
+
+import org.allaymc.api.item.ItemStack;
+import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.data.ItemData;
+import org.allaymc.deathchest.metrics.ChestMetrics;
+import org.cloudburstmc.nbt.NbtMap;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Second stage of death capture, off the server thread.
+ * <p>
+ * The death handler only moves the item stacks out of the player's containers; serializing them
+ * to NBT and assembling the {@link ChestData} happens here on a small worker pool. The stacks are
+ * no longer referenced by any container at that point, so nothing else touches them meanwhile.
+ * Until a chest is handed to the sink it is tracked as pending, so callers that need its items
+ * can wait for it. A chest that cannot be stored is handed to the failure handler, and its items
+ * are written to the log so they can be given back by hand.
+ */
+public class CapturePipeline {
+
+    private final Consumer<ChestData> sink;
+    private final Consumer<ChestData> onFailure;
+    private final ChestMetrics metrics;
+    private final Logger logger;
+    private final ExecutorService workers;
+    private final Map<UUID, CompletableFuture<ChestData>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * @param threads   Number of worker threads
+     * @param sink      Receives every completed chest, on a worker thread
+     * @param onFailure Receives every chest that could not be serialized or stored, after its items were logged
+     */
+    public CapturePipeline(int threads, Consumer<ChestData> sink, Consumer<ChestData> onFailure,
+                           ChestMetrics metrics, Logger logger) {
+        this.sink = sink;
+        this.onFailure = onFailure;
+        this.metrics = metrics;
+        this.logger = logger;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "DeathChest-Capture-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Whether new chests are still accepted. False once {@link #close} was called; callers should
+     * check it before taking a player's items.
+     */
+    public boolean isAccepting() {
+        return !workers.isShutdown();
+    }
+
+    /**
+     * Serializes the stacks into the chest in the background and hands it to the sink.
+     * If the workers were stopped in the meantime, the chest is captured on the calling thread instead.
+     *
+     * @param chest      Chest with all metadata set; its items are filled in by the pipeline
+     * @param stacks     Item stacks already removed from the player's containers
+     * @param startNanos {@link System#nanoTime()} when the death was handled, for the total latency
+     * @param register   Runs once the chest is pending and before it is serialized, e.g. to index it,
+     *                   so anyone who finds the chest can also wait for its items
+     */
+    public void submit(ChestData chest, List<ItemStack> stacks, long startNanos, Runnable register) {
+        UUID chestId = chest.getChestId();
+        CompletableFuture<ChestData> future = new CompletableFuture<>();
+        pending.put(chestId, future);
+        register.run();
+        Runnable task = () -> capture(chest, stacks, startNanos, future);
+        try {
+            workers.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Shut down between the caller's check and now; the items are already out of the player's inventory
+            task.run();
+        }
+    }
+
+    private void capture(ChestData chest, List<ItemStack> stacks, long startNanos, CompletableFuture<ChestData> future) {
+        UUID chestId = chest.getChestId();
+        long serializeStart = System.nanoTime();
+        try {
+            chest.setItems(serialize(stacks));
+            sink.accept(chest);
+            future.complete(chest);
+        } catch (Throwable t) {
+            logger.error("Failed to store death chest " + chestId + " of " + chest.getPlayerName() + " ("
+                    + chest.getPlayerId() + "), its items were: " + describe(stacks), t);
+            try {
+                onFailure.accept(chest);
+            } catch (RuntimeException e) {
+                logger.error("Failed to drop death chest " + chestId + " after it could not be stored", e);
+            }
+            future.completeExceptionally(t);
+        } finally {
+            pending.remove(chestId);
+            long now = System.nanoTime();
+            metrics.recordCaptureAsync(now - serializeStart);
+            metrics.recordCapture(now - startNanos, stacks.size());
+        }
+    }
+
+    public boolean isPending(UUID chestId) {
+        return pending.containsKey(chestId);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Finishes all submitted captures and stops the workers.
+     */
+    public void close() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn(pending.size() + " death chests were still being captured at shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The stacks with their NBT where it can be read, for the log.
+     */
+    private static String describe(List<ItemStack> stacks) {
+        StringBuilder text = new StringBuilder();
+        for (ItemStack stack : stacks) {
+            if (!text.isEmpty()) {
+                text.append(", ");
+            }
+            text.append(stack.getCount()).append("x ").append(stack.getItemType().getIdentifier());
+            try {
+                text.append(' ').append(stack.saveNBT());
+            } catch (RuntimeException e) {
+                // Identifier and count are all that can be logged
+            }
+        }
+        return text.toString();
+    }
+
+    private List<ItemData> serialize(List<ItemStack> stacks) {
+        List<ItemData> items = new ArrayList<>(stacks.size());
+        for (ItemStack stack : stacks) {
+            try {
+                NbtMap nbt = stack.saveNBT();
+                if (nbt == null) {
+                    continue;
+                }
+                ItemData itemData = new ItemData();
+                itemData.setNbtData(nbt);
+                items.add(itemData);
+            } catch (Exception e) {
+                logger.warn("Failed to serialize item: " + stack.getItemType().getIdentifier(), e);
+            }
+        }
+        return items;
+    }
+}
@@ -0,0 +1,250 @@
+package org.allaymc.deathchest.managers;
+
+import org.allaymc.deathchest.data.ChestSummary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * In-memory metadata index of every stored chest, grouped by player.
+ * Built at startup from the chest files without decoding any item payloads.
+ * <p>
+ * Chests are also indexed globally by ID, in a map sorted by the unsigned value of the ID.
+ * That order is the order of the IDs' hex strings, so every chest whose ID starts with a given
+ * hex prefix lies in one contiguous range and short IDs resolve in logarithmic time.
+ * Locations are kept in a {@link SpatialIndex} for area queries, and the unrecovered chests of
+ * each player in a {@link ChestListing} for {@code /deathchest list}. With physical chests enabled,
+ * the unrecovered chests are also kept in {@link PhysicalChests}.
+ */
+public class ChestIndex {
+
+    /**
+     * Orders IDs like their hex strings.
+     */
+    private static final Comparator<UUID> HEX_ORDER = (a, b) -> {
+        int result = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return result != 0 ? result : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    };
+
+    private final Map<UUID, List<ChestSummary>> byPlayer = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<UUID, ChestSummary> byId = new ConcurrentSkipListMap<>(HEX_ORDER);
+    private final SpatialIndex spatialIndex = new SpatialIndex();
+    private final ChestListing listing = new ChestListing();
+    private final Map<String, String> internedNames = new ConcurrentHashMap<>();
+    private final PhysicalChests physicalChests;
+
+    public ChestIndex() {
+        this(null);
+    }
+
+    /**
+     * @param physicalChests Chest blocks to keep in sync with the index, or null if disabled
+     */
+    public ChestIndex(PhysicalChests physicalChests) {
+        this.physicalChests = physicalChests;
+    }
+
+    /**
+     * Adds a chest to the index, replacing an existing entry with the same chest ID.
+     */
+    public void add(ChestSummary summary) {
+        // World and player names repeat across thousands of entries, share the instances
+        if (summary.getWorldName() != null) {
+            summary.setWorldName(internedNames.computeIfAbsent(summary.getWorldName(), name -> name));
+        }
+        if (summary.getPlayerName() != null) {
+            summary.setPlayerName(internedNames.computeIfAbsent(summary.getPlayerName(), name -> name));
+        }
+
+        List<ChestSummary> replaced = new ArrayList<>(1);
+        // compute() keeps adding and dropping a player's list atomically with respect to each other
+        byPlayer.compute(summary.getPlayerId(), (playerId, chests) -> {
+            if (chests == null) {
+                chests = Collections.synchronizedList(new ArrayList<>());
+            }
+            synchronized (chests) {
+                chests.removeIf(existing -> existing.getChestId().equals(summary.getChestId()) && replaced.add(existing));
+                chests.add(summary);
+            }
+            for (ChestSummary existing : replaced) {
+                spatialIndex.remove(existing);
+                listing.remove(existing);
+                unplace(existing);
+            }
+            byId.put(summary.getChestId(), summary);
+            spatialIndex.add(summary);
+            listing.add(summary);
+            if (physicalChests != null) {
+                physicalChests.add(summary);
+            }
+            return chests;
+        });
+    }
+
+    /**
+     * Returns a copy of all indexed chests of a player.
+     */
+    public List<ChestSummary> get(UUID playerId) {
+        List<ChestSummary> chests = byPlayer.get(playerId);
+        if (chests == null) {
+            return new ArrayList<>();
+        }
+        synchronized (chests) {
+            return new ArrayList<>(chests);
+        }
+    }
+
+    /**
+     * Finds a chest of a player by ID, or null.
+     */
+    public ChestSummary find(UUID playerId, UUID chestId) {
+        ChestSummary summary = byId.get(chestId);
+        return summary != null && summary.getPlayerId().equals(playerId) ? summary : null;
+    }
+
+    /**
+     * Finds a chest of any player by ID, or null.
+     */
+    public ChestSummary findById(UUID chestId) {
+        return byId.get(chestId);
+    }
+
+    /**
+     * Finds the chests whose ID starts with a prefix of its hex string, dashes being optional.
+     *
+     * @param filter Only chests matching it are returned
+     * @param limit  Maximum number of chests to return
+     * @return the matching chests in ID order, empty if the prefix is not hex
+     */
+    public List<ChestSummary> findByPrefix(String prefix, Predicate<ChestSummary> filter, int limit) {
+        String hex = prefix.replace("-", "").toLowerCase(Locale.ROOT);
+        if (hex.isEmpty() || hex.length() > 32 || !hex.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+            return new ArrayList<>();
+        }
+
+        // Pad the prefix with 0s and with fs to get the first and the last ID it can match
+        String low = (hex + "0".repeat(32)).substring(0, 32);
+        String high = (hex + "f".repeat(32)).substring(0, 32);
+        NavigableMap<UUID, ChestSummary> range = byId.subMap(toUuid(low), true, toUuid(high), true);
+
+        List<ChestSummary> matches = new ArrayList<>();
+        for (ChestSummary summary : range.values()) {
+            if (matches.size() >= limit) {
+                break;
+            }
+            if (filter.test(summary)) {
+                matches.add(summary);
+            }
+        }
+        return matches;
+    }
+
+    private static UUID toUuid(String hex) {
+        return new UUID(Long.parseUnsignedLong(hex.substring(0, 16), 16), Long.parseUnsignedLong(hex.substring(16), 16));
+    }
+
+    /**
+     * Removes the chests of a player that match the filter.
+     *
+     * @return the removed entries
+     */
+    public List<ChestSummary> removeIf(UUID playerId, Predicate<ChestSummary> filter) {
+        List<ChestSummary> removed = new ArrayList<>();
+        byPlayer.computeIfPresent(playerId, (id, chests) -> {
+            synchronized (chests) {
+                chests.removeIf(summary -> filter.test(summary) && removed.add(summary));
+                for (ChestSummary summary : removed) {
+                    byId.remove(summary.getChestId(), summary);
+                    spatialIndex.remove(summary);
+                    listing.remove(summary);
+                    unplace(summary);
+                }
+                return chests.isEmpty() ? null : chests;
+            }
+        });
+        return removed;
+    }
+
+    /**
+     * Marks an indexed chest as recovered, which drops it from the player's listing.
+     */
+    public void markRecovered(ChestSummary summary) {
+        summary.setRecovered(true);
+        listing.remove(summary);
+        unplace(summary);
+    }
+
+    /**
+     * Drops a chest that is about to be archived from the player's listing.
+     */
+    public void unlist(ChestSummary summary) {
+        listing.remove(summary);
+        unplace(summary);
+    }
+
+    private void unplace(ChestSummary summary) {
+        if (physicalChests != null) {
+            physicalChests.remove(summary);
+        }
+    }
+
+    /**
+     * Updates the item count of an indexed chest.
+     */
+    public void setItemCount(ChestSummary summary, int itemCount) {
+        summary.setItemCount(itemCount);
+        listing.invalidate(summary);
+    }
+
+    public ChestListing getListing() {
+        return listing;
+    }
+
+    public SpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    /**
+     * Returns a copy of all indexed chests.
+     */
+    public List<ChestSummary> getAll() {
+        return new ArrayList<>(byId.values());
+    }
+
+    public Set<UUID> getPlayers() {
+        return byPlayer.keySet();
+    }
+
+    public int getPlayerCount() {
+        return byPlayer.size();
+    }
+
+    public int getChestCount() {
+        return byId.size();
+    }
+
+    /**
+     * Total number of items in all indexed chests.
+     */
+    public long getItemCount() {
+        long count = 0;
+        for (List<ChestSummary> chests : byPlayer.values()) {
+            synchronized (chests) {
+                for (ChestSummary chest : chests) {
+                    count += chest.getItemCount();
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,165 @@
+package org.allaymc.deathchest.managers;
+
+import org.allaymc.deathchest.data.ChestSummary;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What {@code /deathchest list} shows: the unrecovered chests of each player, newest first.
+ * <p>
+ * Maintained by the {@link ChestIndex} as chests are added, recovered, expired or deleted, so
+ * showing a page never sorts anything. Expired chests that the cleanup has not removed yet are
+ * hidden by their own expiration time; chests older than the longest expiration any chest can have
+ * are a tail of the list and are cut off by a binary search without looking at them.
+ * The chat line of a chest is rendered the first time it is shown and kept until the chest changes.
+ */
+public class ChestListing {
+
+    public static final int PAGE_SIZE = 8;
+
+    /**
+     * Locale-independent, so the output does not depend on the system language. Thread-safe.
+     */
+    public static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm", Locale.US).withZone(ZoneId.systemDefault());
+
+    private static final class Line {
+        final ChestSummary chest;
+        volatile String text;
+
+        Line(ChestSummary chest) {
+            this.chest = chest;
+        }
+
+        String text() {
+            String rendered = text;
+            if (rendered == null) {
+                rendered = render(chest);
+                text = rendered;
+            }
+            return rendered;
+        }
+    }
+
+    /**
+     * One page of a player's listing.
+     *
+     * @param lines     Rendered lines of the chests on the page, without numbering
+     * @param firstRank Number of the first chest on the page, starting at 1
+     * @param page      Page number, starting at 1 and clamped to the existing pages
+     * @param pageCount Number of pages, at least 1
+     * @param total     Number of listed chests
+     */
+    public record Page(List<String> lines, int firstRank, int page, int pageCount, int total) {
+    }
+
+    private final Map<UUID, List<Line>> byPlayer = new ConcurrentHashMap<>();
+
+    void add(ChestSummary chest) {
+        if (chest.isRecovered()) {
+            return;
+        }
+        byPlayer.compute(chest.getPlayerId(), (playerId, lines) -> {
+            if (lines == null) {
+                lines = new ArrayList<>();
+            }
+            synchronized (lines) {
+                lines.add(insertionPoint(lines, chest.getDeathTime()), new Line(chest));
+            }
+            return lines;
+        });
+    }
+
+    void remove(ChestSummary chest) {
+        byPlayer.computeIfPresent(chest.getPlayerId(), (playerId, lines) -> {
+            synchronized (lines) {
+                lines.removeIf(line -> line.chest == chest);
+                return lines.isEmpty() ? null : lines;
+            }
+        });
+    }
+
+    /**
+     * Drops the rendered line of a chest whose details changed.
+     */
+    void invalidate(ChestSummary chest) {
+        List<Line> lines = byPlayer.get(chest.getPlayerId());
+        if (lines == null) {
+            return;
+        }
+        synchronized (lines) {
+            for (Line line : lines) {
+                if (line.chest == chest) {
+                    line.text = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a page of the player's chests that have not expired yet.
+     *
+     * @param page         Page number starting at 1; out of range values are clamped
+     * @param now          Chests whose {@link ChestSummary#getExpiresAt()} is at or before this time are not listed
+     * @param expiryCutoff Chests that died at or before this time are expired whatever their rule, and not looked at
+     */
+    public Page getPage(UUID playerId, int page, long now, long expiryCutoff) {
+        List<Line> lines = byPlayer.get(playerId);
+        if (lines == null) {
+            return new Page(List.of(), 1, 1, 1, 0);
+        }
+        List<Line> listed = new ArrayList<>();
+        synchronized (lines) {
+            // Newest first, so the chests past every rule are the tail starting at the cutoff's insertion point
+            int candidates = insertionPoint(lines, expiryCutoff);
+            for (int i = 0; i < candidates; i++) {
+                Line line = lines.get(i);
+                if (line.chest.getExpiresAt() > now) {
+                    listed.add(line);
+                }
+            }
+        }
+        int total = listed.size();
+        int pageCount = Math.max(1, (total + PAGE_SIZE - 1) / PAGE_SIZE);
+        page = Math.min(Math.max(page, 1), pageCount);
+        int first = (page - 1) * PAGE_SIZE;
+        List<Line> selected = listed.subList(first, Math.min(total, first + PAGE_SIZE));
+        List<String> rendered = new ArrayList<>(selected.size());
+        for (Line line : selected) {
+            rendered.add(line.text());
+        }
+        return new Page(rendered, first + 1, page, pageCount, total);
+    }
+
+    /**
+     * Index of the first line whose chest died at or before the time, in a newest-first list.
+     */
+    private static int insertionPoint(List<Line> lines, long deathTime) {
+        int low = 0;
+        int high = lines.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lines.get(mid).chest.getDeathTime() > deathTime) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String render(ChestSummary chest) {
+        return "§f" + chest.getWorldName() +
+                " §7(§f" + (int) chest.getX() + ", " + (int) chest.getY() + ", " + (int) chest.getZ() + "§7)" +
+                " §7- " + TIME_FORMAT.format(Instant.ofEpochMilli(chest.getDeathTime())) +
+                " §7- " + chest.getItemCount() + " items §7- ID: §f" + chest.getChestId().toString().substring(0, 8);
+    }
+}
@@ -1,371 +1,1500 @@
 package org.allaymc.deathchest.managers;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
 import org.allaymc.api.container.Container;
 import org.allaymc.api.container.ContainerTypes;
 import org.allaymc.api.entity.interfaces.EntityPlayer;
 import org.allaymc.api.item.ItemStack;
 import org.allaymc.api.item.interfaces.ItemAirStack;
+import org.allaymc.api.server.Server;
 import org.allaymc.api.utils.NBTIO;
 import org.allaymc.deathchest.DeathChestPlugin;
+import org.allaymc.deathchest.config.DeathChestConfig;
+import org.allaymc.deathchest.config.RetentionPolicy;
 import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.data.ChestSummary;
 import org.allaymc.deathchest.data.ItemData;
-import org.allaymc.deathchest.serialization.NbtMapAdapter;
-import org.cloudburstmc.nbt.NbtMap;
+import org.allaymc.deathchest.metrics.ChestMetrics;
+import org.allaymc.deathchest.metrics.NbtSizes;
+import org.allaymc.deathchest.serialization.ChestFormat;
+import org.allaymc.deathchest.storage.ChestArchive;
+import org.allaymc.deathchest.storage.ChestStore;
+import org.allaymc.deathchest.storage.ChestStoreProvider;
+import org.allaymc.deathchest.storage.ChestStores;
+import org.allaymc.deathchest.storage.ChestTransfer;
+import org.allaymc.deathchest.storage.Durability;
+import org.allaymc.deathchest.storage.FormatConverter;
+import org.allaymc.deathchest.storage.ItemPool;
+import org.allaymc.deathchest.storage.ParallelLoad;
+import org.allaymc.deathchest.storage.PlayerFileStore;
+import org.allaymc.deathchest.storage.PooledChestStore;
+import org.allaymc.deathchest.storage.SegmentedChestStore;
+import org.allaymc.deathchest.storage.StoreMigrator;
+import org.allaymc.deathchest.storage.WriteBehindQueue;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static org.allaymc.api.item.type.ItemTypes.AIR;
 
 /**
  * Manages death chests including storage, retrieval, and recovery.
- * All operations are thread-safe using ConcurrentHashMap.
+ * Chest metadata for every player lives in the {@link ChestIndex}; full chest data is held
+ * in a bounded {@link PlayerChestCache} and loaded from disk on demand.
+ * Saves are handed to a {@link WriteBehindQueue} so the calling thread never waits on disk I/O,
+ * which writes them to the configured {@link ChestStore}.
+ * The store only holds active chests: recovered, expired and deleted ones are moved to the
+ * {@link ChestArchive} in the background.
+ * How long chests are kept and how many a player may have is decided by the {@link RetentionPolicy}.
  */
 public class ChestManager {
     
     private final DeathChestPlugin plugin;
-    private final Path dataFolder;
-    private final Gson gson;
-    private final Map<UUID, List<ChestData>> playerChests;
-    private static final long EXPIRATION_TIME = 24 * 60 * 60 * 1000; // 24 hours in milliseconds
+    private final PlayerFileStore fileStore;
+    private final ChestStore engine;
+    private final ItemPool itemPool;
+    private final ChestStore store;
+    private final PlayerChestCache playerChests;
+    private final ChestIndex index;
+    private final PhysicalChests physicalChests;
+    private final ExpiryQueue expiryQueue;
+    private final WriteBehindQueue writeQueue;
+    private final ChestMetrics metrics = new ChestMetrics();
+    private final CapturePipeline capturePipeline;
+    private final ChestArchive archive;
+    private final ScheduledExecutorService archiver;
+    private final Map<UUID, EntityPlayer> onlinePlayers = new ConcurrentHashMap<>();
+    private volatile RetentionPolicy policy;
+    // Expiration granted by permission rules, for players seen since the policy was loaded
+    private final Map<UUID, Long> permissionExpirations = new ConcurrentHashMap<>();
+    // Chests archived early because their owner or the store went over a limit
+    private final Set<UUID> evictedChests = ConcurrentHashMap.newKeySet();
+    private final AtomicLong evictionCount = new AtomicLong();
+    // Store size when the budget last evicted chests; the budget waits for the store to shrink before evicting more
+    private long budgetEvictedAtBytes = -1;
+    private long budgetEvictedAtMillis;
+    private final AtomicBoolean migrating = new AtomicBoolean();
+    private final AtomicBoolean converting = new AtomicBoolean();
+    private final AtomicBoolean transferring = new AtomicBoolean();
+    // Players indexed so far while the startup load runs: true by the load, false on demand. Null once loaded
+    private volatile Map<UUID, Boolean> startupOwners = new ConcurrentHashMap<>();
+    private final Thread startupThread;
+    private static final PlacementPlanner<ItemStack> PLANNER = new PlacementPlanner<>(ItemStackView.INSTANCE);
+    private static final long ARCHIVE_RETRY_MILLIS = 60_000;
+    private static final long BUDGET_CHECK_SECONDS = 60;
+    private static final long BUDGET_SETTLE_MILLIS = TimeUnit.HOURS.toMillis(1);
     
     public ChestManager(DeathChestPlugin plugin) {
         this.plugin = plugin;
-        this.dataFolder = plugin.getPluginContainer().dataFolder().resolve("chests");
-        // Use custom Gson with NbtMap adapter for proper serialization
-        this.gson = new GsonBuilder()
-                .setPrettyPrinting()
-                .registerTypeAdapter(NbtMap.class, new NbtMapAdapter())
-                .create();
-        this.playerChests = new ConcurrentHashMap<>();
+        Path pluginFolder = plugin.getPluginContainer().dataFolder();
         
-        File folder = this.dataFolder.toFile();
-        if (!folder.exists()) {
-            folder.mkdirs();
+        DeathChestConfig config = plugin.getDeathChestConfig();
+        this.policy = loadPolicy(pluginFolder);
+        this.fileStore = PlayerFileStore.create(pluginFolder.resolve("chests"), config, plugin.getPluginLogger());
+        this.engine = createStore(config, pluginFolder);
+        this.itemPool = openItemPool(pluginFolder);
+        this.store = itemPool != null
+                ? new PooledChestStore(engine, itemPool, config.isDeduplicateItems(), plugin.getPluginLogger())
+                : engine;
+        this.writeQueue = new WriteBehindQueue(plugin.getPluginLogger(), this::writePlayerChests, store::sync,
+                Durability.parse(config.getDurability(), plugin.getPluginLogger()), config.getGroupCommitMillis(),
+                config.getWriterThreads());
+        this.playerChests = new PlayerChestCache(
+                config.getCacheMaxPlayers(),
+                TimeUnit.MINUTES.toMillis(config.getCacheIdleMinutes()),
+                this::readPlayerChests,
+                this::savePlayerChests,
+                this::hasPendingWrites,
+                this::whenPlayerChestsWritten,
+                onlinePlayers::containsKey,
+                this::forgetPlayerChests);
+        this.physicalChests = config.isPhysicalChests() ? new PhysicalChests(plugin, pluginFolder.resolve("physical-chests.dat")) : null;
+        this.index = new ChestIndex(physicalChests);
+        this.expiryQueue = new ExpiryQueue();
+        this.capturePipeline = new CapturePipeline(config.getCaptureThreads(), this::storeCapturedChest, this::dropFailedCapture,
+                metrics, plugin.getPluginLogger());
+        this.archive = openArchive(pluginFolder, config);
+        this.archiver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DeathChest-Archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (archive != null) {
+            this.archiver.scheduleWithFixedDelay(this::purgeArchive, 0, 1, TimeUnit.HOURS);
         }
+        this.archiver.scheduleWithFixedDelay(this::enforceBudget, BUDGET_CHECK_SECONDS, BUDGET_CHECK_SECONDS, TimeUnit.SECONDS);
         
-        loadAllChests();
+        FormatConverter.Result migration = fileStore.convertLegacyFiles();
+        if (migration.files() > 0 || migration.failed() > 0) {
+            plugin.getPluginLogger().info("Migrated chest files to " + fileStore.getFormat().getName() + " format. " + migration.describe());
+        }
+        
+        if (config.isBackgroundLoading()) {
+            this.startupThread = new Thread(this::loadChests, "DeathChest-Startup");
+            this.startupThread.setDaemon(true);
+            this.startupThread.start();
+        } else {
+            this.startupThread = null;
+            loadChests();
+        }
+    }
+    
+    /**
+     * Indexes or loads the stored chests, then imports player files into a new, empty store.
+     */
+    private void loadChests() {
+        try {
+            if (plugin.getDeathChestConfig().isLazyLoading()) {
+                buildIndex();
+            } else {
+                loadAllChests();
+            }
+            if (engine != fileStore && index.getChestCount() == 0) {
+                importPlayerFiles();
+            }
+        } catch (RuntimeException e) {
+            plugin.getPluginLogger().error("Failed to load stored death chests", e);
+        } finally {
+            startupOwners = null;
+        }
+        archiver.execute(this::enforceQuotas);
+    }
+    
+    /**
+     * Lets the startup load index a player, unless the player was already indexed on demand.
+     */
+    private boolean claimForStartup(UUID playerId) {
+        Map<UUID, Boolean> owners = startupOwners;
+        if (owners == null) {
+            return true;
+        }
+        Boolean owner = owners.putIfAbsent(playerId, Boolean.TRUE);
+        return owner == null || owner;
+    }
+    
+    /**
+     * While the startup load is still running, indexes a player's chests on demand so they can be used right away.
+     * A no-op once the load is done or the player has been indexed.
+     */
+    public void ensureIndexed(UUID playerId) {
+        Map<UUID, Boolean> owners = startupOwners;
+        if (owners == null || owners.putIfAbsent(playerId, Boolean.FALSE) != null) {
+            return;
+        }
+        for (ChestData chest : playerChests.snapshot(playerId)) {
+            indexChest(ChestSummary.of(chest));
+        }
+    }
+    
+    /**
+     * Whether the startup load has finished; until then, chests of players that were not needed yet may be missing.
+     */
+    public boolean isLoaded() {
+        return startupOwners == null;
+    }
+    
+    private ChestStore createStore(DeathChestConfig config, Path pluginFolder) {
+        if (PlayerFileStore.NAME.equalsIgnoreCase(config.getStorageEngine())) {
+            return fileStore;
+        }
+        ChestStoreProvider provider = ChestStores.get(config.getStorageEngine());
+        if (provider == null) {
+            plugin.getPluginLogger().warn("Unknown storage engine '" + config.getStorageEngine() + "', using player files");
+            return fileStore;
+        }
+        try {
+            return provider.open(pluginFolder, config, plugin.getPluginLogger());
+        } catch (IOException | RuntimeException | LinkageError e) {
+            plugin.getPluginLogger().error("Failed to open the " + provider.getName() + " store, falling back to player files", e);
+            return fileStore;
+        }
+    }
+    
+    private ItemPool openItemPool(Path pluginFolder) {
+        try {
+            return new ItemPool(pluginFolder.resolve("items.pool"), pluginFolder.resolve("item-dictionaries"),
+                    plugin.getDeathChestConfig().isCompressItems(), plugin.getPluginLogger());
+        } catch (IOException e) {
+            plugin.getPluginLogger().error("Failed to open the item pool, items are stored inline", e);
+            return null;
+        }
+    }
+    
+    private RetentionPolicy loadPolicy(Path pluginFolder) {
+        try {
+            return RetentionPolicy.load(pluginFolder.resolve("retention.json"));
+        } catch (IOException e) {
+            plugin.getPluginLogger().error("Failed to load the retention policy, using defaults", e);
+            return new RetentionPolicy();
+        }
+    }
+    
+    private ChestArchive openArchive(Path pluginFolder, DeathChestConfig config) {
+        try {
+            return new ChestArchive(pluginFolder.resolve("archive"), config.getArchiveRetentionDays(), plugin.getPluginLogger());
+        } catch (IOException e) {
+            plugin.getPluginLogger().error("Failed to open the chest archive, old chests are deleted without a record", e);
+            return null;
+        }
+    }
+    
+    private void purgeArchive() {
+        try {
+            int deleted = archive.purgeExpired();
+            if (deleted > 0) {
+                plugin.getPluginLogger().info("Deleted " + deleted + " chest archive files past the retention period");
+            }
+        } catch (IOException | RuntimeException e) {
+            plugin.getPluginLogger().error("Failed to delete old chest archive files", e);
+        }
+    }
+    
+    /**
+     * Copies existing player files into a newly selected storage engine while it is still empty.
+     * The player files are left in place as a backup; files that referenced the item pool are rewritten
+     * with their NBT inline first, since the pool only counts the references of the active store and
+     * would drop the entries the backup points at.
+     */
+    private void importPlayerFiles() {
+        List<UUID> players = fileStore.listStoredPlayers();
+        if (players.isEmpty()) {
+            return;
+        }
+        
+        try {
+            int chests = 0;
+            for (UUID playerId : players) {
+                List<ChestData> loaded = fileStore.load(playerId);
+                boolean pooled = itemPool != null && StoreMigrator.resolvePoolRefs(loaded, itemPool);
+                store.save(playerId, loaded);
+                if (pooled) {
+                    fileStore.save(playerId, loaded);
+                }
+                if (claimForStartup(playerId)) {
+                    for (ChestData chest : loaded) {
+                        indexChest(ChestSummary.of(chest));
+                    }
+                }
+                chests += loaded.size();
+            }
+            plugin.getPluginLogger().info("Imported " + chests + " death chests of " + players.size()
+                    + " players into the " + store.getName() + " store");
+        } catch (IOException | RuntimeException e) {
+            plugin.getPluginLogger().error("Failed to import player chest files into the " + store.getName() + " store", e);
+        }
     }
     
     /**
      * Adds a new death chest for a player.
      */
     public void addChest(ChestData chestData) {
-        playerChests.computeIfAbsent(chestData.getPlayerId(), k -> new ArrayList<>()).add(chestData);
-        savePlayerChests(chestData.getPlayerId());
+        ensureIndexed(chestData.getPlayerId());
+        playerChests.update(chestData.getPlayerId(), chests -> chests.add(chestData));
+        indexChest(ChestSummary.of(chestData));
+        enforceQuota(chestData.getPlayerId());
+    }
+    
+    /**
+     * Stores a new death chest whose items still have to be serialized.
+     * The chest is indexed right away, so it is listed immediately; its items are
+     * serialized by the {@link CapturePipeline} and added to the cache once done.
+     * It is pending in the pipeline before it is indexed, so whoever finds it can wait for its items.
+     *
+     * @param chestData  Chest with all metadata set and no items yet
+     * @param stacks     Item stacks already removed from the player's containers
+     * @param startNanos {@link System#nanoTime()} when the death was handled
+     */
+    public void captureChest(ChestData chestData, List<ItemStack> stacks, long startNanos) {
+        ensureIndexed(chestData.getPlayerId());
+        ChestSummary summary = ChestSummary.of(chestData);
+        summary.setItemCount(stacks.size());
+        capturePipeline.submit(chestData, stacks, startNanos, () -> indexChest(summary));
+        enforceQuota(chestData.getPlayerId());
+    }
+    
+    /**
+     * Whether deaths are still captured. False while the plugin shuts down, in which case
+     * the player's items must be left alone.
+     */
+    public boolean isCapturing() {
+        return capturePipeline.isAccepting();
+    }
+    
+    /**
+     * Called by the capture pipeline when a chest could not be stored. Its items were logged;
+     * the chest is dropped so it is not listed without items.
+     */
+    private void dropFailedCapture(ChestData chestData) {
+        UUID chestId = chestData.getChestId();
+        index.removeIf(chestData.getPlayerId(), chest -> chest.getChestId().equals(chestId));
+        List<ChestData> cached = playerChests.getIfLoaded(chestData.getPlayerId());
+        if (cached != null && cached.stream().anyMatch(chest -> chest.getChestId().equals(chestId))) {
+            playerChests.update(chestData.getPlayerId(), chests -> chests.removeIf(chest -> chest.getChestId().equals(chestId)));
+        }
+    }
+    
+    /**
+     * Called by the capture pipeline once a chest's items have been serialized.
+     */
+    private void storeCapturedChest(ChestData chestData) {
+        if (itemPool != null) {
+            // Share the NBT of items that are already in memory, e.g. the same kit as the last death
+            for (ItemData item : chestData.getItems()) {
+                item.setNbtData(itemPool.intern(item.getNbtData()));
+            }
+        }
+        playerChests.update(chestData.getPlayerId(), chests -> chests.add(chestData));
+        ChestSummary summary = index.find(chestData.getPlayerId(), chestData.getChestId());
+        if (summary != null) {
+            // Items that failed to serialize are dropped, keep the listed count accurate
+            index.setItemCount(summary, chestData.getItems().size());
+        }
     }
     
     /**
      * Gets all active (non-expired, non-recovered) chests for a player.
      */
     public List<ChestData> getPlayerChests(UUID playerId) {
-        loadPlayerChests(playerId);
-        List<ChestData> chests = playerChests.getOrDefault(playerId, new ArrayList<>());
-        long currentTime = System.currentTimeMillis();
+        ensureIndexed(playerId);
+        if (index.get(playerId).isEmpty()) {
+            // Don't load (and cache) anything for players without chests
+            return new ArrayList<>();
+        }
+        Set<UUID> active = getActiveChests(playerId).stream().map(ChestSummary::getChestId).collect(Collectors.toSet());
+        List<ChestData> chests = playerChests.snapshot(playerId);
         return chests.stream()
                 .filter(chest -> !chest.isRecovered())
-                .filter(chest -> (currentTime - chest.getDeathTime()) < EXPIRATION_TIME)
+                .filter(chest -> active.contains(chest.getChestId()))
                 .collect(Collectors.toList());
     }
     
+    /**
+     * Gets the metadata of all active (non-expired, non-recovered) chests for a player.
+     * Served from the index, so no item data is loaded.
+     */
+    public List<ChestSummary> getActiveChests(UUID playerId) {
+        ensureIndexed(playerId);
+        List<ChestSummary> chests = index.get(playerId);
+        chests.removeIf(chest -> !isActive(chest));
+        return chests;
+    }
+    
+    /**
+     * One page of the player's active chests, newest first, as shown by {@code /deathchest list}.
+     */
+    public ChestListing.Page getChestPage(UUID playerId, int page) {
+        ensureIndexed(playerId);
+        // Expired chests are unlisted when they come due; this only hides those the cleanup has not reached yet,
+        // by the owner's own expiration as the cleanup uses it
+        long now = System.currentTimeMillis();
+        return index.getListing().getPage(playerId, page, now, now - policy.getLongestExpirationMillis());
+    }
+    
+    /**
+     * Whether a chest is neither recovered nor expired.
+     */
+    public boolean isActive(ChestSummary chest) {
+        return !chest.isRecovered() && System.currentTimeMillis() < chest.getExpiresAt();
+    }
+    
+    /**
+     * Resolves a full chest ID or a prefix of one, as shown by {@code /deathchest list}.
+     *
+     * @param filter Only chests matching it are considered
+     * @return at most two matches; more than one means the prefix is ambiguous
+     */
+    public List<ChestSummary> resolveChestId(String id, Predicate<ChestSummary> filter) {
+        try {
+            ChestSummary summary = index.findById(UUID.fromString(id));
+            return summary != null && filter.test(summary) ? List.of(summary) : List.of();
+        } catch (IllegalArgumentException e) {
+            return index.findByPrefix(id, filter, 2);
+        }
+    }
+    
     /**
      * Recovers items from a death chest and gives them to the player.
+     * A chest is claimed through its index entry first, so concurrent calls for the same chest
+     * cannot both hand out its items.
      * 
      * @param player The player to give items to
      * @param chestId The ID of the chest to recover
      * @return true if recovery was successful, false otherwise
      */
     public boolean recoverChest(EntityPlayer player, UUID chestId) {
-        UUID playerId = player.getUniqueId();
-        loadPlayerChests(playerId);
-        List<ChestData> chests = playerChests.get(playerId);
-        
-        if (chests == null) {
+        ensureIndexed(player.getUniqueId());
+        return recoverChest(player, index.find(player.getUniqueId(), chestId));
+    }
+    
+    /**
+     * Recovers any player's death chest into the given player's inventory, for admins.
+     * The owner's chests are loaded from disk if they are not in memory.
+     */
+    public boolean recoverAnyChest(EntityPlayer recipient, UUID chestId) {
+        return recoverChest(recipient, index.findById(chestId));
+    }
+    
+    private boolean recoverChest(EntityPlayer recipient, ChestSummary summary) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            success = summary != null && tryRecoverChest(recipient, summary);
+            return success;
+        } finally {
+            metrics.recordRecovery(System.nanoTime() - start, success);
+        }
+    }
+    
+    private boolean tryRecoverChest(EntityPlayer recipient, ChestSummary summary) {
+        if (!summary.tryClaimRecovery()) {
             return false;
         }
-        
-        for (ChestData chest : chests) {
-            if (chest.getChestId().equals(chestId) && !chest.isRecovered()) {
-                return performRecovery(player, chest);
-            }
+        try {
+            ChestData chest = getChest(summary.getPlayerId(), summary.getChestId());
+            return chest != null && !chest.isRecovered() && performRecovery(recipient, chest);
+        } finally {
+            // No-op once markRecovered() went through
+            summary.releaseRecovery();
         }
-        
-        return false;
     }
     
     /**
      * Performs the actual item recovery from a chest to a player.
+     * All items are decoded once and placed according to a single {@link PlacementPlanner} plan,
+     * which is only applied if everything fits.
      */
     private boolean performRecovery(EntityPlayer player, ChestData chest) {
         List<ItemData> items = chest.getItems();
         
         if (items == null || items.isEmpty()) {
             // Empty chest, just mark as recovered
-            chest.setRecovered(true);
-            savePlayerChests(chest.getPlayerId());
+            markRecovered(chest);
             player.sendMessage("§aDeath chest recovered (was empty).");
             return true;
         }
         
-        // First, check if player has enough inventory space
-        int emptySlots = countEmptySlots(player);
-        int itemsNeedingSlots = countItemsNeedingSlots(items);
-        
-        if (emptySlots < itemsNeedingSlots) {
-            player.sendMessage("§cYou need at least " + itemsNeedingSlots + " empty inventory slots to recover these items!");
-            player.sendMessage("§7Current empty slots: " + emptySlots);
+        Container inventory = player.getContainer(ContainerTypes.INVENTORY);
+        if (inventory == null) {
             return false;
         }
         
-        // Give items to player
-        int itemsGiven = 0;
+        List<ItemStack> stacks = new ArrayList<>(items.size());
         int itemsFailed = 0;
-        
         for (ItemData itemData : items) {
-            if (giveItemToPlayer(player, itemData)) {
-                itemsGiven++;
+            ItemStack stack = decodeItem(itemData);
+            if (stack != null) {
+                stacks.add(stack);
             } else {
                 itemsFailed++;
-                plugin.getPluginLogger().warn("Failed to give item to player " + player.getDisplayName());
+                plugin.getPluginLogger().warn("Failed to deserialize item for player " + player.getDisplayName());
             }
         }
         
-        // Mark as recovered only if at least some items were given successfully
-        // This allows recovery to proceed even if some items fail, preventing data loss
-        chest.setRecovered(true);
-        savePlayerChests(chest.getPlayerId());
+        List<ItemStack> slots = new ArrayList<>(inventory.getContainerType().getSize());
+        for (int i = 0; i < inventory.getContainerType().getSize(); i++) {
+            slots.add(inventory.getItemStack(i));
+        }
+        PlacementPlanner.Plan<ItemStack> plan = PLANNER.plan(slots, stacks);
+        if (!plan.fits()) {
+            player.sendMessage("§cYou need " + plan.missingSlots() + " more empty inventory slots to recover these items!");
+            return false;
+        }
+        
+        applyPlan(inventory, plan);
+        
+        // Mark as recovered even if some items failed to decode; they could not be given back anyway
+        markRecovered(chest);
         
         if (itemsFailed == 0) {
-            player.sendMessage("§aRecovered " + itemsGiven + " items from death chest!");
+            player.sendMessage("§aRecovered " + stacks.size() + " items from death chest!");
         } else {
-            player.sendMessage("§eRecovered " + itemsGiven + " items, but " + itemsFailed + " items failed.");
-            player.sendMessage("§7This could be due to inventory space issues. Please check your inventory.");
+            player.sendMessage("§eRecovered " + stacks.size() + " items, but " + itemsFailed + " items failed.");
+            player.sendMessage("§7These items could not be read from the death chest.");
         }
         return true;
     }
     
+    private void markRecovered(ChestData chest) {
+        chest.setRecovered(true);
+        // Flag the cached instance as well, in case the entry was evicted and reloaded meanwhile
+        playerChests.update(chest.getPlayerId(), chests -> {
+            for (ChestData cached : chests) {
+                if (cached.getChestId().equals(chest.getChestId())) {
+                    cached.setRecovered(true);
+                }
+            }
+            return null;
+        });
+        ChestSummary summary = index.find(chest.getPlayerId(), chest.getChestId());
+        if (summary != null) {
+            index.markRecovered(summary);
+        }
+        archiver.execute(() -> archiveChests(chest.getPlayerId(), Set.of(chest.getChestId())));
+    }
+    
+    private ItemStack decodeItem(ItemData itemData) {
+        if (itemData == null || itemData.getNbtData() == null) {
+            return null;
+        }
+        try {
+            ItemStack stack = NBTIO.getAPI().fromItemStackNBT(itemData.getNbtData());
+            return stack == null || stack.getItemType() == AIR ? null : stack;
+        } catch (Exception e) {
+            plugin.getPluginLogger().error("Failed to deserialize item from NBT", e);
+            return null;
+        }
+    }
+    
     /**
-     * Counts empty slots in player's inventory.
+     * Writes a plan into the inventory. The first empty slot an item goes to receives the decoded
+     * stack itself; further slots (for stacks larger than the max stack size) receive copies.
      */
-    private int countEmptySlots(EntityPlayer player) {
-        Container inventory = player.getContainer(ContainerTypes.INVENTORY);
-        if (inventory == null) {
-            return 0;
+    private static void applyPlan(Container inventory, PlacementPlanner.Plan<ItemStack> plan) {
+        Set<ItemStack> used = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (PlacementPlanner.Placement<ItemStack> placement : plan.placements()) {
+            ItemStack stack;
+            if (placement.merge()) {
+                stack = inventory.getItemStack(placement.slot());
+                stack.setCount(stack.getCount() + placement.count());
+            } else {
+                stack = used.add(placement.item()) ? placement.item() : placement.item().copy();
+                stack.setCount(placement.count());
+            }
+            inventory.setItemStack(placement.slot(), stack);
         }
-        
-        int emptyCount = 0;
-        int size = inventory.getContainerType().getSize();
-        for (int i = 0; i < size; i++) {
-            ItemStack item = inventory.getItemStack(i);
-            if (item == null || item.getItemType() == AIR) {
-                emptyCount++;
+    }
+    
+    /**
+     * Whether a chest was captured a moment ago and its items are still being serialized.
+     * Such a chest cannot be read, recovered or deleted yet; callers tell the player to try again.
+     */
+    public boolean isStoring(UUID chestId) {
+        return capturePipeline.isPending(chestId);
+    }
+    
+    /**
+     * Gets a specific chest by ID, including its items.
+     * Returns null without waiting while the chest is still being stored, see {@link #isStoring}.
+     */
+    public ChestData getChest(UUID playerId, UUID chestId) {
+        if (index.find(playerId, chestId) == null || capturePipeline.isPending(chestId)) {
+            return null;
+        }
+        for (ChestData chest : playerChests.snapshot(playerId)) {
+            if (chest.getChestId().equals(chestId)) {
+                return chest;
             }
         }
-        return emptyCount;
+        
+        return null;
     }
     
     /**
-     * Counts how many items need their own slots (can't stack with existing).
-     * This is a simplified estimate - assumes each item needs its own slot.
+     * Gets any player's chest by ID, loading the owner's chests if they are not in memory.
      */
-    private int countItemsNeedingSlots(List<ItemData> items) {
-        // Conservative estimate: each item needs at least one slot
-        // In reality, stacking could reduce this, but we want to be safe
-        return items.size();
+    public ChestData getChest(UUID chestId) {
+        ChestSummary summary = index.findById(chestId);
+        return summary != null ? getChest(summary.getPlayerId(), chestId) : null;
     }
     
     /**
-     * Gives a single item to a player.
-     * Tries to stack with existing items first, then fills empty slots.
+     * Deletes any player's chest by ID, for admins.
+     *
+     * @return false if there is no such chest or it is being recovered or captured right now
      */
-    private boolean giveItemToPlayer(EntityPlayer player, ItemData itemData) {
-        if (itemData == null || itemData.getNbtData() == null) {
+    public boolean deleteChest(UUID chestId) {
+        ChestSummary summary = index.findById(chestId);
+        if (summary == null || !(summary.tryClaimRecovery() || summary.isRecovered())) {
             return false;
         }
-
+        // A capture in progress would add the chest back afterwards
+        if (capturePipeline.isPending(chestId)) {
+            summary.releaseRecovery();
+            return false;
+        }
+        UUID playerId = summary.getPlayerId();
+        ChestData deleted = getChest(playerId, chestId);
+        index.removeIf(playerId, chest -> chest.getChestId().equals(chestId));
+        playerChests.update(playerId, chests -> chests.removeIf(chest -> chest.getChestId().equals(chestId)));
+        if (deleted != null && archive != null) {
+            archiver.execute(() -> appendToArchive(List.of(deleted), ChestArchive.Reason.DELETED));
+        }
+        return true;
+    }
+    
+    /**
+     * Streams the archive for a player's most recently archived chests, newest first.
+     * The files are read on the archiver thread, one lookup at a time.
+     *
+     * @param player Player UUID, or the name the player had when the chest was created
+     * @return completes with the entries, or exceptionally if the archive is not available or cannot be read
+     */
+    public CompletableFuture<List<ChestArchive.Entry>> getHistory(String player, int limit) {
+        if (archive == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("The chest archive is not available"));
+        }
+        UUID playerId;
         try {
-            // Deserialize the item from NBT
-            ItemStack itemStack = NBTIO.getAPI().fromItemStackNBT(itemData.getNbtData());
-            if (itemStack == null || itemStack.getItemType() == AIR) {
-                plugin.getPluginLogger().warn("Failed to deserialize item from NBT");
-                return false;
-            }
-
-            Container inventory = player.getContainer(ContainerTypes.INVENTORY);
-            if (inventory == null) {
-                return false;
-            }
-
-            // Try to add to inventory
-            int remaining = itemStack.getCount();
-            int maxStackSize = 64; // Minecraft standard max stack size
-
-            // First pass: try to stack with existing items
-            for (int i = 0; i < inventory.getContainerType().getSize() && remaining > 0; i++) {
-                ItemStack existing = inventory.getItemStack(i);
-                if (existing != null && existing.getItemType() == itemStack.getItemType()) {
-                    int canAdd = Math.min(maxStackSize - existing.getCount(), remaining);
-                    if (canAdd > 0) {
-                        existing.setCount(existing.getCount() + canAdd);
-                        remaining -= canAdd;
-                    }
+            playerId = UUID.fromString(player);
+        } catch (IllegalArgumentException e) {
+            playerId = null;
+        }
+        UUID id = playerId;
+        CompletableFuture<List<ChestArchive.Entry>> result = new CompletableFuture<>();
+        try {
+            archiver.execute(() -> {
+                try {
+                    result.complete(archive.findLatest(chest -> id != null ? id.equals(chest.getPlayerId())
+                            : player.equalsIgnoreCase(chest.getPlayerName()), limit));
+                } catch (IOException | RuntimeException e) {
+                    result.completeExceptionally(e);
                 }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new IllegalStateException("The plugin is shutting down"));
+        }
+        return result;
+    }
+    
+    /**
+     * Saves all chests to disk and waits until every write has completed.
+     */
+    public void saveAllChests() {
+        for (UUID playerId : playerChests.getLoadedPlayers()) {
+            savePlayerChests(playerId);
+        }
+        writeQueue.flushAll();
+    }
+    
+    /**
+     * Flushes all pending writes and stops the background writer.
+     * Must be called when the plugin is disabled.
+     */
+    public void shutdown() {
+        if (startupThread != null && startupThread.isAlive()) {
+            try {
+                startupThread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-
-            // Second pass: fill empty slots
-            for (int i = 0; i < inventory.getContainerType().getSize() && remaining > 0; i++) {
-                ItemStack existing = inventory.getItemStack(i);
-                if (existing == null || existing.getItemType() == AIR) {
-                    int toAdd = Math.min(maxStackSize, remaining);
-                    ItemStack newStack = NBTIO.getAPI().fromItemStackNBT(itemData.getNbtData());
-                    if (newStack != null) {
-                        newStack.setCount(toAdd);
-                        inventory.setItemStack(i, newStack);
-                        remaining -= toAdd;
-                    }
-                }
+        }
+        capturePipeline.close();
+        if (physicalChests != null) {
+            // Leave no chest blocks behind in the world files
+            physicalChests.clearAll();
+        }
+        // Archiving removes chests from the cache, so it has to finish before the last writes
+        archiver.shutdown();
+        try {
+            if (!archiver.awaitTermination(10, TimeUnit.SECONDS)) {
+                plugin.getPluginLogger().warn("Chest archiving did not finish in time, the remaining chests are archived on the next start");
             }
-
-            return remaining == 0;
-        } catch (Exception e) {
-            plugin.getPluginLogger().error("Failed to give item to player", e);
-            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeQueue.close();
+        plugin.getPluginLogger().info("Chest writer stopped: " + writeQueue.describe());
+        try {
+            store.close();
+        } catch (IOException e) {
+            plugin.getPluginLogger().error("Failed to close the chest store", e);
+        }
+        if (itemPool != null) {
+            plugin.getPluginLogger().info("Item pool: " + itemPool.describe());
+        }
+        if (engine instanceof SegmentedChestStore log) {
+            plugin.getPluginLogger().info("Chest log: " + log.describe());
         }
+        plugin.getPluginLogger().info("Chest cache: " + playerChests.describe());
     }
     
     /**
-     * Gets a specific chest by ID.
+     * Drops players from the chest cache that have not been used for a while.
      */
-    public ChestData getChest(UUID playerId, UUID chestId) {
-        loadPlayerChests(playerId);
-        List<ChestData> chests = playerChests.getOrDefault(playerId, new ArrayList<>());
+    public void evictIdlePlayers() {
+        playerChests.evictIdle();
+    }
+    
+    /**
+     * Tracks online players, so the cache can prefer evicting offline ones.
+     */
+    public void setOnline(EntityPlayer player, boolean online) {
+        if (online) {
+            onlinePlayers.put(player.getUniqueId(), player);
+            refreshPermissions(player);
+        } else {
+            onlinePlayers.remove(player.getUniqueId());
+        }
+    }
+    
+    public WriteBehindQueue getWriteQueue() {
+        return writeQueue;
+    }
+    
+    public PlayerChestCache getCache() {
+        return playerChests;
+    }
+    
+    /**
+     * Converts player chest files written in any other format to the configured one on a background thread.
+     * Pending writes are flushed first so no in-memory change is lost.
+     *
+     * @param feedback Receives the result as a chat line, on the server thread
+     * @throws IllegalStateException if the files engine is not active or a conversion is already running
+     */
+    public void convertLegacyFiles(Consumer<String> feedback) {
+        if (engine != fileStore) {
+            throw new IllegalStateException("Chest files are only used by the files engine, the active engine is " + engine.getName());
+        }
+        if (!converting.compareAndSet(false, true)) {
+            throw new IllegalStateException("A conversion is already running");
+        }
         
-        for (ChestData chest : chests) {
-            if (chest.getChestId().equals(chestId)) {
-                return chest;
+        Thread thread = new Thread(() -> {
+            String message;
+            try {
+                writeQueue.flushAll();
+                FormatConverter.Result result = fileStore.convertLegacyFiles();
+                plugin.getPluginLogger().info("Converted chest files to " + fileStore.getFormat().getName() + " format. " + result.describe());
+                message = "§a" + result.describe();
+            } catch (RuntimeException e) {
+                plugin.getPluginLogger().error("Failed to convert chest files", e);
+                message = "§cConversion failed: " + e.getMessage();
+            } finally {
+                converting.set(false);
             }
+            String result = message;
+            Server.getInstance().getScheduler().runLater(plugin, () -> feedback.accept(result));
+        }, "DeathChest-Convert");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Copies all chests from one storage engine into another on a background thread.
+     * The active engine can be the source (pending writes are flushed first) but not the target;
+     * switch {@code storageEngine} and restart once the copy is done.
+     *
+     * @param feedback Receives progress and the result as chat lines, from the migration thread
+     * @throws IllegalArgumentException if an engine is unknown or the combination is not allowed
+     * @throws IllegalStateException    if a migration is already running
+     */
+    public void migrate(String fromName, String toName, Consumer<String> feedback) {
+        ChestStoreProvider from = ChestStores.get(fromName);
+        ChestStoreProvider to = ChestStores.get(toName);
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Unknown storage engine '" + (from == null ? fromName : toName)
+                    + "', available: " + String.join(", ", ChestStores.getNames()));
+        }
+        if (from == to) {
+            throw new IllegalArgumentException("Source and target must be different storage engines");
+        }
+        if (to.getName().equalsIgnoreCase(engine.getName())) {
+            throw new IllegalArgumentException("Cannot migrate into the active " + engine.getName() + " store");
+        }
+        if (!migrating.compareAndSet(false, true)) {
+            throw new IllegalStateException("A migration is already running");
         }
         
-        return null;
+        Thread thread = new Thread(() -> {
+            try {
+                runMigration(from, to, feedback);
+            } finally {
+                migrating.set(false);
+            }
+        }, "DeathChest-Migrate");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    private void runMigration(ChestStoreProvider fromProvider, ChestStoreProvider toProvider, Consumer<String> feedback) {
+        Path pluginFolder = plugin.getPluginContainer().dataFolder();
+        DeathChestConfig config = plugin.getDeathChestConfig();
+        boolean fromActive = fromProvider.getName().equalsIgnoreCase(engine.getName());
+        ChestStore source = null;
+        ChestStore target = null;
+        try {
+            if (fromActive) {
+                writeQueue.flushAll();
+                source = engine;
+            } else {
+                source = fromProvider.open(pluginFolder, config, plugin.getPluginLogger());
+            }
+            target = toProvider.open(pluginFolder, config, plugin.getPluginLogger());
+            
+            StoreMigrator.Result result = StoreMigrator.migrate(source, target, itemPool,
+                    line -> feedback.accept("§7" + line),
+                    failure -> plugin.getPluginLogger().error("Failed to migrate chests of player " + failure.playerId(), failure.error()));
+            plugin.getPluginLogger().info("Migrated " + fromProvider.getName() + " store to " + toProvider.getName() + ": " + result.describe());
+            feedback.accept("§a" + result.describe() + ". Set storageEngine to " + toProvider.getName() + " and restart to use it.");
+        } catch (IOException | RuntimeException | LinkageError e) {
+            plugin.getPluginLogger().error("Failed to migrate the " + fromProvider.getName() + " store to " + toProvider.getName(), e);
+            feedback.accept("§cMigration failed: " + e.getMessage());
+        } finally {
+            closeQuietly(target);
+            if (!fromActive) {
+                closeQuietly(source);
+            }
+        }
     }
     
     /**
-     * Saves all chests to disk.
+     * Writes the active chests matching a filter to a file in the {@code exports} folder on a background thread.
+     * Players are read one at a time, from the cache if they are loaded and from the store otherwise.
+     *
+     * @param fileName Name of the file; ending it in {@code .gz} compresses it
+     * @param filter   Filter as parsed by {@link ChestTransfer.Filter#parse}, or null for all chests
+     * @param feedback Receives progress and the result as chat lines, from the export thread
+     * @throws IllegalArgumentException if the file name or filter is invalid
+     * @throws IllegalStateException    if chests are still loading or an export or import is already running
      */
-    public void saveAllChests() {
-        for (UUID playerId : playerChests.keySet()) {
-            savePlayerChests(playerId);
-        }
+    public void exportChests(String fileName, String filter, Consumer<String> feedback) {
+        Path file = resolveTransferFile(fileName);
+        ChestTransfer.Filter parsed = ChestTransfer.Filter.parse(filter);
+        startTransfer("export", "DeathChest-Export", () -> {
+            // Only IDs are kept in memory, chests are loaded one player at a time
+            Set<UUID> players = new TreeSet<>();
+            for (UUID playerId : index.getPlayers()) {
+                if (index.get(playerId).stream().anyMatch(parsed)) {
+                    players.add(playerId);
+                }
+            }
+            Files.createDirectories(file.getParent());
+            // The store may still hold chests that expired but were not archived yet, go by the index instead
+            Predicate<ChestSummary> active = chest -> {
+                ChestSummary indexed = index.find(chest.getPlayerId(), chest.getChestId());
+                return indexed != null && isActive(indexed) && parsed.test(indexed);
+            };
+            ChestTransfer.Result result = ChestTransfer.export(file, players, this::loadForExport, active,
+                    line -> feedback.accept("§7" + line),
+                    failure -> plugin.getPluginLogger().error("Failed to export chests of player " + failure.playerId(), failure.error()));
+            plugin.getPluginLogger().info("Exported chests to " + file + ": " + result.describe("Exported"));
+            feedback.accept("§a" + result.describe("Exported") + " to " + file.getFileName() + ".");
+        }, feedback);
     }
     
     /**
-     * Loads all chests from disk.
+     * Adds the chests of a file written by {@link #exportChests} on a background thread.
+     * Chests that already exist or were ever archived (by ID), were recovered or have expired under the current policy are skipped.
+     *
+     * @param fileName Name of the file in the {@code exports} folder
+     * @param filter   Filter as parsed by {@link ChestTransfer.Filter#parse}, or null for all chests
+     * @param feedback Receives progress and the result as chat lines, from the import thread
+     * @throws IllegalArgumentException if the file does not exist or the filter is invalid
+     * @throws IllegalStateException    if chests are still loading or an export or import is already running
      */
-    private void loadAllChests() {
-        File folder = dataFolder.toFile();
-        if (!folder.exists() || !folder.isDirectory()) {
-            return;
+    public void importChests(String fileName, String filter, Consumer<String> feedback) {
+        Path file = resolveTransferFile(fileName);
+        if (!Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("No such file: exports/" + fileName);
         }
-        
-        File[] files = folder.listFiles((dir, name) -> name.endsWith(".json"));
-        if (files == null) {
-            return;
+        ChestTransfer.Filter parsed = ChestTransfer.Filter.parse(filter);
+        startTransfer("import", "DeathChest-Import", () -> {
+            ChestTransfer.Result result = ChestTransfer.importFrom(file, parsed, this::importChest,
+                    line -> feedback.accept("§7" + line),
+                    error -> plugin.getPluginLogger().warn(error));
+            plugin.getPluginLogger().info("Imported chests from " + file + ": " + result.describe("Imported"));
+            feedback.accept("§a" + result.describe("Imported") + " from " + file.getFileName() + ".");
+        }, feedback);
+    }
+    
+    private interface TransferTask {
+        void run() throws IOException;
+    }
+    
+    private void startTransfer(String action, String threadName, TransferTask task, Consumer<String> feedback) {
+        if (!isLoaded()) {
+            throw new IllegalStateException("Chests are still loading, try again in a moment");
+        }
+        if (!transferring.compareAndSet(false, true)) {
+            throw new IllegalStateException("An export or import is already running");
         }
         
-        for (File file : files) {
-            String fileName = file.getName();
-            String uuidStr = fileName.substring(0, fileName.length() - 5);
+        Thread thread = new Thread(() -> {
             try {
-                UUID playerId = UUID.fromString(uuidStr);
-                loadPlayerChests(playerId);
-            } catch (IllegalArgumentException e) {
-                plugin.getPluginLogger().error("Invalid player UUID in filename: " + fileName);
+                task.run();
+            } catch (IOException | RuntimeException e) {
+                plugin.getPluginLogger().error("Chest " + action + " failed", e);
+                feedback.accept("§cFailed: " + e.getMessage());
+            } finally {
+                transferring.set(false);
             }
+        }, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Resolves a file name inside the {@code exports} folder, rejecting names that point outside of it.
+     */
+    private Path resolveTransferFile(String fileName) {
+        Path folder = plugin.getPluginContainer().dataFolder().resolve("exports").toAbsolutePath().normalize();
+        Path file = folder.resolve(fileName).normalize();
+        if (!file.startsWith(folder) || file.equals(folder)) {
+            throw new IllegalArgumentException("The file must be inside the exports folder");
         }
+        return file;
     }
     
     /**
-     * Loads chests for a specific player from disk.
+     * The player's chests, from the cache if they are loaded, since those may not have been written yet.
+     * Players that are not cached have no pending writes, so the store is up to date for them.
      */
-    private void loadPlayerChests(UUID playerId) {
-        if (playerChests.containsKey(playerId)) {
+    private List<ChestData> loadForExport(UUID playerId) throws IOException {
+        List<ChestData> cached = playerChests.getIfLoaded(playerId);
+        return cached != null ? cached : store.load(playerId);
+    }
+    
+    private boolean importChest(ChestData chest) {
+        ensureIndexed(chest.getPlayerId());
+        if (chest.isRecovered() || index.findById(chest.getChestId()) != null
+                || archive != null && archive.isArchived(chest.getChestId())
+                || expirationOf(ChestSummary.of(chest)) <= System.currentTimeMillis()) {
+            return false;
+        }
+        addChest(chest);
+        return true;
+    }
+    
+    private void closeQuietly(ChestStore store) {
+        if (store == null) {
             return;
         }
+        try {
+            store.close();
+        } catch (IOException e) {
+            plugin.getPluginLogger().warn("Failed to close the " + store.getName() + " store", e);
+        }
+    }
+    
+    public ChestFormat getFormat() {
+        return fileStore.getFormat();
+    }
+    
+    public ChestStore getStore() {
+        return store;
+    }
+    
+    public ChestIndex getIndex() {
+        return index;
+    }
+    
+    /**
+     * The chest blocks in the world, or null if {@code physicalChests} is disabled.
+     */
+    public PhysicalChests getPhysicalChests() {
+        return physicalChests;
+    }
+    
+    public ExpiryQueue getExpiryQueue() {
+        return expiryQueue;
+    }
+    
+    public ChestMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Current counters, latency histograms and gauges as flat snake_case keys.
+     * Walks the cached chests, so call it for reporting only, not on every tick.
+     */
+    public Map<String, Object> collectMetrics() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        metrics.snapshot(values);
         
-        File playerFile = new File(dataFolder.toFile(), playerId.toString() + ".json");
-        if (!playerFile.exists()) {
-            playerChests.put(playerId, new ArrayList<>());
-            return;
+        long[] memory = new long[3]; // chests, items, estimated payload bytes
+        playerChests.forEachLoaded(chest -> {
+            memory[0]++;
+            if (chest.getItems() != null) {
+                for (ItemData item : chest.getItems()) {
+                    memory[1]++;
+                    memory[2] += NbtSizes.estimate(item.getNbtData());
+                }
+            }
+        });
+        values.put("loaded_players", playerChests.size());
+        values.put("memory_chests", memory[0]);
+        values.put("memory_items", memory[1]);
+        values.put("memory_payload_bytes", memory[2]);
+        values.put("indexed_players", index.getPlayerCount());
+        values.put("indexed_chests", index.getChestCount());
+        values.put("indexed_items", index.getItemCount());
+        values.put("pending_captures", capturePipeline.getPendingCount());
+        values.put("pending_expirations", expiryQueue.size());
+        values.put("evicted_chests", evictionCount.get());
+        if (physicalChests != null) {
+            values.put("placed_chests", physicalChests.getPlacedCount());
+        }
+        values.put("write_queue_depth", writeQueue.getQueueDepth());
+        values.put("write_failures", writeQueue.getFailureCount());
+        values.put("write_batches", writeQueue.getBatchCount());
+        values.put("write_syncs", writeQueue.getSyncCount());
+        values.put("cache_hits", playerChests.getHitCount());
+        values.put("cache_misses", playerChests.getMissCount());
+        values.put("disk_bytes", store.getStoredBytes());
+        if (archive != null) {
+            values.put("archived_chests", archive.getArchivedCount());
+            values.put("archive_bytes", archive.getStoredBytes());
+        }
+        if (itemPool != null) {
+            values.put("pool_items", itemPool.getEntryCount());
+            values.put("pool_refs", itemPool.getReferenceCount());
+            values.put("pool_bytes", itemPool.getFileBytes());
+            values.put("pool_dedup_ratio", String.format(Locale.US, "%.2f", itemPool.getDedupRatio()));
+            values.put("pool_dictionary", itemPool.getDictionaryId());
+            values.put("pool_compression_ratio", String.format(Locale.US, "%.2f", itemPool.getCompressionRatio()));
+            values.put("pool_encode_us", String.format(Locale.US, "%.1f", itemPool.getAverageEncodeMicros()));
+            values.put("pool_decode_us", String.format(Locale.US, "%.1f", itemPool.getAverageDecodeMicros()));
+        }
+        return values;
+    }
+    
+    /**
+     * Adds a chest to the index and schedules its expiration.
+     */
+    private void indexChest(ChestSummary summary) {
+        summary.setExpiresAt(expirationOf(summary));
+        index.add(summary);
+        expiryQueue.schedule(summary.getPlayerId(), summary.getChestId(), summary.getExpiresAt());
+    }
+    
+    /**
+     * When a chest expires under the current policy.
+     * Until its owner has been online, permission rules are assumed to apply, so no chest expires too early.
+     */
+    private long expirationOf(ChestSummary chest) {
+        RetentionPolicy current = policy;
+        Long granted = permissionExpirations.get(chest.getPlayerId());
+        long byPermission = granted != null ? granted : current.getPermissionExpirationMillis(permission -> true);
+        return chest.getDeathTime() + Math.max(current.getWorldExpirationMillis(chest.getWorldName()), byPermission);
+    }
+    
+    /**
+     * Resolves the permission rules that apply to a player and updates the expiration of their chests if they changed.
+     * Called when the player joins or dies.
+     */
+    public void refreshPermissions(EntityPlayer player) {
+        UUID playerId = player.getUniqueId();
+        long granted = policy.getPermissionExpirationMillis(permission -> player.hasPermission(permission).asBoolean());
+        Long previous = permissionExpirations.put(playerId, granted);
+        if (previous == null || previous != granted) {
+            reevaluateExpirations(playerId);
+        }
+    }
+    
+    /**
+     * Recomputes the expiration of a player's chests, rescheduling only the ones that changed.
+     * Entries of the old times stay in the {@link ExpiryQueue} and are skipped when they come due.
+     *
+     * @return the number of chests whose expiration changed
+     */
+    private int reevaluateExpirations(UUID playerId) {
+        int changed = 0;
+        for (ChestSummary chest : index.get(playerId)) {
+            if (chest.isRecovered() || evictedChests.contains(chest.getChestId())) {
+                continue;
+            }
+            long expiresAt = expirationOf(chest);
+            if (expiresAt != chest.getExpiresAt()) {
+                chest.setExpiresAt(expiresAt);
+                expiryQueue.schedule(playerId, chest.getChestId(), expiresAt);
+                changed++;
+            }
+        }
+        return changed;
+    }
+    
+    /**
+     * Reloads {@code retention.json} and applies it to the indexed chests on the archiver thread.
+     * Only chests whose expiration changed are rescheduled and only chests over a new limit are
+     * archived, so nothing else is loaded or rewritten.
+     *
+     * @param feedback Receives the result as a chat line, from the archiver thread
+     */
+    public void reloadPolicy(Consumer<String> feedback) {
+        archiver.execute(() -> {
+            try {
+                policy = RetentionPolicy.load(plugin.getPluginContainer().dataFolder().resolve("retention.json"));
+            } catch (IOException e) {
+                plugin.getPluginLogger().error("Failed to reload the retention policy, keeping the current one", e);
+                feedback.accept("§cFailed to reload the retention policy: " + e.getMessage());
+                return;
+            }
+            
+            // Permission rules may have changed, resolve them again for the players that are online
+            permissionExpirations.clear();
+            for (EntityPlayer player : onlinePlayers.values()) {
+                permissionExpirations.put(player.getUniqueId(),
+                        policy.getPermissionExpirationMillis(permission -> player.hasPermission(permission).asBoolean()));
+            }
+            int changed = 0;
+            for (UUID playerId : List.copyOf(index.getPlayers())) {
+                changed += reevaluateExpirations(playerId);
+            }
+            int evicted = enforceQuotas();
+            budgetEvictedAtBytes = -1;
+            evicted += enforceBudget();
+            
+            String result = "Retention policy reloaded: " + changed + " expiration times changed, "
+                    + evicted + " chests over a limit archived";
+            plugin.getPluginLogger().info(result);
+            feedback.accept("§a" + result);
+        });
+    }
+    
+    public RetentionPolicy getPolicy() {
+        return policy;
+    }
+    
+    /**
+     * Takes a chest out of the listing and schedules it to be archived on the next cleanup.
+     */
+    private void evict(ChestSummary chest, long now) {
+        evictedChests.add(chest.getChestId());
+        chest.setExpiresAt(now);
+        index.unlist(chest);
+        expiryQueue.schedule(chest.getPlayerId(), chest.getChestId(), now);
+        evictionCount.incrementAndGet();
+    }
+    
+    /**
+     * Archives a player's oldest active chests until they are within the chest and item limits.
+     * The newest chest is always kept.
+     *
+     * @return the number of evicted chests
+     */
+    private int enforceQuota(UUID playerId) {
+        RetentionPolicy current = policy;
+        int maxChests = current.getMaxChestsPerPlayer();
+        int maxItems = current.getMaxItemsPerPlayer();
+        if (maxChests <= 0 && maxItems <= 0) {
+            return 0;
+        }
+        List<ChestSummary> chests = getActiveChests(playerId);
+        chests.sort(Comparator.comparingLong(ChestSummary::getDeathTime));
+        int count = chests.size();
+        long items = 0;
+        for (ChestSummary chest : chests) {
+            items += chest.getItemCount();
         }
         
-        try (FileReader reader = new FileReader(playerFile)) {
-            List<ChestData> chests = gson.fromJson(reader, new TypeToken<List<ChestData>>(){}.getType());
-            if (chests != null) {
-                playerChests.put(playerId, new ArrayList<>(chests));
-            } else {
-                playerChests.put(playerId, new ArrayList<>());
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+        for (int i = 0; i < chests.size() - 1; i++) {
+            if ((maxChests <= 0 || count <= maxChests) && (maxItems <= 0 || items <= maxItems)) {
+                break;
             }
-        } catch (IOException e) {
-            plugin.getPluginLogger().error("Failed to load chests for player: " + playerId, e);
-            playerChests.put(playerId, new ArrayList<>());
+            ChestSummary oldest = chests.get(i);
+            evict(oldest, now);
+            count--;
+            items -= oldest.getItemCount();
+            evicted++;
+        }
+        return evicted;
+    }
+    
+    private int enforceQuotas() {
+        if (policy.getMaxChestsPerPlayer() <= 0 && policy.getMaxItemsPerPlayer() <= 0) {
+            return 0;
         }
+        int evicted = 0;
+        for (UUID playerId : List.copyOf(index.getPlayers())) {
+            evicted += enforceQuota(playerId);
+        }
+        if (evicted > 0) {
+            plugin.getPluginLogger().info("Archiving " + evicted + " death chests of players over the chest or item limit");
+        }
+        return evicted;
     }
     
     /**
-     * Saves chests for a specific player to disk.
+     * Archives the oldest chests of all players while the store is larger than {@code maxStoreMb}.
+     * Chest sizes are estimated from the store's current bytes per indexed item. Engines reclaim
+     * space with a delay (log compaction, database page reuse), so after evicting it waits until
+     * the store has shrunk, or an hour has passed, before evicting more.
+     * Runs on the archiver thread.
+     *
+     * @return the number of evicted chests
      */
-    private synchronized void savePlayerChests(UUID playerId) {
-        List<ChestData> chests = playerChests.get(playerId);
-        if (chests == null) {
-            return;
+    private int enforceBudget() {
+        long budget = policy.getMaxStoreBytes();
+        long stored = store.getStoredBytes();
+        if (budget <= 0 || stored <= budget) {
+            budgetEvictedAtBytes = -1;
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        if (budgetEvictedAtBytes >= 0 && stored >= budgetEvictedAtBytes && now - budgetEvictedAtMillis < BUDGET_SETTLE_MILLIS) {
+            return 0;
         }
+        long items = index.getItemCount();
+        if (items == 0) {
+            return 0;
+        }
+        
+        double bytesPerItem = (double) stored / items;
+        long itemsToFree = (long) Math.ceil((stored - budget) / bytesPerItem);
+        List<ChestSummary> chests = index.getAll();
+        chests.removeIf(chest -> !isActive(chest));
+        chests.sort(Comparator.comparingLong(ChestSummary::getDeathTime));
+        int evicted = 0;
+        long freed = 0;
+        for (ChestSummary chest : chests) {
+            if (freed >= itemsToFree) {
+                break;
+            }
+            evict(chest, now);
+            // Empty chests still take some space, count them so the loop always makes progress
+            freed += Math.max(1, chest.getItemCount());
+            evicted++;
+        }
+        budgetEvictedAtBytes = stored;
+        budgetEvictedAtMillis = now;
+        plugin.getPluginLogger().info("Chest store is " + FormatConverter.formatBytes(stored) + ", over its budget of "
+                + FormatConverter.formatBytes(budget) + "; archiving the " + evicted + " oldest death chests");
+        return evicted;
+    }
+    
+    /**
+     * Builds the metadata index from all chest files without decoding any items.
+     * Full chest data is loaded per player on first use.
+     */
+    private void buildIndex() {
+        long start = System.nanoTime();
+        long heapBefore = usedHeap();
         
-        File playerFile = new File(dataFolder.toFile(), playerId.toString() + ".json");
+        LoadProgress progress = new LoadProgress(plugin.getPluginLogger(), "Indexing death chests", "chests", -1);
+        try {
+            store.scan(summary -> {
+                if (claimForStartup(summary.getPlayerId())) {
+                    indexChest(summary);
+                }
+                progress.step();
+            });
+        } catch (IOException | RuntimeException e) {
+            plugin.getPluginLogger().error("Failed to index stored death chests", e);
+        }
         
-        if (chests.isEmpty()) {
-            if (playerFile.exists()) {
-                playerFile.delete();
+        logStartup("Indexed", start, heapBefore, progress);
+    }
+    
+    /**
+     * Loads all chests from disk, including their items.
+     * Only used when lazy loading is disabled in the config.
+     */
+    private void loadAllChests() {
+        long start = System.nanoTime();
+        long heapBefore = usedHeap();
+        
+        Set<UUID> players = new HashSet<>();
+        try {
+            store.scan(summary -> players.add(summary.getPlayerId()));
+        } catch (IOException | RuntimeException e) {
+            plugin.getPluginLogger().error("Failed to list stored death chests", e);
+        }
+        LoadProgress progress = new LoadProgress(plugin.getPluginLogger(), "Loading death chests", "players", players.size());
+        ParallelLoad.forEach(new ArrayList<>(players), plugin.getDeathChestConfig().getLoadThreads(), "DeathChest-Load", playerId -> {
+            if (claimForStartup(playerId)) {
+                for (ChestData chest : playerChests.snapshot(playerId)) {
+                    indexChest(ChestSummary.of(chest));
+                }
             }
+            progress.step();
+        });
+        
+        logStartup("Loaded", start, heapBefore, progress);
+    }
+    
+    private void logStartup(String action, long startNanos, long heapBefore, LoadProgress progress) {
+        long millis = (System.nanoTime() - startNanos) / 1_000_000;
+        long heapDelta = Math.max(0, usedHeap() - heapBefore);
+        plugin.getPluginLogger().info(action + " " + index.getChestCount() + " death chests of " + index.getPlayerCount()
+                + " players in " + millis + "ms, " + progress.describeRate()
+                + " (heap +" + FormatConverter.formatBytes(heapDelta) + ")");
+    }
+    
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    /**
+     * Reads chests for a specific player from disk. Called by the cache on a miss.
+     */
+    private List<ChestData> readPlayerChests(UUID playerId) {
+        long start = System.nanoTime();
+        try {
+            List<ChestData> chests = store.load(playerId);
+            metrics.recordLoad(System.nanoTime() - start);
+            return chests;
+        } catch (IOException | RuntimeException e) {
+            plugin.getPluginLogger().error("Failed to load chests for player: " + playerId, e);
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Schedules the player's chests to be written to disk by the background writer.
+     */
+    private void savePlayerChests(UUID playerId) {
+        writeQueue.markDirty(playerId);
+    }
+    
+    private boolean hasPendingWrites(UUID playerId) {
+        return writeQueue.isDirty(playerId);
+    }
+    
+    /**
+     * Completes once the player's pending changes are written by the background writer.
+     */
+    private CompletableFuture<Void> whenPlayerChestsWritten(UUID playerId) {
+        return writeQueue.markDirty(playerId);
+    }
+    
+    /**
+     * Drops what the store keeps for a player that left the cache.
+     */
+    private void forgetPlayerChests(UUID playerId) {
+        if (store instanceof PooledChestStore pooled) {
+            pooled.forget(playerId);
+        }
+    }
+    
+    /**
+     * Writes chests for a specific player to the store. Called by the background writer.
+     */
+    private void writePlayerChests(UUID playerId) {
+        List<ChestData> chests = playerChests.getIfLoaded(playerId);
+        if (chests == null) {
+            // The cache never evicts a player that is dirty or being written, so nothing is left to write
             return;
         }
-        
-        try (FileWriter writer = new FileWriter(playerFile)) {
-            gson.toJson(chests, writer);
+        long start = System.nanoTime();
+        try {
+            store.save(playerId, chests);
+            metrics.recordSave(System.nanoTime() - start);
         } catch (IOException e) {
-            plugin.getPluginLogger().error("Failed to save chests for player: " + playerId, e);
+            throw new UncheckedIOException(e);
         }
     }
     
     /**
-     * Cleans up expired chests from memory.
-     * Note: This only removes from memory, files are kept for record keeping.
+     * Moves the chests that are due according to the {@link ExpiryQueue} to the archive.
+     * Polling the queue is all that happens on the calling thread; the chests are archived and
+     * removed in the background, and only the players that actually had a chest expire are loaded and saved.
      */
     public void cleanExpiredChests() {
         long currentTime = System.currentTimeMillis();
-        int cleanedCount = 0;
+        if (expiryQueue.nextExpiration() > currentTime) {
+            return;
+        }
         
-        for (Map.Entry<UUID, List<ChestData>> entry : playerChests.entrySet()) {
-            List<ChestData> chests = entry.getValue();
-            int originalSize = chests.size();
-            chests.removeIf(chest -> (currentTime - chest.getDeathTime()) >= EXPIRATION_TIME);
-            cleanedCount += (originalSize - chests.size());
-            savePlayerChests(entry.getKey());
+        Map<UUID, Set<UUID>> dueByPlayer = new HashMap<>();
+        for (ExpiryQueue.Entry entry : expiryQueue.pollDue(currentTime)) {
+            ChestSummary chest = index.find(entry.playerId(), entry.chestId());
+            if (chest == null || (chest.getExpiresAt() > currentTime && !chest.isRecovered())) {
+                // Gone already, or the policy gave it more time and it has a later entry
+                continue;
+            }
+            index.unlist(chest);
+            dueByPlayer.computeIfAbsent(entry.playerId(), k -> new HashSet<>()).add(entry.chestId());
+        }
+        if (dueByPlayer.isEmpty()) {
+            return;
+        }
+        archiver.execute(() -> {
+            long start = System.nanoTime();
+            int cleanedCount = 0;
+            for (Map.Entry<UUID, Set<UUID>> due : dueByPlayer.entrySet()) {
+                cleanedCount += archiveChests(due.getKey(), due.getValue());
+            }
+            
+            metrics.recordCleanup(System.nanoTime() - start, cleanedCount);
+            if (cleanedCount > 0) {
+                plugin.getPluginLogger().info("Archived " + cleanedCount + " expired or evicted death chests");
+            }
+        });
+    }
+    
+    /**
+     * Appends a player's chests to the archive, then removes them from the index and the store.
+     * Runs on the archiver thread only, so a chest is never archived twice. Chests that could not
+     * be archived are kept and retried later.
+     *
+     * @return the number of removed chests
+     */
+    private int archiveChests(UUID playerId, Set<UUID> chestIds) {
+        if (chestIds.stream().noneMatch(chestId -> index.find(playerId, chestId) != null)) {
+            // Already gone, nothing to load or persist
+            return 0;
+        }
+        Map<ChestArchive.Reason, List<ChestData>> groups = new EnumMap<>(ChestArchive.Reason.class);
+        for (ChestData chest : playerChests.snapshot(playerId)) {
+            if (chestIds.contains(chest.getChestId())) {
+                ChestArchive.Reason reason = chest.isRecovered() ? ChestArchive.Reason.RECOVERED
+                        : evictedChests.contains(chest.getChestId()) ? ChestArchive.Reason.EVICTED : ChestArchive.Reason.EXPIRED;
+                groups.computeIfAbsent(reason, k -> new ArrayList<>()).add(chest);
+            }
+        }
+        // One append for all reasons, so a retry never archives a group twice
+        if (!appendToArchive(groups)) {
+            for (UUID chestId : chestIds) {
+                expiryQueue.schedule(playerId, chestId, System.currentTimeMillis() + ARCHIVE_RETRY_MILLIS);
+            }
+            return 0;
         }
         
-        if (cleanedCount > 0) {
-            plugin.getPluginLogger().info("Cleaned up " + cleanedCount + " expired death chests");
+        List<ChestSummary> removed = index.removeIf(playerId, chest -> chestIds.contains(chest.getChestId()));
+        playerChests.update(playerId, chests -> chests.removeIf(chest -> chestIds.contains(chest.getChestId())));
+        evictedChests.removeAll(chestIds);
+        return removed.size();
+    }
+    
+    private boolean appendToArchive(List<ChestData> chests, ChestArchive.Reason reason) {
+        Map<ChestArchive.Reason, List<ChestData>> groups = new EnumMap<>(ChestArchive.Reason.class);
+        groups.put(reason, chests);
+        return appendToArchive(groups);
+    }
+    
+    private boolean appendToArchive(Map<ChestArchive.Reason, List<ChestData>> groups) {
+        int count = groups.values().stream().mapToInt(List::size).sum();
+        if (archive == null || count == 0) {
+            return true;
+        }
+        try {
+            archive.append(groups);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            plugin.getPluginLogger().error("Failed to archive " + count + " death chests ("
+                    + groups.keySet().stream().map(reason -> reason.name().toLowerCase(Locale.ROOT)).collect(Collectors.joining(", "))
+                    + "), retrying later", e);
+            return false;
         }
     }
-}
\ No newline at end of file
+}
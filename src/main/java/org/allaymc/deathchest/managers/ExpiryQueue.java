@@ -0,0 +1,54 @@
+package org.allaymc.deathchest.managers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+/**
+ * Chests ordered by the time they expire.
+ * Polling only touches the chests that are actually due, so the cost of an expiry run
+ * is proportional to the number of expirations rather than the number of stored chests.
+ * <p>
+ * Entries are never removed when a chest goes away early; callers check the index
+ * when an entry comes due and ignore the ones that no longer exist.
+ */
+public class ExpiryQueue {
+
+    /**
+     * A scheduled expiration.
+     *
+     * @param expiresAt Time in epoch milliseconds at which the chest expires
+     */
+    public record Entry(long expiresAt, UUID playerId, UUID chestId) {
+    }
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>((a, b) -> Long.compare(a.expiresAt(), b.expiresAt()));
+
+    public synchronized void schedule(UUID playerId, UUID chestId, long expiresAt) {
+        queue.add(new Entry(expiresAt, playerId, chestId));
+    }
+
+    /**
+     * Removes and returns all entries that are due at the given time.
+     */
+    public synchronized List<Entry> pollDue(long now) {
+        List<Entry> due = new ArrayList<>();
+        while (!queue.isEmpty() && queue.peek().expiresAt() <= now) {
+            due.add(queue.poll());
+        }
+        return due;
+    }
+
+    /**
+     * Time in epoch milliseconds of the next expiration, or {@link Long#MAX_VALUE} if nothing is scheduled.
+     */
+    public synchronized long nextExpiration() {
+        Entry next = queue.peek();
+        return next != null ? next.expiresAt() : Long.MAX_VALUE;
+    }
+
+    public synchronized int size() {
+        return queue.size();
+    }
+}
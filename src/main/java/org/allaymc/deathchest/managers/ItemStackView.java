@@ -0,0 +1,43 @@
+package org.allaymc.deathchest.managers;
+
+import org.allaymc.api.item.ItemStack;
+import org.cloudburstmc.nbt.NbtMapBuilder;
+
+import static org.allaymc.api.item.type.ItemTypes.AIR;
+
+/**
+ * Lets the {@link PlacementPlanner} work on real item stacks.
+ * Two stacks merge only if their saved NBT is equal apart from the count,
+ * so enchantments, damage and custom names are all respected.
+ */
+class ItemStackView implements PlacementPlanner.ItemView<ItemStack> {
+
+    static final ItemStackView INSTANCE = new ItemStackView();
+
+    @Override
+    public boolean isEmpty(ItemStack item) {
+        return item == null || item.getItemType() == AIR;
+    }
+
+    @Override
+    public Object getType(ItemStack item) {
+        return item.getItemType();
+    }
+
+    @Override
+    public int getCount(ItemStack item) {
+        return item.getCount();
+    }
+
+    @Override
+    public int getMaxStackSize(ItemStack item) {
+        return item.getItemType().getItemData().maxStackSize();
+    }
+
+    @Override
+    public Object getStackKey(ItemStack item) {
+        NbtMapBuilder builder = item.saveNBT().toBuilder();
+        builder.remove("Count");
+        return builder.build();
+    }
+}
@@ -0,0 +1,56 @@
+package org.allaymc.deathchest.managers;
+
+import org.slf4j.Logger;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs how far a startup load has got, at most every few seconds, with its throughput.
+ * Safe to advance from several loading threads.
+ */
+class LoadProgress {
+
+    private static final long LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final Logger logger;
+    private final String action;
+    private final String unit;
+    private final long total;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong done = new AtomicLong();
+    private final AtomicLong lastLogNanos = new AtomicLong(startNanos);
+
+    /**
+     * @param action What is being done, e.g. "Indexing death chests"
+     * @param unit   What is counted, e.g. "chests"
+     * @param total  Number of units to expect, or -1 if unknown
+     */
+    LoadProgress(Logger logger, String action, String unit, long total) {
+        this.logger = logger;
+        this.action = action;
+        this.unit = unit;
+        this.total = total;
+    }
+
+    void step() {
+        long count = done.incrementAndGet();
+        long now = System.nanoTime();
+        long last = lastLogNanos.get();
+        if (now - last >= LOG_INTERVAL_NANOS && lastLogNanos.compareAndSet(last, now)) {
+            String position = total >= 0
+                    ? String.format(Locale.US, "%d/%d %s (%d%%)", count, total, unit, total == 0 ? 100 : count * 100 / total)
+                    : count + " " + unit;
+            logger.info(action + ": " + position + ", " + describeRate());
+        }
+    }
+
+    /**
+     * Units per second since the start, e.g. "12000 chests/s".
+     */
+    String describeRate() {
+        double seconds = Math.max(1, System.nanoTime() - startNanos) / 1_000_000_000.0;
+        return String.format(Locale.US, "%.0f %s/s", done.get() / seconds, unit);
+    }
+}
@@ -0,0 +1,405 @@
+package org.allaymc.deathchest.managers;
+
+import org.allaymc.api.block.type.BlockState;
+import org.allaymc.api.block.type.BlockTypes;
+import org.allaymc.api.server.Server;
+import org.allaymc.api.world.Dimension;
+import org.allaymc.deathchest.DeathChestPlugin;
+import org.allaymc.deathchest.data.ChestSummary;
+import org.allaymc.deathchest.storage.AtomicFiles;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Real chest blocks at the death locations of active chests, when {@code physicalChests} is enabled.
+ * <p>
+ * Chests are indexed by world, dimension and chunk. A block is only placed while its chunk is
+ * loaded: when the chunk loads, its chests are placed, and when it unloads they are removed again,
+ * so the world files never keep them and chunks that are not loaded cost nothing. There is no
+ * per-tick work; each chunk event only touches the chests of that chunk.
+ * <p>
+ * A chest is placed at the block the player died in, and only if that block is air; otherwise the
+ * chest stays virtual. When several chests share a block, the oldest stands there and the next one
+ * takes its place once it is gone. Blocks are changed on the server thread, and a block is only
+ * removed while it is still a chest. A placed chest whose block was changed by something the listener
+ * does not see, such as a world edit, is forgotten the next time its position is looked up.
+ * <p>
+ * Every placement and removal is appended to a journal before the block is set, so blocks left in
+ * the world by a crash are known on the next start and removed when their chunk loads.
+ */
+public class PhysicalChests {
+
+    private record WorldDimension(String worldName, int dimensionId) {
+    }
+
+    private record BlockPos(WorldDimension dimension, int x, int y, int z) {
+    }
+
+    private static final long MAX_JOURNAL_BYTES = 1 << 20;
+
+    private final DeathChestPlugin plugin;
+    // Outstanding chests by chunk and ID, whether the chunk is loaded or not
+    private final Map<WorldDimension, Map<Long, Map<UUID, ChestSummary>>> byChunk = new ConcurrentHashMap<>();
+    // Loaded chunks that have been seen, with their dimension to place blocks in
+    private final Map<WorldDimension, Map<Long, Dimension>> loadedChunks = new ConcurrentHashMap<>();
+    private final Map<BlockPos, ChestSummary> placed = new ConcurrentHashMap<>();
+    // Blocks the journal says were still placed when the server last stopped, by chunk
+    private final Map<WorldDimension, Map<Long, Set<BlockPos>>> leftovers = new ConcurrentHashMap<>();
+    private final Path journalFile;
+    private FileChannel journal;
+
+    /**
+     * @param journalFile Journal of placed blocks; blocks it lists from an earlier run are removed as their chunks load
+     */
+    public PhysicalChests(DeathChestPlugin plugin, Path journalFile) {
+        this.plugin = plugin;
+        this.journalFile = journalFile;
+        try {
+            int count = 0;
+            for (BlockPos pos : readJournal()) {
+                leftovers.computeIfAbsent(pos.dimension(), k -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(chunkKey(pos.x() >> 4, pos.z() >> 4), k -> ConcurrentHashMap.newKeySet())
+                        .add(pos);
+                count++;
+            }
+            if (count > 0) {
+                plugin.getPluginLogger().warn(count + " death chest blocks were left in the world by an unclean shutdown,"
+                        + " they are removed as their chunks load");
+            }
+            compactJournal();
+        } catch (IOException e) {
+            plugin.getPluginLogger().error("Failed to open " + journalFile.getFileName()
+                    + ", chest blocks left behind by a crash will not be removed", e);
+        }
+    }
+
+    /**
+     * Indexes an active chest and places it if its chunk is loaded.
+     */
+    void add(ChestSummary chest) {
+        if (chest.isRecovered()) {
+            return;
+        }
+        WorldDimension dimension = dimensionOf(chest);
+        long chunk = chunkOf(chest);
+        byChunk.computeIfAbsent(dimension, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(chunk, k -> new ConcurrentHashMap<>())
+                .put(chest.getChestId(), chest);
+        Map<Long, Dimension> loaded = loadedChunks.get(dimension);
+        Dimension world = loaded != null ? loaded.get(chunk) : null;
+        if (world != null) {
+            Server.getInstance().getScheduler().runLater(plugin, () -> place(world, chest));
+        }
+    }
+
+    /**
+     * Drops a chest that was recovered, expired or removed, and its block if it is placed.
+     * Another chest at the same block is placed in its stead.
+     */
+    void remove(ChestSummary chest) {
+        WorldDimension dimension = dimensionOf(chest);
+        Map<Long, Map<UUID, ChestSummary>> chunks = byChunk.get(dimension);
+        if (chunks != null) {
+            chunks.computeIfPresent(chunkOf(chest), (chunk, chests) -> {
+                chests.remove(chest.getChestId(), chest);
+                return chests.isEmpty() ? null : chests;
+            });
+        }
+        BlockPos pos = blockOf(chest);
+        Map<Long, Dimension> loaded = loadedChunks.get(dimension);
+        Dimension world = loaded != null ? loaded.get(chunkOf(chest)) : null;
+        if (world != null && placed.get(pos) == chest) {
+            Server.getInstance().getScheduler().runLater(plugin, () -> {
+                clear(world, pos, chest);
+                chestsIn(pos.dimension(), chunkOf(chest)).stream()
+                        .filter(next -> blockOf(next).equals(pos))
+                        .min(Comparator.comparingLong(ChestSummary::getDeathTime))
+                        .ifPresent(next -> place(world, next));
+            });
+        }
+    }
+
+    /**
+     * Removes blocks left behind by a crash from a chunk that just loaded and places its chests.
+     */
+    public void onChunkLoad(Dimension world, int chunkX, int chunkZ) {
+        WorldDimension dimension = dimensionOf(world);
+        long chunk = chunkKey(chunkX, chunkZ);
+        loadedChunks.computeIfAbsent(dimension, k -> new ConcurrentHashMap<>()).put(chunk, world);
+        Map<Long, Set<BlockPos>> leftoverChunks = leftovers.get(dimension);
+        Set<BlockPos> stale = leftoverChunks != null ? leftoverChunks.get(chunk) : null;
+        List<ChestSummary> chests = chestsIn(dimension, chunk);
+        if (stale == null && chests.isEmpty()) {
+            return;
+        }
+        Server.getInstance().getScheduler().runLater(plugin, () -> {
+            if (stale != null) {
+                for (BlockPos pos : List.copyOf(stale)) {
+                    removeLeftover(world, pos);
+                    stale.remove(pos);
+                }
+                leftoverChunks.remove(chunk, Set.of());
+            }
+            for (ChestSummary chest : chests) {
+                place(world, chest);
+            }
+        });
+    }
+
+    /**
+     * Places the chests of chunks that were already loaded before the listener was registered.
+     * Must run on the server thread.
+     */
+    public void scanLoadedChunks() {
+        for (var world : Server.getInstance().getWorldPool().getWorlds().values()) {
+            for (Dimension dimension : world.getDimensions().values()) {
+                for (var chunk : dimension.getChunkManager().getLoadedChunks()) {
+                    onChunkLoad(dimension, chunk.getX(), chunk.getZ());
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the blocks of a chunk that is about to unload, so they are not saved with it.
+     */
+    public void onChunkUnload(Dimension world, int chunkX, int chunkZ) {
+        WorldDimension dimension = dimensionOf(world);
+        long chunk = chunkKey(chunkX, chunkZ);
+        Map<Long, Dimension> loaded = loadedChunks.get(dimension);
+        if (loaded != null) {
+            loaded.remove(chunk);
+        }
+        for (ChestSummary chest : chestsIn(dimension, chunk)) {
+            clear(world, blockOf(chest), chest);
+        }
+    }
+
+    /**
+     * The chest whose block is at a position, or null. Must run on the server thread.
+     */
+    public ChestSummary getChestAt(Dimension world, int x, int y, int z) {
+        BlockPos pos = new BlockPos(dimensionOf(world), x, y, z);
+        ChestSummary chest = placed.get(pos);
+        if (chest == null) {
+            return null;
+        }
+        BlockState current = world.getBlockState(x, y, z);
+        if (current == null || current.getBlockType() != BlockTypes.CHEST) {
+            // The block was replaced behind our back, the chest is virtual from now on
+            if (placed.remove(pos, chest)) {
+                journal(false, pos);
+            }
+            return null;
+        }
+        return chest;
+    }
+
+    /**
+     * Removes every placed block, e.g. when the plugin is disabled. Must run on the server thread.
+     */
+    public void clearAll() {
+        for (Map.Entry<WorldDimension, Map<Long, Dimension>> dimension : loadedChunks.entrySet()) {
+            for (Map.Entry<Long, Dimension> chunk : dimension.getValue().entrySet()) {
+                for (ChestSummary chest : chestsIn(dimension.getKey(), chunk.getKey())) {
+                    clear(chunk.getValue(), blockOf(chest), chest);
+                }
+            }
+        }
+        loadedChunks.clear();
+        closeJournal();
+    }
+
+    public int getPlacedCount() {
+        return placed.size();
+    }
+
+    private void place(Dimension world, ChestSummary chest) {
+        BlockPos pos = blockOf(chest);
+        long chunk = chunkOf(chest);
+        Map<Long, Dimension> loaded = loadedChunks.get(pos.dimension());
+        if (loaded == null || loaded.get(chunk) != world) {
+            // Unloaded again before the task ran
+            return;
+        }
+        Map<Long, Map<UUID, ChestSummary>> chunks = byChunk.get(pos.dimension());
+        Map<UUID, ChestSummary> chests = chunks != null ? chunks.get(chunk) : null;
+        if (chest.isRecovered() || placed.containsKey(pos) || chests == null || chests.get(chest.getChestId()) != chest) {
+            // Recovered or removed before the task ran, or another chest already stands there
+            return;
+        }
+        var info = world.getDimensionInfo();
+        if (pos.y() < info.minHeight() || pos.y() > info.maxHeight()) {
+            return;
+        }
+        BlockState current = world.getBlockState(pos.x(), pos.y(), pos.z());
+        if (current != null && current.getBlockType() != BlockTypes.AIR) {
+            // Something was built where the player died, leave the chest virtual
+            return;
+        }
+        if (placed.putIfAbsent(pos, chest) == null) {
+            // Journaled first, so a crash right after never leaves an unknown block
+            journal(true, pos);
+            world.setBlockState(pos.x(), pos.y(), pos.z(), BlockTypes.CHEST.getDefaultState());
+        }
+    }
+
+    private void clear(Dimension world, BlockPos pos, ChestSummary chest) {
+        if (placed.get(pos) != chest || !placed.remove(pos, chest)) {
+            return;
+        }
+        BlockState current = world.getBlockState(pos.x(), pos.y(), pos.z());
+        if (current != null && current.getBlockType() == BlockTypes.CHEST) {
+            world.setBlockState(pos.x(), pos.y(), pos.z(), BlockTypes.AIR.getDefaultState());
+        }
+        journal(false, pos);
+    }
+
+    private void removeLeftover(Dimension world, BlockPos pos) {
+        if (placed.containsKey(pos)) {
+            // Already replaced by a chest of this run
+            return;
+        }
+        BlockState current = world.getBlockState(pos.x(), pos.y(), pos.z());
+        if (current != null && current.getBlockType() == BlockTypes.CHEST) {
+            world.setBlockState(pos.x(), pos.y(), pos.z(), BlockTypes.AIR.getDefaultState());
+        }
+        journal(false, pos);
+    }
+
+    /**
+     * Replays the journal: the blocks that were placed and not removed again. A torn last record is ignored.
+     */
+    private Set<BlockPos> readJournal() throws IOException {
+        Set<BlockPos> positions = new LinkedHashSet<>();
+        if (!Files.exists(journalFile)) {
+            return positions;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalFile)))) {
+            int op;
+            while ((op = in.read()) >= 0) {
+                BlockPos pos = new BlockPos(new WorldDimension(in.readUTF(), in.readInt()), in.readInt(), in.readInt(), in.readInt());
+                if (op == 1) {
+                    positions.add(pos);
+                } else {
+                    positions.remove(pos);
+                }
+            }
+        } catch (EOFException e) {
+            // Torn by a crash mid-append, the records before it are intact
+        }
+        return positions;
+    }
+
+    /**
+     * Rewrites the journal with only the blocks that are placed or left over, then reopens it for appending.
+     */
+    private synchronized void compactJournal() throws IOException {
+        closeJournal();
+        List<BlockPos> positions = new ArrayList<>(placed.keySet());
+        leftovers.values().forEach(chunks -> chunks.values().forEach(positions::addAll));
+        Path temp = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (BlockPos pos : positions) {
+                write(channel, encode(true, pos));
+            }
+            channel.force(false);
+        }
+        AtomicFiles.replace(temp, journalFile);
+        journal = FileChannel.open(journalFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private synchronized void journal(boolean placing, BlockPos pos) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            // Not forced: it only has to survive the server process, the OS writes it out on its own
+            write(journal, encode(placing, pos));
+            if (journal.size() > MAX_JOURNAL_BYTES) {
+                compactJournal();
+            }
+        } catch (IOException e) {
+            plugin.getPluginLogger().error("Failed to write " + journalFile.getFileName()
+                    + ", chest blocks left behind by a crash will not be removed", e);
+            closeJournal();
+        }
+    }
+
+    private synchronized void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            plugin.getPluginLogger().warn("Failed to close " + journalFile.getFileName() + ": " + e.getMessage());
+        }
+        journal = null;
+    }
+
+    private static ByteBuffer encode(boolean placing, BlockPos pos) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(placing ? 1 : 0);
+            out.writeUTF(pos.dimension().worldName());
+            out.writeInt(pos.dimension().dimensionId());
+            out.writeInt(pos.x());
+            out.writeInt(pos.y());
+            out.writeInt(pos.z());
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static void write(FileChannel channel, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private List<ChestSummary> chestsIn(WorldDimension dimension, long chunk) {
+        Map<Long, Map<UUID, ChestSummary>> chunks = byChunk.get(dimension);
+        Map<UUID, ChestSummary> chests = chunks != null ? chunks.get(chunk) : null;
+        return chests != null ? new ArrayList<>(chests.values()) : List.of();
+    }
+
+    private static WorldDimension dimensionOf(ChestSummary chest) {
+        return new WorldDimension(chest.getWorldName(), chest.getDimensionId());
+    }
+
+    private static WorldDimension dimensionOf(Dimension world) {
+        return new WorldDimension(world.getWorld().getName(), world.getDimensionInfo().dimensionId());
+    }
+
+    private static BlockPos blockOf(ChestSummary chest) {
+        return new BlockPos(dimensionOf(chest), (int) Math.floor(chest.getX()), (int) Math.floor(chest.getY()),
+                (int) Math.floor(chest.getZ()));
+    }
+
+    private static long chunkOf(ChestSummary chest) {
+        return chunkKey((int) Math.floor(chest.getX()) >> 4, (int) Math.floor(chest.getZ()) >> 4);
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,152 @@
+package org.allaymc.deathchest.managers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Plans where recovered items go in an inventory without touching it.
+ * <p>
+ * The inventory is read once. Each item is first merged into partial stacks that are fully equal
+ * to it (same type and same NBT apart from the count) up to the item's real max stack size,
+ * then placed into empty slots in slot order. Slots filled earlier in the plan take part in
+ * merging for later items, so the plan matches what applying it one item at a time would do.
+ *
+ * @param <T> Item representation, {@code ItemStack} in the plugin
+ */
+public class PlacementPlanner<T> {
+
+    /**
+     * How the planner looks at an item.
+     */
+    public interface ItemView<T> {
+
+        /**
+         * Whether the slot content is null or air.
+         */
+        boolean isEmpty(T item);
+
+        /**
+         * Cheap identity used to find merge candidates before comparing stack keys.
+         */
+        Object getType(T item);
+
+        int getCount(T item);
+
+        int getMaxStackSize(T item);
+
+        /**
+         * Everything that must be equal for two stacks to merge, excluding the count.
+         */
+        Object getStackKey(T item);
+    }
+
+    /**
+     * @param slot  Inventory slot
+     * @param item  Item that is (partially) placed
+     * @param count Number of items added to the slot
+     * @param merge Whether the slot already holds an equal stack; otherwise it is empty
+     */
+    public record Placement<T>(int slot, T item, int count, boolean merge) {
+    }
+
+    /**
+     * @param placements   Changes to apply, in order
+     * @param missingSlots Additional empty slots that would be needed to place everything
+     */
+    public record Plan<T>(List<Placement<T>> placements, int missingSlots) {
+
+        /**
+         * Whether every item fits.
+         */
+        public boolean fits() {
+            return missingSlots == 0;
+        }
+    }
+
+    private final ItemView<T> view;
+
+    public PlacementPlanner(ItemView<T> view) {
+        this.view = view;
+    }
+
+    /**
+     * @param slots Current inventory contents, by slot
+     * @param items Items to place, in order
+     */
+    public Plan<T> plan(List<T> slots, List<T> items) {
+        int size = slots.size();
+        int[] counts = new int[size];
+        int[] maxSizes = new int[size];
+        Object[] keys = new Object[size];
+        ArrayDeque<Integer> emptySlots = new ArrayDeque<>();
+        Map<Object, List<Integer>> partialByType = new HashMap<>();
+
+        for (int slot = 0; slot < size; slot++) {
+            T existing = slots.get(slot);
+            if (view.isEmpty(existing)) {
+                emptySlots.add(slot);
+                continue;
+            }
+            counts[slot] = view.getCount(existing);
+            maxSizes[slot] = view.getMaxStackSize(existing);
+            if (counts[slot] < maxSizes[slot]) {
+                partialByType.computeIfAbsent(view.getType(existing), type -> new ArrayList<>()).add(slot);
+            }
+        }
+
+        List<Placement<T>> placements = new ArrayList<>(items.size());
+        int missingSlots = 0;
+        for (T item : items) {
+            int remaining = view.getCount(item);
+            int maxStackSize = Math.max(1, view.getMaxStackSize(item));
+            Object type = view.getType(item);
+            Object key = null;
+
+            List<Integer> candidates = partialByType.get(type);
+            if (candidates != null) {
+                key = view.getStackKey(item);
+                for (Iterator<Integer> it = candidates.iterator(); it.hasNext() && remaining > 0; ) {
+                    int slot = it.next();
+                    if (keys[slot] == null) {
+                        keys[slot] = view.getStackKey(slots.get(slot));
+                    }
+                    if (!Objects.equals(key, keys[slot])) {
+                        continue;
+                    }
+                    int added = Math.min(maxSizes[slot] - counts[slot], remaining);
+                    if (added > 0) {
+                        counts[slot] += added;
+                        remaining -= added;
+                        placements.add(new Placement<>(slot, item, added, true));
+                    }
+                    if (counts[slot] >= maxSizes[slot]) {
+                        it.remove();
+                    }
+                }
+            }
+
+            while (remaining > 0 && !emptySlots.isEmpty()) {
+                int slot = emptySlots.poll();
+                int added = Math.min(maxStackSize, remaining);
+                counts[slot] = added;
+                maxSizes[slot] = maxStackSize;
+                remaining -= added;
+                placements.add(new Placement<>(slot, item, added, false));
+                if (added < maxStackSize) {
+                    keys[slot] = key != null ? key : view.getStackKey(item);
+                    partialByType.computeIfAbsent(type, t -> new ArrayList<>()).add(slot);
+                }
+            }
+
+            if (remaining > 0) {
+                missingSlots += (remaining + maxStackSize - 1) / maxStackSize;
+            }
+        }
+        return new Plan<>(placements, missingSlots);
+    }
+}
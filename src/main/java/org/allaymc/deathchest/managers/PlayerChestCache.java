@@ -0,0 +1,284 @@
+package org.allaymc.deathchest.managers;
+
+import org.allaymc.deathchest.data.ChestData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Bounded cache of fully loaded player chest lists.
+ * <p>
+ * Entries are evicted least recently used first once the cache grows past its limit,
+ * or when they have been idle for too long. Offline players are evicted before online ones.
+ * Players with unsaved changes are never written on the caller's thread; they are dropped
+ * once the background writer has saved them.
+ * A miss reloads the player's chests from disk transparently.
+ * <p>
+ * Every mutation goes through {@link #update}, which runs inside the map's per-key lock and
+ * marks the player dirty before returning. Eviction removes an entry under the same lock and
+ * only if it is not dirty, so a change can never land in a list that was already dropped.
+ */
+public class PlayerChestCache {
+
+    private static final class Entry {
+        final List<ChestData> chests;
+        volatile long lastAccess;
+
+        Entry(List<ChestData> chests) {
+            this.chests = Collections.synchronizedList(new ArrayList<>(chests));
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxPlayers;
+    private final long idleMillis;
+    private final Function<UUID, List<ChestData>> loader;
+    private final Consumer<UUID> onChange;
+    private final Predicate<UUID> isDirty;
+    private final Function<UUID, CompletableFuture<Void>> written;
+    private final Predicate<UUID> isOnline;
+    private final Consumer<UUID> onEvict;
+    // Dirty players waiting for their write before they are dropped
+    private final Set<UUID> evicting = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxPlayers Maximum number of players kept in memory
+     * @param idleMillis Time after which an unused entry may be evicted
+     * @param loader     Reads a player's chests from disk
+     * @param onChange   Called (inside the entry lock) after every mutation to schedule a save
+     * @param isDirty    Whether a player has changes that have not reached disk yet, including a write in progress
+     * @param written    Returns a future that completes once a player's pending changes are on disk
+     * @param isOnline   Whether a player is currently online
+     * @param onEvict    Called after a player was dropped, to release state kept alongside the entry
+     */
+    public PlayerChestCache(int maxPlayers, long idleMillis,
+                            Function<UUID, List<ChestData>> loader, Consumer<UUID> onChange,
+                            Predicate<UUID> isDirty, Function<UUID, CompletableFuture<Void>> written,
+                            Predicate<UUID> isOnline,
+                            Consumer<UUID> onEvict) {
+        this.maxPlayers = Math.max(1, maxPlayers);
+        this.idleMillis = idleMillis;
+        this.loader = loader;
+        this.onChange = onChange;
+        this.isDirty = isDirty;
+        this.written = written;
+        this.isOnline = isOnline;
+        this.onEvict = onEvict;
+    }
+
+    /**
+     * Returns a copy of the player's chests, loading them on a miss.
+     */
+    public List<ChestData> snapshot(UUID playerId) {
+        Entry entry = load(playerId);
+        synchronized (entry.chests) {
+            return new ArrayList<>(entry.chests);
+        }
+    }
+
+    /**
+     * Returns a copy of the player's chests if they are cached, or null. Never loads from disk.
+     */
+    public List<ChestData> getIfLoaded(UUID playerId) {
+        Entry entry = entries.get(playerId);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry.chests) {
+            return new ArrayList<>(entry.chests);
+        }
+    }
+
+    /**
+     * Applies a mutation to the player's chest list, loading it on a miss, and schedules a save.
+     *
+     * @return the value returned by the mutation
+     */
+    public <T> T update(UUID playerId, Function<List<ChestData>, T> mutation) {
+        List<T> result = new ArrayList<>(1);
+        while (result.isEmpty()) {
+            load(playerId);
+            entries.computeIfPresent(playerId, (id, entry) -> {
+                entry.lastAccess = System.currentTimeMillis();
+                result.add(mutation.apply(entry.chests));
+                onChange.accept(id);
+                return entry;
+            });
+            // An empty result means the entry was evicted between load and update, load it again
+        }
+        return result.get(0);
+    }
+
+    private Entry load(UUID playerId) {
+        Entry entry = entries.get(playerId);
+        if (entry != null) {
+            hits.incrementAndGet();
+            entry.lastAccess = System.currentTimeMillis();
+            return entry;
+        }
+
+        misses.incrementAndGet();
+        Entry loaded = new Entry(loader.apply(playerId));
+        Entry existing = entries.putIfAbsent(playerId, loaded);
+        if (existing != null) {
+            return existing;
+        }
+        if (entries.size() > maxPlayers) {
+            evictOverflow();
+        }
+        return loaded;
+    }
+
+    /**
+     * Evicts entries that have been idle for longer than the configured idle time.
+     * Dirty entries are skipped, the background writer will have saved them by the next run.
+     */
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        for (Map.Entry<UUID, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().lastAccess < cutoff && !isOnline.test(entry.getKey())) {
+                evictIfClean(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Shrinks the cache to 90% of its limit so evictions are amortized over several misses.
+     * Clean offline players go first, then clean online players, and dirty players last.
+     * Dirty players are left in place until the background writer has saved them.
+     */
+    private synchronized void evictOverflow() {
+        int target = maxPlayers - Math.max(1, maxPlayers / 10);
+        if (entries.size() - evicting.size() <= target) {
+            return;
+        }
+
+        List<UUID> byAge = new ArrayList<>(entries.keySet());
+        byAge.sort(Comparator.comparingLong(id -> {
+            Entry entry = entries.get(id);
+            return entry != null ? entry.lastAccess : 0;
+        }));
+
+        for (int pass = 0; pass < 3 && entries.size() - evicting.size() > target; pass++) {
+            for (UUID playerId : byAge) {
+                if (entries.size() - evicting.size() <= target) {
+                    break;
+                }
+                boolean online = isOnline.test(playerId);
+                boolean dirty = isDirty.test(playerId);
+                boolean eligible = switch (pass) {
+                    case 0 -> !online && !dirty;
+                    case 1 -> !dirty;
+                    default -> true;
+                };
+                if (!eligible || evicting.contains(playerId)) {
+                    continue;
+                }
+                if (dirty) {
+                    evictWhenWritten(playerId);
+                } else {
+                    evictIfClean(playerId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops a dirty entry once its pending changes are written, unless it was used again in the meantime.
+     */
+    private void evictWhenWritten(UUID playerId) {
+        Entry entry = entries.get(playerId);
+        if (entry == null) {
+            return;
+        }
+        long lastAccess = entry.lastAccess;
+        evicting.add(playerId);
+        written.apply(playerId).whenComplete((ignored, failure) -> {
+            evicting.remove(playerId);
+            Entry current = entries.get(playerId);
+            if (failure == null && current == entry && entry.lastAccess == lastAccess) {
+                evictIfClean(playerId);
+            }
+        });
+    }
+
+    /**
+     * Drops an entry unless it has unsaved changes or is being written right now,
+     * since the writer reads the list from the cache.
+     */
+    private void evictIfClean(UUID playerId) {
+        boolean[] evicted = new boolean[1];
+        entries.computeIfPresent(playerId, (id, entry) -> {
+            if (isDirty.test(id)) {
+                return entry;
+            }
+            evicted[0] = true;
+            return null;
+        });
+        if (evicted[0]) {
+            evictions.incrementAndGet();
+            onEvict.accept(playerId);
+        }
+    }
+
+    /**
+     * Players whose chests are currently held in memory.
+     */
+    public Set<UUID> getLoadedPlayers() {
+        return entries.keySet();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Runs the action for every chest currently held in memory. Never loads from disk.
+     */
+    public void forEachLoaded(Consumer<ChestData> action) {
+        for (Entry entry : entries.values()) {
+            synchronized (entry.chests) {
+                entry.chests.forEach(action);
+            }
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * One-line summary for logging.
+     */
+    public String describe() {
+        long total = hits.get() + misses.get();
+        double hitRate = total == 0 ? 0 : 100.0 * hits.get() / total;
+        return String.format(Locale.US, "size=%d/%d hits=%d misses=%d hitRate=%.1f%% evictions=%d",
+                size(), maxPlayers, hits.get(), misses.get(), hitRate, evictions.get());
+    }
+}
@@ -0,0 +1,157 @@
+package org.allaymc.deathchest.managers;
+
+import org.allaymc.deathchest.data.ChestSummary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Death chest locations per world and dimension, bucketed into a grid of 64x64 block cells.
+ * <p>
+ * A query only visits the cells its area overlaps. Areas spanning more cells than a world
+ * has occupied ones walk the occupied cells instead, so even huge areas cost at most one pass
+ * over the cells rather than over every chest. Heights are ignored; cells are columns.
+ */
+public class SpatialIndex {
+
+    private static final int CELL_SHIFT = 6;
+
+    private record WorldDimension(String worldName, int dimensionId) {
+    }
+
+    private final Map<WorldDimension, Map<Long, List<ChestSummary>>> grids = new ConcurrentHashMap<>();
+
+    public void add(ChestSummary summary) {
+        Map<Long, List<ChestSummary>> grid = grids.computeIfAbsent(dimensionOf(summary), k -> new ConcurrentHashMap<>());
+        grid.compute(cellOf(summary), (cell, chests) -> {
+            if (chests == null) {
+                chests = Collections.synchronizedList(new ArrayList<>());
+            }
+            chests.add(summary);
+            return chests;
+        });
+    }
+
+    public void remove(ChestSummary summary) {
+        Map<Long, List<ChestSummary>> grid = grids.get(dimensionOf(summary));
+        if (grid == null) {
+            return;
+        }
+        grid.computeIfPresent(cellOf(summary), (cell, chests) -> {
+            chests.removeIf(chest -> chest == summary);
+            return chests.isEmpty() ? null : chests;
+        });
+    }
+
+    /**
+     * Finds the chests inside a rectangle, borders included.
+     *
+     * @param filter Only chests matching it are returned
+     */
+    public List<ChestSummary> findInArea(String worldName, int dimensionId, double x1, double z1, double x2, double z2,
+                                         Predicate<ChestSummary> filter) {
+        double minX = Math.min(x1, x2);
+        double maxX = Math.max(x1, x2);
+        double minZ = Math.min(z1, z2);
+        double maxZ = Math.max(z1, z2);
+        return collect(worldName, dimensionId, minX, minZ, maxX, maxZ, chest ->
+                chest.getX() >= minX && chest.getX() <= maxX && chest.getZ() >= minZ && chest.getZ() <= maxZ
+                        && filter.test(chest));
+    }
+
+    /**
+     * Finds the chests within a horizontal radius of a point, nearest first.
+     *
+     * @param filter Only chests matching it are returned
+     */
+    public List<ChestSummary> findNear(String worldName, int dimensionId, double x, double z, double radius,
+                                       Predicate<ChestSummary> filter) {
+        double radiusSquared = radius * radius;
+        List<ChestSummary> chests = collect(worldName, dimensionId, x - radius, z - radius, x + radius, z + radius,
+                chest -> distanceSquared(chest, x, z) <= radiusSquared && filter.test(chest));
+        chests.sort(Comparator.comparingDouble(chest -> distanceSquared(chest, x, z)));
+        return chests;
+    }
+
+    private List<ChestSummary> collect(String worldName, int dimensionId, double minX, double minZ, double maxX,
+                                       double maxZ, Predicate<ChestSummary> filter) {
+        List<ChestSummary> result = new ArrayList<>();
+        Map<Long, List<ChestSummary>> grid = grids.get(new WorldDimension(worldName, dimensionId));
+        if (grid == null) {
+            return result;
+        }
+
+        int minCellX = cell(minX);
+        int maxCellX = cell(maxX);
+        int minCellZ = cell(minZ);
+        int maxCellZ = cell(maxZ);
+        long cells = ((long) maxCellX - minCellX + 1) * ((long) maxCellZ - minCellZ + 1);
+        if (cells > grid.size()) {
+            for (Map.Entry<Long, List<ChestSummary>> entry : grid.entrySet()) {
+                int cellX = (int) (entry.getKey() >> 32);
+                int cellZ = (int) (long) entry.getKey();
+                if (cellX >= minCellX && cellX <= maxCellX && cellZ >= minCellZ && cellZ <= maxCellZ) {
+                    addMatching(entry.getValue(), filter, result);
+                }
+            }
+        } else {
+            for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+                for (int cellZ = minCellZ; cellZ <= maxCellZ; cellZ++) {
+                    List<ChestSummary> chests = grid.get(key(cellX, cellZ));
+                    if (chests != null) {
+                        addMatching(chests, filter, result);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void addMatching(List<ChestSummary> chests, Predicate<ChestSummary> filter, List<ChestSummary> result) {
+        synchronized (chests) {
+            for (ChestSummary chest : chests) {
+                if (filter.test(chest)) {
+                    result.add(chest);
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of occupied cells over all worlds.
+     */
+    public int getCellCount() {
+        int count = 0;
+        for (Map<Long, List<ChestSummary>> grid : grids.values()) {
+            count += grid.size();
+        }
+        return count;
+    }
+
+    private static WorldDimension dimensionOf(ChestSummary summary) {
+        return new WorldDimension(summary.getWorldName(), summary.getDimensionId());
+    }
+
+    private static long cellOf(ChestSummary summary) {
+        return key(cell(summary.getX()), cell(summary.getZ()));
+    }
+
+    private static int cell(double coordinate) {
+        return (int) Math.floor(coordinate) >> CELL_SHIFT;
+    }
+
+    private static long key(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+
+    private static double distanceSquared(ChestSummary chest, double x, double z) {
+        double dx = chest.getX() - x;
+        double dz = chest.getZ() - z;
+        return dx * dx + dz * dz;
+    }
+}
@@ -0,0 +1,98 @@
+package org.allaymc.deathchest.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms for the hot paths of the plugin.
+ * Everything is cumulative since the plugin was enabled and safe to record from any thread.
+ */
+public class ChestMetrics {
+
+    private final LatencyHistogram capture = new LatencyHistogram();
+    private final LatencyHistogram captureTick = new LatencyHistogram();
+    private final LatencyHistogram captureAsync = new LatencyHistogram();
+    private final LatencyHistogram save = new LatencyHistogram();
+    private final LatencyHistogram load = new LatencyHistogram();
+    private final LatencyHistogram recover = new LatencyHistogram();
+    private final LatencyHistogram cleanup = new LatencyHistogram();
+
+    private final AtomicLong capturedItems = new AtomicLong();
+    private final AtomicLong recoveries = new AtomicLong();
+    private final AtomicLong failedRecoveries = new AtomicLong();
+    private final AtomicLong expiredChests = new AtomicLong();
+
+    /**
+     * A player's inventory was stored in a new death chest.
+     *
+     * @param nanos Time from the death event until the chest was handed to storage
+     */
+    public void recordCapture(long nanos, int items) {
+        capture.record(nanos);
+        capturedItems.addAndGet(items);
+    }
+
+    /**
+     * Part of the death capture that ran on the server thread.
+     */
+    public void recordCaptureTick(long nanos) {
+        captureTick.record(nanos);
+    }
+
+    /**
+     * Part of the death capture that ran on a worker thread (NBT serialization and storage hand-off).
+     */
+    public void recordCaptureAsync(long nanos) {
+        captureAsync.record(nanos);
+    }
+
+    public void recordSave(long nanos) {
+        save.record(nanos);
+    }
+
+    public void recordLoad(long nanos) {
+        load.record(nanos);
+    }
+
+    public void recordRecovery(long nanos, boolean success) {
+        recover.record(nanos);
+        (success ? recoveries : failedRecoveries).incrementAndGet();
+    }
+
+    /**
+     * A cleanup run that had due chests to process.
+     */
+    public void recordCleanup(long nanos, int expired) {
+        cleanup.record(nanos);
+        expiredChests.addAndGet(expired);
+    }
+
+    /**
+     * Adds all counters and histograms to the map as flat snake_case keys.
+     */
+    public void snapshot(Map<String, Object> out) {
+        histogram(out, "capture", capture);
+        out.put("capture_items", capturedItems.get());
+        histogram(out, "capture_tick", captureTick);
+        histogram(out, "capture_async", captureAsync);
+        histogram(out, "save", save);
+        histogram(out, "load", load);
+        histogram(out, "recover", recover);
+        out.put("recover_success", recoveries.get());
+        out.put("recover_failed", failedRecoveries.get());
+        histogram(out, "cleanup", cleanup);
+        out.put("cleanup_expired", expiredChests.get());
+    }
+
+    private static void histogram(Map<String, Object> out, String name, LatencyHistogram histogram) {
+        out.put(name + "_count", histogram.getCount());
+        out.put(name + "_p50_ms", millis(histogram.getPercentileMillis(50)));
+        out.put(name + "_p99_ms", millis(histogram.getPercentileMillis(99)));
+        out.put(name + "_max_ms", millis(histogram.getMaxMillis()));
+    }
+
+    private static String millis(double value) {
+        return String.format(Locale.US, "%.3f", value);
+    }
+}
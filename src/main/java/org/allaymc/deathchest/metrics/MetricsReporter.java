@@ -0,0 +1,85 @@
+package org.allaymc.deathchest.metrics;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Periodically appends a metrics snapshot to a file as a single {@code key=value} line,
+ * so it can be picked up by log scraping. The file is rolled over to {@code <name>.1}
+ * once it grows past {@link #MAX_FILE_BYTES}.
+ */
+public class MetricsReporter {
+
+    private static final long MAX_FILE_BYTES = 1024 * 1024;
+
+    private final Path file;
+    private final Supplier<Map<String, Object>> source;
+    private final Logger logger;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * @param file            File the snapshots are appended to
+     * @param source          Produces the current metrics; called on the reporter thread
+     * @param intervalSeconds Time between two snapshots
+     */
+    public MetricsReporter(Path file, Supplier<Map<String, Object>> source, long intervalSeconds, Logger logger) {
+        this.file = file;
+        this.source = source;
+        this.logger = logger;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DeathChest-Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Formats a snapshot as one line: {@code time=<iso instant> key=value ...}.
+     */
+    public static String format(Map<String, Object> metrics) {
+        StringBuilder line = new StringBuilder(1024);
+        line.append("time=").append(Instant.now());
+        for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+            line.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return line.toString();
+    }
+
+    private void report() {
+        try {
+            String line = format(source.get()) + System.lineSeparator();
+            if (Files.exists(file) && Files.size(file) > MAX_FILE_BYTES) {
+                Files.move(file, file.resolveSibling(file.getFileName() + ".1"), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.writeString(file, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to write metrics to " + file.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops reporting and writes one final snapshot.
+     */
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report();
+    }
+}
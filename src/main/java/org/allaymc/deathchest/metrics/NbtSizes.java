@@ -0,0 +1,58 @@
+package org.allaymc.deathchest.metrics;
+
+import org.cloudburstmc.nbt.NbtMap;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates the encoded size of NBT values without actually encoding them.
+ * Matches the uncompressed little-endian NBT layout closely enough for memory gauges.
+ */
+public final class NbtSizes {
+
+    private NbtSizes() {
+    }
+
+    public static long estimate(Object value) {
+        if (value instanceof NbtMap map) {
+            long size = 1; // end tag
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                size += 3 + entry.getKey().length() + estimate(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof List<?> list) {
+            long size = 5; // element type + length
+            for (Object element : list) {
+                size += estimate(element);
+            }
+            return size;
+        }
+        if (value instanceof String string) {
+            return 2 + string.length();
+        }
+        if (value instanceof Byte || value instanceof Boolean) {
+            return 1;
+        }
+        if (value instanceof Short) {
+            return 2;
+        }
+        if (value instanceof Integer || value instanceof Float) {
+            return 4;
+        }
+        if (value instanceof Long || value instanceof Double) {
+            return 8;
+        }
+        if (value instanceof byte[] bytes) {
+            return 4 + bytes.length;
+        }
+        if (value instanceof int[] ints) {
+            return 4 + 4L * ints.length;
+        }
+        if (value instanceof long[] longs) {
+            return 4 + 8L * longs.length;
+        }
+        return 0;
+    }
+}
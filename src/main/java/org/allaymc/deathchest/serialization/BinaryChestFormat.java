@@ -0,0 +1,289 @@
+package org.allaymc.deathchest.serialization;
+
+import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.data.ChestSummary;
+import org.allaymc.deathchest.data.ItemData;
+import org.cloudburstmc.nbt.NBTInputStream;
+import org.cloudburstmc.nbt.NBTOutputStream;
+import org.cloudburstmc.nbt.NbtMap;
+import org.cloudburstmc.nbt.NbtUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact binary chest files.
+ * <p>
+ * Layout: a small header (magic, version, flags, chest count) followed by one record per chest.
+ * Each record stores the chest metadata as fixed fields, then the item payload: a length-prefixed
+ * block of raw NBT compounds, optionally compressed with deflate. The payload length lets readers
+ * skip the items when only the metadata is needed.
+ */
+public class BinaryChestFormat implements ChestFormat {
+
+    public static final String NAME = "binary";
+
+    private static final int MAGIC = 0x44434842; // "DCHB"
+    private static final byte VERSION = 1;
+    private static final byte FLAG_DEFLATE = 1;
+    private static final int POOL_REF = -2;
+    private static final int POOL_REF_LENGTH = 32;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final boolean compress;
+
+    /**
+     * @param compress Whether newly written item payloads are deflate-compressed
+     */
+    public BinaryChestFormat(boolean compress) {
+        this.compress = compress;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getExtension() {
+        return ".dcb";
+    }
+
+    @Override
+    public List<ChestData> read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            byte flags = readHeader(in, file);
+            int count = in.readInt();
+            List<ChestData> chests = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ChestData chest = readMetadata(in);
+                int itemCount = in.readInt();
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                chest.setItems(decodeItems(payload, itemCount, (flags & FLAG_DEFLATE) != 0));
+                chests.add(chest);
+            }
+            return chests;
+        }
+    }
+
+    @Override
+    public void readSummaries(Path file, Consumer<ChestSummary> consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            readHeader(in, file);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                ChestSummary summary = ChestSummary.of(readMetadata(in));
+                summary.setItemCount(in.readInt());
+                in.skipNBytes(in.readInt());
+                consumer.accept(summary);
+            }
+        }
+    }
+
+    @Override
+    public void write(Path file, List<ChestData> chests) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(compress ? FLAG_DEFLATE : 0);
+            out.writeInt(chests.size());
+            for (ChestData chest : chests) {
+                writeMetadata(out, chest);
+                List<ItemData> items = chest.getItems() != null ? chest.getItems() : List.of();
+                byte[] payload = encodeItems(items, compress);
+                out.writeInt(items.size());
+                out.writeInt(payload.length);
+                out.write(payload);
+            }
+        }
+    }
+
+    /**
+     * Validates the file header and returns the flags byte.
+     */
+    static byte readHeader(DataInputStream in, Path file) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a DeathChest binary file: " + file);
+        }
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported DeathChest binary version " + version + ": " + file);
+        }
+        return in.readByte();
+    }
+
+    public static void writeMetadata(DataOutputStream out, ChestData chest) throws IOException {
+        writeUuid(out, chest.getChestId());
+        writeUuid(out, chest.getPlayerId());
+        writeString(out, chest.getPlayerName());
+        writeString(out, chest.getWorldName());
+        out.writeLong(chest.getDeathTime());
+        out.writeDouble(chest.getX());
+        out.writeDouble(chest.getY());
+        out.writeDouble(chest.getZ());
+        out.writeInt(chest.getDimensionId());
+        out.writeBoolean(chest.isRecovered());
+    }
+
+    public static ChestData readMetadata(DataInputStream in) throws IOException {
+        ChestData chest = new ChestData();
+        chest.setChestId(readUuid(in));
+        chest.setPlayerId(readUuid(in));
+        chest.setPlayerName(readString(in));
+        chest.setWorldName(readString(in));
+        chest.setDeathTime(in.readLong());
+        chest.setX(in.readDouble());
+        chest.setY(in.readDouble());
+        chest.setZ(in.readDouble());
+        chest.setDimensionId(in.readInt());
+        chest.setRecovered(in.readBoolean());
+        return chest;
+    }
+
+    /**
+     * Encodes items as a sequence of length-prefixed NBT compounds.
+     * A length of -1 marks an item without NBT data; -2 marks a reference into the item pool,
+     * followed by the 32-byte hash.
+     */
+    public static byte[] encodeItems(List<ItemData> items, boolean compress) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(compress ? new DeflaterOutputStream(buffer) : buffer)) {
+            for (ItemData item : items) {
+                NbtMap nbt = item != null ? item.getNbtData() : null;
+                if (nbt == null && item != null && item.getPoolRef() != null) {
+                    out.writeInt(POOL_REF);
+                    out.write(HEX.parseHex(item.getPoolRef()));
+                    continue;
+                }
+                if (nbt == null) {
+                    out.writeInt(-1);
+                    continue;
+                }
+                byte[] bytes = encodeNbt(nbt);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+        return buffer.toByteArray();
+    }
+
+    public static List<ItemData> decodeItems(byte[] payload, int itemCount, boolean compressed) throws IOException {
+        InputStream raw = new ByteArrayInputStream(payload);
+        List<ItemData> items = new ArrayList<>(itemCount);
+        try (DataInputStream in = new DataInputStream(compressed ? new InflaterInputStream(raw) : raw)) {
+            for (int i = 0; i < itemCount; i++) {
+                items.add(readItem(in));
+            }
+        }
+        return items;
+    }
+
+    private static ItemData readItem(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        ItemData item = new ItemData();
+        if (length == POOL_REF) {
+            byte[] hash = new byte[POOL_REF_LENGTH];
+            in.readFully(hash);
+            item.setPoolRef(HEX.formatHex(hash));
+        } else if (length >= 0) {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            item.setNbtData(decodeNbt(bytes));
+        }
+        return item;
+    }
+
+    /**
+     * Decodes items from a payload buffer, e.g. a slice of a memory-mapped file.
+     * Uncompressed payloads are decoded straight from the buffer; each NBT compound is read from
+     * a slice of it without being copied. Compressed payloads are inflated while being read.
+     */
+    public static List<ItemData> decodeItems(ByteBuffer payload, int itemCount, boolean compressed) throws IOException {
+        List<ItemData> items = new ArrayList<>(itemCount);
+        if (compressed) {
+            try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteBufferInputStream(payload)))) {
+                for (int i = 0; i < itemCount; i++) {
+                    items.add(readItem(in));
+                }
+            }
+            return items;
+        }
+
+        int position = payload.position();
+        for (int i = 0; i < itemCount; i++) {
+            int length = payload.getInt(position);
+            position += 4;
+            ItemData item = new ItemData();
+            if (length == POOL_REF) {
+                byte[] hash = new byte[POOL_REF_LENGTH];
+                payload.get(position, hash);
+                item.setPoolRef(HEX.formatHex(hash));
+                position += POOL_REF_LENGTH;
+            } else if (length >= 0) {
+                item.setNbtData(decodeNbt(new ByteBufferInputStream(payload.slice(position, length))));
+                position += length;
+            }
+            items.add(item);
+        }
+        return items;
+    }
+
+    public static byte[] encodeNbt(NbtMap nbt) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        try (NBTOutputStream out = NbtUtils.createWriter(buffer)) {
+            out.writeTag(nbt);
+        }
+        return buffer.toByteArray();
+    }
+
+    public static NbtMap decodeNbt(byte[] bytes) throws IOException {
+        return decodeNbt(new ByteArrayInputStream(bytes));
+    }
+
+    public static NbtMap decodeNbt(InputStream stream) throws IOException {
+        try (NBTInputStream in = NbtUtils.createReader(stream)) {
+            Object tag = in.readTag();
+            if (!(tag instanceof NbtMap map)) {
+                throw new IOException("Expected an NBT compound but found " + tag);
+            }
+            return map;
+        }
+    }
+
+    public static void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    public static UUID readUuid(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,34 @@
+package org.allaymc.deathchest.serialization;
+
+import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.data.ChestSummary;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * On-disk encoding of a player's chest file.
+ */
+public interface ChestFormat {
+
+    /**
+     * Name used in the config file and in commands, e.g. "binary".
+     */
+    String getName();
+
+    /**
+     * File extension including the dot, e.g. ".dcb".
+     */
+    String getExtension();
+
+    List<ChestData> read(Path file) throws IOException;
+
+    /**
+     * Reads only the chest metadata of a file, skipping the item payloads where the format allows it.
+     */
+    void readSummaries(Path file, Consumer<ChestSummary> consumer) throws IOException;
+
+    void write(Path file, List<ChestData> chests) throws IOException;
+}
@@ -0,0 +1,142 @@
+package org.allaymc.deathchest.serialization;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Preset deflate dictionary for single encoded items, trained from sample payloads.
+ * <p>
+ * One item's NBT is too small for deflate to find much to reference on its own, but items share
+ * most of their bytes: identifiers, tag names such as {@code Name}, {@code Count} and
+ * {@code Damage}, enchantment lists. Priming deflate with typical payloads lets every item be
+ * compressed separately, so a single item can still be decoded without touching any other.
+ * <p>
+ * Dictionaries are immutable and identified by a version number, which compressed data records
+ * so it can be decoded after a newer dictionary has been trained.
+ */
+public final class ItemDictionary {
+
+    /**
+     * Deflate only reaches back 32 KB, anything beyond that would never be referenced.
+     */
+    public static final int MAX_SIZE = 32 * 1024;
+
+    private static final int WINDOW = 8;
+    private static final double MIN_NEW_WINDOWS = 0.1;
+    private static final ThreadLocal<Deflater> DEFLATER =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_COMPRESSION, true));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private final int id;
+    private final byte[] bytes;
+
+    public ItemDictionary(int id, byte[] bytes) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("Dictionary IDs start at 1: " + id);
+        }
+        this.id = id;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Builds a dictionary from encoded items, most important first (e.g. most referenced).
+     * Samples that add hardly any byte sequence the dictionary does not contain yet are skipped,
+     * so the space goes to as many different kinds of items as possible.
+     */
+    public static ItemDictionary train(int id, List<byte[]> samples) {
+        Set<Long> covered = new HashSet<>();
+        List<byte[]> chosen = new ArrayList<>();
+        int size = 0;
+        for (byte[] sample : samples) {
+            int windows = sample.length - WINDOW + 1;
+            if (windows <= 0 || size + sample.length > MAX_SIZE) {
+                continue;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(sample);
+            int fresh = 0;
+            for (int i = 0; i < windows; i++) {
+                if (!covered.contains(buffer.getLong(i))) {
+                    fresh++;
+                }
+            }
+            if (fresh < windows * MIN_NEW_WINDOWS) {
+                continue;
+            }
+            for (int i = 0; i < windows; i++) {
+                covered.add(buffer.getLong(i));
+            }
+            chosen.add(sample);
+            size += sample.length;
+        }
+
+        // Nearer matches take fewer bits, so the most important samples go to the end
+        byte[] dictionary = new byte[size];
+        int position = size;
+        for (byte[] sample : chosen) {
+            position -= sample.length;
+            System.arraycopy(sample, 0, dictionary, position, sample.length);
+        }
+        return new ItemDictionary(id, dictionary);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    public byte[] compress(byte[] raw) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setDictionary(bytes);
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+        byte[] chunk = new byte[256];
+        while (!deflater.finished()) {
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param rawLength Length of the original data, as stored next to the compressed bytes
+     */
+    public byte[] decompress(byte[] compressed, int rawLength) throws IOException {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setDictionary(bytes);
+        inflater.setInput(compressed);
+        byte[] raw = new byte[rawLength];
+        int length = 0;
+        try {
+            while (length < rawLength) {
+                int inflated = inflater.inflate(raw, length, rawLength - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt item compressed with dictionary " + id, e);
+        }
+        if (length != rawLength) {
+            throw new IOException("Truncated item compressed with dictionary " + id);
+        }
+        return raw;
+    }
+}
@@ -0,0 +1,119 @@
+package org.allaymc.deathchest.serialization;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.data.ChestSummary;
+import org.cloudburstmc.nbt.NbtMap;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Pretty-printed JSON chest files. Kept as an opt-in debug format,
+ * since the files can be read and edited by hand.
+ */
+public class JsonChestFormat implements ChestFormat {
+
+    public static final String NAME = "json";
+
+    private final Gson gson;
+
+    public JsonChestFormat() {
+        // Use custom Gson with NbtMap adapter for proper serialization
+        this.gson = new GsonBuilder()
+                .setPrettyPrinting()
+                .registerTypeAdapter(NbtMap.class, new NbtMapAdapter())
+                .create();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getExtension() {
+        return ".json";
+    }
+
+    @Override
+    public List<ChestData> read(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<ChestData> chests = gson.fromJson(reader, new TypeToken<List<ChestData>>(){}.getType());
+            return chests != null ? chests : new ArrayList<>();
+        }
+    }
+
+    /**
+     * Streams through the file with a {@link JsonReader}, counting items instead of building them.
+     */
+    @Override
+    public void readSummaries(Path file, Consumer<ChestSummary> consumer) throws IOException {
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            if (reader.peek() == JsonToken.NULL) {
+                return;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                consumer.accept(readSummary(reader));
+            }
+            reader.endArray();
+        }
+    }
+
+    private static ChestSummary readSummary(JsonReader reader) throws IOException {
+        ChestSummary summary = new ChestSummary();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "chestId" -> summary.setChestId(UUID.fromString(reader.nextString()));
+                case "playerId" -> summary.setPlayerId(UUID.fromString(reader.nextString()));
+                case "playerName" -> summary.setPlayerName(reader.nextString());
+                case "worldName" -> summary.setWorldName(reader.nextString());
+                case "deathTime" -> summary.setDeathTime(reader.nextLong());
+                case "x" -> summary.setX(reader.nextDouble());
+                case "y" -> summary.setY(reader.nextDouble());
+                case "z" -> summary.setZ(reader.nextDouble());
+                case "dimensionId" -> summary.setDimensionId(reader.nextInt());
+                case "recovered" -> summary.setRecovered(reader.nextBoolean());
+                case "items" -> {
+                    int count = 0;
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        reader.skipValue();
+                        count++;
+                    }
+                    reader.endArray();
+                    summary.setItemCount(count);
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return summary;
+    }
+
+    @Override
+    public void write(Path file, List<ChestData> chests) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            gson.toJson(chests, writer);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package org.allaymc.deathchest.storage;
+
+import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.data.ChestSummary;
+import org.allaymc.deathchest.data.ItemData;
+import org.allaymc.deathchest.serialization.BinaryChestFormat;
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Cold tier for chests that left the hot store: recovered, expired, deleted or evicted ones.
+ * <p>
+ * Chests are appended to one file per day ({@code chests-<date>.dca}), never rewritten. Each append
+ * is a separate gzip member, which gzip readers treat as one continuous stream, so a file can be
+ * scanned record by record without holding more than one chest in memory. An append that fails is
+ * cut off again, and on open the newest file is cut back to its last complete member, so a torn
+ * append never hides the ones written after it. Whole days are deleted once they are older than the retention.
+ * <p>
+ * The IDs of all archived chests are also appended to {@code archived-ids.dat}, 16 bytes each, and kept
+ * in memory, so an import can tell a chest was archived without scanning the archive. The file outlives
+ * the retention, so an old export cannot bring purged chests back either.
+ * <p>
+ * Record layout inside the stream: {@code [byte reason][long archivedAt][chest metadata]
+ * [int itemCount][int payloadLength][items]}, with metadata and items as in {@link BinaryChestFormat}.
+ */
+public class ChestArchive {
+
+    /**
+     * Why a chest left the hot store.
+     */
+    public enum Reason {
+        RECOVERED,
+        EXPIRED,
+        DELETED,
+        /**
+         * Archived before it expired because its owner or the store went over a retention limit.
+         */
+        EVICTED
+    }
+
+    /**
+     * One archived chest, without its items.
+     */
+    public record Entry(Reason reason, long archivedAt, ChestSummary chest) {
+    }
+
+    private static final String PREFIX = "chests-";
+    private static final String EXTENSION = ".dca";
+    private static final int GZIP_HEADER = 10;
+    private static final int GZIP_TRAILER = 8;
+    private static final String IDS_FILE = "archived-ids.dat";
+    private static final int ID_BYTES = 16;
+
+    private final Path folder;
+    private final int retentionDays;
+    private final Logger logger;
+    private final Path idsFile;
+    private final Set<UUID> archivedIds = ConcurrentHashMap.newKeySet();
+    private long archivedChests;
+
+    /**
+     * @param retentionDays Days after which archive files are deleted; 0 keeps them forever
+     */
+    public ChestArchive(Path folder, int retentionDays, Logger logger) throws IOException {
+        this.folder = folder;
+        this.retentionDays = retentionDays;
+        this.logger = logger;
+        Files.createDirectories(folder);
+        // Only the newest file is appended to, older ones keep whatever tail a crash left
+        Path newest = listFiles().peekLast();
+        if (newest != null) {
+            repair(newest);
+        }
+        this.idsFile = folder.resolve(IDS_FILE);
+        loadIds();
+    }
+
+    /**
+     * Reads the archived IDs, cutting off a torn last ID. Archives written before the ID file
+     * existed are scanned once to create it.
+     */
+    private void loadIds() throws IOException {
+        if (!Files.exists(idsFile)) {
+            List<UUID> archived = new ArrayList<>();
+            for (Path file : listFiles()) {
+                scanFile(file, chest -> true, entry -> archived.add(entry.chest().getChestId()));
+            }
+            appendIds(archived);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(idsFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long complete = channel.size() - channel.size() % ID_BYTES;
+            if (complete < channel.size()) {
+                logger.warn("Cutting an incomplete ID from " + IDS_FILE);
+                channel.truncate(complete);
+                channel.force(false);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(ID_BYTES * 4096);
+            long position = 0;
+            while (position < complete) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                position += read;
+                buffer.flip();
+                while (buffer.remaining() >= ID_BYTES) {
+                    archivedIds.add(new UUID(buffer.getLong(), buffer.getLong()));
+                }
+                position -= buffer.remaining();
+            }
+        }
+    }
+
+    /**
+     * Whether a chest with this ID was ever archived, including in files deleted since.
+     */
+    public boolean isArchived(UUID chestId) {
+        return archivedIds.contains(chestId);
+    }
+
+    /**
+     * Cuts a file back to the end of its last complete gzip member.
+     */
+    private void repair(Path file) throws IOException {
+        long size = Files.size(file);
+        if (size > Integer.MAX_VALUE) {
+            logger.warn("Archive file " + file.getFileName() + " is too large to check for an incomplete append");
+            return;
+        }
+        long complete;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            complete = completeLength(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+        if (complete < size) {
+            logger.warn("Cutting " + (size - complete) + " bytes of an incomplete append from archive file " + file.getFileName());
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(complete);
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * Length of the leading complete gzip members: each has the plain header written by
+     * {@link GZIPOutputStream}, inflates to its end and matches its trailer.
+     */
+    private static long completeLength(ByteBuffer file) {
+        file.order(ByteOrder.LITTLE_ENDIAN);
+        int position = 0;
+        byte[] out = new byte[64 * 1024];
+        while (file.limit() - position >= GZIP_HEADER + GZIP_TRAILER) {
+            if ((file.get(position) & 0xFF) != 0x1F || (file.get(position + 1) & 0xFF) != 0x8B
+                    || file.get(position + 2) != Deflater.DEFLATED || file.get(position + 3) != 0) {
+                break;
+            }
+            Inflater inflater = new Inflater(true);
+            CRC32 crc = new CRC32();
+            long end;
+            try {
+                inflater.setInput(file.slice(position + GZIP_HEADER, file.limit() - position - GZIP_HEADER));
+                while (!inflater.finished()) {
+                    int inflated = inflater.inflate(out);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    crc.update(out, 0, inflated);
+                }
+                if (!inflater.finished()) {
+                    break;
+                }
+                end = position + GZIP_HEADER + inflater.getBytesRead();
+                if (end + GZIP_TRAILER > file.limit()
+                        || Integer.toUnsignedLong(file.getInt((int) end)) != crc.getValue()
+                        || file.getInt((int) end + 4) != (int) inflater.getBytesWritten()) {
+                    break;
+                }
+            } catch (DataFormatException e) {
+                break;
+            } finally {
+                inflater.end();
+            }
+            position = (int) end + GZIP_TRAILER;
+        }
+        return position;
+    }
+
+    /**
+     * Appends chests, including their items, to today's file and forces it to disk.
+     * Items must carry their NBT; pool references are not resolved.
+     */
+    public void append(List<ChestData> chests, Reason reason) throws IOException {
+        Map<Reason, List<ChestData>> groups = new EnumMap<>(Reason.class);
+        groups.put(reason, chests);
+        append(groups);
+    }
+
+    /**
+     * Appends chests archived for different reasons as one append, so either all of them
+     * are archived or none is.
+     */
+    public synchronized void append(Map<Reason, List<ChestData>> groups) throws IOException {
+        int count = groups.values().stream().mapToInt(List::size).sum();
+        if (count == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(buffer))) {
+            for (Map.Entry<Reason, List<ChestData>> group : groups.entrySet()) {
+                for (ChestData chest : group.getValue()) {
+                    List<ItemData> items = chest.getItems() != null ? chest.getItems() : List.of();
+                    byte[] payload = BinaryChestFormat.encodeItems(items, false);
+                    out.writeByte(group.getKey().ordinal());
+                    out.writeLong(now);
+                    BinaryChestFormat.writeMetadata(out, chest);
+                    out.writeInt(items.size());
+                    out.writeInt(payload.length);
+                    out.write(payload);
+                }
+            }
+        }
+
+        // IDs go first: a crash in between leaves an ID without its chest, which is still in the store
+        // and only skipped by imports, never a chest that could be imported a second time
+        List<UUID> ids = new ArrayList<>(count);
+        groups.values().forEach(chests -> chests.forEach(chest -> ids.add(chest.getChestId())));
+        appendIds(ids);
+
+        Path file = dayFile(LocalDate.now(ZoneId.systemDefault()));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long start = channel.size();
+            try {
+                ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+                long position = start;
+                while (bytes.hasRemaining()) {
+                    position += channel.write(bytes, position);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                // Leave no partial member behind for the retry to append after
+                try {
+                    channel.truncate(start);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+        archivedChests += count;
+    }
+
+    /**
+     * Appends the IDs that are not known yet and forces them to disk. Creates the file even if there are none.
+     */
+    private void appendIds(List<UUID> ids) throws IOException {
+        List<UUID> added = ids.stream().filter(id -> !archivedIds.contains(id)).distinct().toList();
+        ByteBuffer bytes = ByteBuffer.allocate(added.size() * ID_BYTES);
+        for (UUID id : added) {
+            bytes.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+        }
+        bytes.flip();
+        try (FileChannel channel = FileChannel.open(idsFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        }
+        archivedIds.addAll(added);
+    }
+
+    /**
+     * Streams through the archive, newest day first, and returns the latest matching chests, newest first.
+     * Only the returned entries are kept in memory.
+     */
+    public List<Entry> findLatest(Predicate<ChestSummary> filter, int limit) throws IOException {
+        List<Entry> result = new ArrayList<>();
+        Iterator<Path> files = listFiles().descendingIterator();
+        while (result.size() < limit && files.hasNext()) {
+            // Records within a file are oldest first, keep the last ones
+            Deque<Entry> latest = new ArrayDeque<>();
+            int wanted = limit - result.size();
+            scanFile(files.next(), filter, entry -> {
+                if (latest.size() == wanted) {
+                    latest.removeFirst();
+                }
+                latest.addLast(entry);
+            });
+            latest.descendingIterator().forEachRemaining(result::add);
+        }
+        return result;
+    }
+
+    private void scanFile(Path file, Predicate<ChestSummary> filter, Consumer<Entry> consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new BufferedInputStream(Files.newInputStream(file)))))) {
+            int reason;
+            while ((reason = in.read()) >= 0) {
+                long archivedAt = in.readLong();
+                ChestSummary summary = ChestSummary.of(BinaryChestFormat.readMetadata(in));
+                summary.setItemCount(in.readInt());
+                in.skipNBytes(in.readInt());
+                if (filter.test(summary)) {
+                    consumer.accept(new Entry(Reason.values()[reason], archivedAt, summary));
+                }
+            }
+        } catch (EOFException | ZipException e) {
+            // A torn append at the end of an older day, everything before it is intact
+            logger.warn("Archive file " + file.getFileName() + " ends with an incomplete append");
+        }
+    }
+
+    /**
+     * Deletes the files of days older than the retention.
+     *
+     * @return the number of deleted files
+     */
+    public synchronized int purgeExpired() throws IOException {
+        if (retentionDays <= 0) {
+            return 0;
+        }
+        LocalDate oldestKept = LocalDate.now(ZoneId.systemDefault()).minusDays(retentionDays);
+        int deleted = 0;
+        for (Path file : listFiles()) {
+            if (dateOf(file).isBefore(oldestKept)) {
+                Files.deleteIfExists(file);
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    public long getStoredBytes() {
+        long total = 0;
+        try {
+            for (Path file : listFiles()) {
+                total += Files.size(file);
+            }
+        } catch (IOException e) {
+            return total;
+        }
+        return total;
+    }
+
+    /**
+     * Number of chests archived since startup.
+     */
+    public synchronized long getArchivedCount() {
+        return archivedChests;
+    }
+
+    /**
+     * Archive files sorted by day, oldest first.
+     */
+    private ArrayDeque<Path> listFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, PREFIX + "*" + EXTENSION)) {
+            for (Path file : stream) {
+                try {
+                    dateOf(file);
+                    files.add(file);
+                } catch (DateTimeParseException e) {
+                    logger.warn("Ignoring unexpected file in chest archive folder: " + file.getFileName());
+                }
+            }
+        }
+        // ISO dates sort chronologically as strings
+        files.sort((a, b) -> a.getFileName().toString().compareTo(b.getFileName().toString()));
+        return new ArrayDeque<>(files);
+    }
+
+    private Path dayFile(LocalDate day) {
+        return folder.resolve(PREFIX + day + EXTENSION);
+    }
+
+    private static LocalDate dateOf(Path file) {
+        String name = file.getFileName().toString();
+        return LocalDate.parse(name.substring(PREFIX.length(), name.length() - EXTENSION.length()));
+    }
+}
@@ -0,0 +1,55 @@
+package org.allaymc.deathchest.storage;
+
+import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.data.ChestSummary;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Storage engine underneath {@link org.allaymc.deathchest.managers.ChestManager}.
+ * Implementations must be safe to call from the background writer and the server thread at the same time.
+ */
+public interface ChestStore {
+
+    /**
+     * Name used in the config file, e.g. "files".
+     */
+    String getName();
+
+    /**
+     * Reads the metadata of every stored chest without decoding item payloads.
+     * The consumer is called by one thread at a time, though not necessarily the calling one.
+     */
+    void scan(Consumer<ChestSummary> consumer) throws IOException;
+
+    /**
+     * Loads all chests of a player including their items. Returns an empty list if there are none.
+     */
+    List<ChestData> load(UUID playerId) throws IOException;
+
+    /**
+     * Persists the complete current chest list of a player, replacing what was stored before.
+     * An empty list removes the player's data.
+     */
+    void save(UUID playerId, List<ChestData> chests) throws IOException;
+
+    /**
+     * Forces everything saved so far to stable storage. Called once per group of saves or after
+     * every save, depending on the configured {@link Durability}. Stores that sync on their own need not override it.
+     */
+    default void sync() throws IOException {
+    }
+
+    /**
+     * Approximate number of bytes the stored chests occupy on disk.
+     */
+    long getStoredBytes();
+
+    /**
+     * Releases files and background threads. Called after all pending saves have been flushed.
+     */
+    void close() throws IOException;
+}
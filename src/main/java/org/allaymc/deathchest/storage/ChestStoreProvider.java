@@ -0,0 +1,29 @@
+package org.allaymc.deathchest.storage;
+
+import org.allaymc.deathchest.config.DeathChestConfig;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Creates a {@link ChestStore} selected by name in the config's {@code storageEngine}.
+ * <p>
+ * The built-in engines are registered in {@link ChestStores}. Other plugins can add their own,
+ * either with {@link ChestStores#register} before DeathChest is enabled or through a
+ * {@code META-INF/services/org.allaymc.deathchest.storage.ChestStoreProvider} entry.
+ */
+public interface ChestStoreProvider {
+
+    /**
+     * Name used in the config file, matching {@link ChestStore#getName()} of the created stores.
+     */
+    String getName();
+
+    /**
+     * Opens the store. Called once at startup and again for every migration from or to it.
+     *
+     * @param dataFolder Plugin data folder; stores keep their files in a subfolder of it
+     */
+    ChestStore open(Path dataFolder, DeathChestConfig config, Logger logger) throws IOException;
+}
@@ -0,0 +1,75 @@
+package org.allaymc.deathchest.storage;
+
+import org.allaymc.deathchest.config.DeathChestConfig;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the available storage engines, by config name.
+ */
+public final class ChestStores {
+
+    private static final Map<String, ChestStoreProvider> PROVIDERS = new ConcurrentHashMap<>();
+
+    static {
+        register(new SimpleProvider(PlayerFileStore.NAME,
+                (folder, config, logger) -> PlayerFileStore.create(folder.resolve("chests"), config, logger)));
+        register(new SimpleProvider(SegmentedChestStore.NAME,
+                (folder, config, logger) -> new SegmentedChestStore(folder.resolve("chest-log"),
+                        config.getLogSegmentSizeMb() * 1024L * 1024L, config.isCompressItems(), logger)));
+        register(new SimpleProvider(SqlChestStore.NAME,
+                (folder, config, logger) -> new SqlChestStore(folder.resolve("chest-db"), config.isCompressItems(), logger)));
+        for (ChestStoreProvider provider : ServiceLoader.load(ChestStoreProvider.class, ChestStores.class.getClassLoader())) {
+            register(provider);
+        }
+    }
+
+    private ChestStores() {
+    }
+
+    /**
+     * Adds a storage engine, replacing a registered one with the same name.
+     */
+    public static void register(ChestStoreProvider provider) {
+        PROVIDERS.put(provider.getName().toLowerCase(Locale.ROOT), provider);
+    }
+
+    /**
+     * Returns the engine with the given name, ignoring case, or null.
+     */
+    public static ChestStoreProvider get(String name) {
+        return name != null ? PROVIDERS.get(name.toLowerCase(Locale.ROOT)) : null;
+    }
+
+    public static List<String> getNames() {
+        List<String> names = new ArrayList<>(PROVIDERS.keySet());
+        names.sort(null);
+        return names;
+    }
+
+    private record SimpleProvider(String name, Opener opener) implements ChestStoreProvider {
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public ChestStore open(Path dataFolder, DeathChestConfig config, Logger logger) throws IOException {
+            return opener.open(dataFolder, config, logger);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Opener {
+        ChestStore open(Path dataFolder, DeathChestConfig config, Logger logger) throws IOException;
+    }
+}
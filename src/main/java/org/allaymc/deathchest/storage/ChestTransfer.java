@@ -0,0 +1,266 @@
+package org.allaymc.deathchest.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.data.ChestSummary;
+import org.allaymc.deathchest.serialization.NbtMapAdapter;
+import org.cloudburstmc.nbt.NbtMap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bulk export and import of chests as newline-delimited JSON, one chest per line with its items' NBT inline.
+ * Files ending in {@code .gz} are gzip-compressed.
+ * <p>
+ * Both directions stream: an export holds one player's chests at a time and an import one line,
+ * so memory use does not depend on the size of the file or the store.
+ */
+public final class ChestTransfer {
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(NbtMap.class, new NbtMapAdapter())
+            .create();
+    private static final int PROGRESS_INTERVAL = 10_000;
+
+    /**
+     * Which chests to transfer. Null fields match everything.
+     *
+     * @param worldName World the chest was created in
+     * @param player    Owner's UUID or name, case-insensitive
+     * @param since     Earliest death time, inclusive, in epoch milliseconds
+     * @param until     Latest death time, exclusive, in epoch milliseconds
+     */
+    public record Filter(String worldName, String player, Long since, Long until) implements Predicate<ChestSummary> {
+
+        public static final Filter ALL = new Filter(null, null, null, null);
+
+        /**
+         * Parses {@code key=value} pairs separated by commas, e.g. {@code world=world,player=Steve,since=7d}.
+         * Times are dates ({@code 2026-01-31}, midnight server time) or ages ({@code 30m}, {@code 12h}, {@code 7d}).
+         *
+         * @throws IllegalArgumentException if a pair is malformed
+         */
+        public static Filter parse(String text) {
+            if (text == null || text.isBlank()) {
+                return ALL;
+            }
+            String worldName = null;
+            String player = null;
+            Long since = null;
+            Long until = null;
+            for (String pair : text.split(",")) {
+                int separator = pair.indexOf('=');
+                if (separator <= 0 || separator == pair.length() - 1) {
+                    throw new IllegalArgumentException("Expected key=value, got '" + pair + "'");
+                }
+                String value = pair.substring(separator + 1);
+                switch (pair.substring(0, separator).toLowerCase(Locale.ROOT)) {
+                    case "world" -> worldName = value;
+                    case "player" -> player = value;
+                    case "since" -> since = parseTime(value);
+                    case "until" -> until = parseTime(value);
+                    default -> throw new IllegalArgumentException("Unknown filter '" + pair.substring(0, separator)
+                            + "', use world, player, since or until");
+                }
+            }
+            return new Filter(worldName, player, since, until);
+        }
+
+        private static long parseTime(String value) {
+            try {
+                return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                // Not a date, try an age
+            }
+            char unit = Character.toLowerCase(value.charAt(value.length() - 1));
+            long amount;
+            try {
+                amount = Long.parseLong(value.substring(0, value.length() - 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid time '" + value + "', use a date like 2026-01-31 or an age like 7d");
+            }
+            Duration age = switch (unit) {
+                case 'm' -> Duration.ofMinutes(amount);
+                case 'h' -> Duration.ofHours(amount);
+                case 'd' -> Duration.ofDays(amount);
+                default -> throw new IllegalArgumentException("Invalid time unit in '" + value + "', use m, h or d");
+            };
+            return System.currentTimeMillis() - age.toMillis();
+        }
+
+        @Override
+        public boolean test(ChestSummary chest) {
+            if (worldName != null && !worldName.equals(chest.getWorldName())) {
+                return false;
+            }
+            if (player != null && !player.equalsIgnoreCase(chest.getPlayerId().toString())
+                    && !player.equalsIgnoreCase(chest.getPlayerName())) {
+                return false;
+            }
+            return (since == null || chest.getDeathTime() >= since) && (until == null || chest.getDeathTime() < until);
+        }
+    }
+
+    /**
+     * @param chests  Chests written or imported
+     * @param skipped Chests read but not imported, e.g. duplicates
+     * @param failed  Players that could not be read, or lines that could not be parsed
+     * @param millis  Duration of the transfer
+     */
+    public record Result(long chests, long skipped, int failed, long millis) {
+
+        public String describe(String action) {
+            return action + " " + chests + " chests in " + millis + "ms"
+                    + (skipped > 0 ? ", skipped " + skipped : "")
+                    + (failed > 0 ? ", " + failed + " failed (see the server log)" : "");
+        }
+    }
+
+    /**
+     * Loads all chests of a player, with item NBT resolved.
+     */
+    @FunctionalInterface
+    public interface ChestLoader {
+        List<ChestData> load(UUID playerId) throws IOException;
+    }
+
+    private ChestTransfer() {
+    }
+
+    /**
+     * Writes the chests matching the filter to a file, replacing it once complete.
+     *
+     * @param players  Players to export, in order; only their matching chests are written
+     * @param filter   Selects the chests to write; it is up to the caller to leave out recovered and expired ones
+     * @param progress Receives a progress line every few thousand chests
+     * @param errors   Receives each player whose chests could not be read
+     */
+    public static Result export(Path file, Collection<UUID> players, ChestLoader loader, Predicate<ChestSummary> filter,
+                                Consumer<String> progress, Consumer<StoreMigrator.PlayerFailure> errors) throws IOException {
+        long start = System.nanoTime();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long written = 0;
+        int failed = 0;
+        int done = 0;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(openOutput(temp, isGzip(file)), StandardCharsets.UTF_8))) {
+            for (UUID playerId : players) {
+                try {
+                    for (ChestData chest : loader.load(playerId)) {
+                        if (!filter.test(ChestSummary.of(chest))) {
+                            continue;
+                        }
+                        GSON.toJson(chest, ChestData.class, writer);
+                        writer.write('\n');
+                        if (++written % PROGRESS_INTERVAL == 0) {
+                            progress.accept("Exported " + written + " chests, " + done + "/" + players.size() + " players");
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failed++;
+                    errors.accept(new StoreMigrator.PlayerFailure(playerId, e));
+                }
+                done++;
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        AtomicFiles.force(temp);
+        AtomicFiles.replace(temp, file);
+        return new Result(written, 0, failed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Reads a file written by {@link #export} line by line and hands every chest matching the filter to the sink.
+     * Lines that cannot be parsed or lack an ID, owner or world are logged and skipped.
+     *
+     * @param sink     Adds a chest and returns true, or returns false if it was skipped, e.g. as a duplicate
+     * @param progress Receives a progress line every few thousand chests
+     * @param errors   Receives a message for each line that failed
+     */
+    public static Result importFrom(Path file, Predicate<ChestSummary> filter, Predicate<ChestData> sink,
+                                    Consumer<String> progress, Consumer<String> errors) throws IOException {
+        long start = System.nanoTime();
+        long imported = 0;
+        long skipped = 0;
+        int failed = 0;
+        long lineNumber = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(openInput(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                ChestData chest;
+                try {
+                    chest = GSON.fromJson(line, ChestData.class);
+                } catch (JsonParseException e) {
+                    failed++;
+                    errors.accept("Line " + lineNumber + " of " + file.getFileName() + " is not a chest: " + e.getMessage());
+                    continue;
+                }
+                if (chest == null || chest.getChestId() == null || chest.getPlayerId() == null || chest.getWorldName() == null) {
+                    failed++;
+                    errors.accept("Line " + lineNumber + " of " + file.getFileName() + " has no chest ID, owner or world");
+                    continue;
+                }
+                if (!filter.test(ChestSummary.of(chest))) {
+                    continue;
+                }
+                if (chest.getItems() == null) {
+                    chest.setItems(new ArrayList<>());
+                }
+                if (sink.test(chest)) {
+                    imported++;
+                } else {
+                    skipped++;
+                }
+                if ((imported + skipped) % PROGRESS_INTERVAL == 0) {
+                    progress.accept("Imported " + imported + " chests, skipped " + skipped);
+                }
+            }
+        }
+        return new Result(imported, skipped, failed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private static OutputStream openOutput(Path file, boolean gzip) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        return gzip ? new GZIPOutputStream(out, 1 << 16) : out;
+    }
+
+    private static InputStream openInput(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        return isGzip(file) ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+
+    private static boolean isGzip(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".gz");
+    }
+}
@@ -0,0 +1,46 @@
+package org.allaymc.deathchest.storage;
+
+import org.slf4j.Logger;
+
+import java.util.Locale;
+
+/**
+ * When written chests are forced to stable storage, trading write latency against what a crash can lose.
+ */
+public enum Durability {
+
+    /**
+     * Never sync; the operating system writes the data back on its own schedule.
+     * A power loss can lose the last seconds of changes.
+     */
+    NONE,
+
+    /**
+     * Collect the saves of a short window, write them and sync once for the whole group.
+     */
+    BATCH,
+
+    /**
+     * Sync after every single player save.
+     */
+    WRITE;
+
+    /**
+     * Parses the config value, falling back to {@link #BATCH} for unknown values.
+     */
+    public static Durability parse(String name, Logger logger) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            logger.warn("Unknown durability '" + name + "', using batch");
+            return BATCH;
+        }
+    }
+
+    /**
+     * Name used in the config file.
+     */
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,141 @@
+package org.allaymc.deathchest.storage;
+
+import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.serialization.ChestFormat;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Converts player chest files in a folder from one {@link ChestFormat} to another.
+ */
+public final class FormatConverter {
+
+    /**
+     * Outcome of a conversion run.
+     *
+     * @param files           Number of files converted
+     * @param failed          Number of files that could not be converted and were left untouched
+     * @param bytesBefore     Total size of the source files
+     * @param bytesAfter      Total size of the converted files
+     * @param readNanosBefore Time spent parsing the source files
+     * @param readNanosAfter  Time spent parsing the converted files
+     */
+    public record Result(int files, int failed, long bytesBefore, long bytesAfter,
+                         long readNanosBefore, long readNanosAfter) {
+
+        public String describe() {
+            if (files == 0) {
+                return "No files needed converting" + (failed > 0 ? " (" + failed + " failed)" : "");
+            }
+            double sizeSaved = bytesBefore == 0 ? 0 : 100.0 * (bytesBefore - bytesAfter) / bytesBefore;
+            return String.format(Locale.US,
+                    "Converted %d files%s: %s -> %s (%.0f%% smaller), load time %.1fms -> %.1fms",
+                    files, failed > 0 ? " (" + failed + " failed)" : "",
+                    formatBytes(bytesBefore), formatBytes(bytesAfter), sizeSaved,
+                    readNanosBefore / 1_000_000.0, readNanosAfter / 1_000_000.0);
+        }
+    }
+
+    private FormatConverter() {
+    }
+
+    /**
+     * Rewrites every {@code from} file in the folder using the {@code to} format and deletes the original.
+     * If the player already has a file in the target format, the chests of both files are merged by chest ID.
+     */
+    public static Result convert(Path folder, ChestFormat from, ChestFormat to, Logger logger) {
+        int files = 0;
+        int failed = 0;
+        long bytesBefore = 0;
+        long bytesAfter = 0;
+        long readBefore = 0;
+        long readAfter = 0;
+
+        if (!Files.isDirectory(folder) || from.getExtension().equals(to.getExtension())) {
+            return new Result(0, 0, 0, 0, 0, 0);
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "*" + from.getExtension())) {
+            for (Path source : stream) {
+                String fileName = source.getFileName().toString();
+                String playerId = fileName.substring(0, fileName.length() - from.getExtension().length());
+                try {
+                    UUID.fromString(playerId);
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+
+                Path target = folder.resolve(playerId + to.getExtension());
+                Path temp = folder.resolve(playerId + to.getExtension() + ".tmp");
+                try {
+                    long sourceSize = Files.size(source);
+                    long start = System.nanoTime();
+                    List<ChestData> chests = from.read(source);
+                    long sourceRead = System.nanoTime() - start;
+
+                    if (Files.exists(target)) {
+                        chests = merge(to.read(target), chests);
+                    }
+                    to.write(temp, chests);
+                    AtomicFiles.replace(temp, target);
+
+                    start = System.nanoTime();
+                    List<ChestData> verified = to.read(target);
+                    long targetRead = System.nanoTime() - start;
+                    if (verified.size() != chests.size()) {
+                        throw new IOException("Converted file has " + verified.size() + " chests, expected " + chests.size());
+                    }
+
+                    Files.delete(source);
+                    files++;
+                    bytesBefore += sourceSize;
+                    bytesAfter += Files.size(target);
+                    readBefore += sourceRead;
+                    readAfter += targetRead;
+                } catch (Exception e) {
+                    failed++;
+                    logger.error("Failed to convert chest file " + fileName + " to " + to.getName(), e);
+                    Files.deleteIfExists(temp);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Failed to list chest files in " + folder, e);
+        }
+
+        return new Result(files, failed, bytesBefore, bytesAfter, readBefore, readAfter);
+    }
+
+    /**
+     * Merges two chest lists by chest ID. Entries from {@code existing} win.
+     */
+    private static List<ChestData> merge(List<ChestData> existing, List<ChestData> incoming) {
+        Map<UUID, ChestData> merged = new LinkedHashMap<>();
+        for (ChestData chest : incoming) {
+            merged.put(chest.getChestId(), chest);
+        }
+        for (ChestData chest : existing) {
+            merged.put(chest.getChestId(), chest);
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format(Locale.US, "%.1f KB", bytes / 1024.0);
+        }
+        return String.format(Locale.US, "%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,836 @@
+package org.allaymc.deathchest.storage;
+
+import org.allaymc.deathchest.serialization.BinaryChestFormat;
+import org.allaymc.deathchest.serialization.ItemDictionary;
+import org.cloudburstmc.nbt.NbtMap;
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content-addressed store of item NBT, shared by all chests.
+ * <p>
+ * Every distinct item payload is stored once in an append-only file, keyed by the SHA-256 of its
+ * encoded NBT, and carries a reference count of the stored chest items that point at it.
+ * Decoded payloads are cached softly, so chests loaded at the same time share one {@link NbtMap}
+ * instance per distinct item.
+ * <p>
+ * The pool's lock only guards the entry map and reference counts: items are encoded, hashed and
+ * compressed before it is taken, and read, decompressed and decoded after it is released.
+ * <p>
+ * Unreferenced entries are dropped by {@link #compactIfNeeded()}, but only once the reference counts
+ * are known to be complete (see {@link #setReferencesComplete()}); until then an entry without
+ * counted references may still be used by a chest file that has not been read yet.
+ * Complete counts are saved to {@code <pool>.refs} on {@link #close()} and restored by the next open,
+ * which deletes the file right away, so counts are only ever restored after a clean shutdown.
+ * <p>
+ * With compression enabled, payloads are deflated one by one with an {@link ItemDictionary} trained
+ * from the pool's own contents once it holds enough items, and retrained each time the pool has grown
+ * eightfold since, so every item stays readable on its own. Training and rewrites are run by the owner
+ * on a background thread ({@link #trainIfNeeded()}, {@link #compactIfNeeded()}) and only hold the pool's
+ * lock for short moments, so saves and loads are not held up by them.
+ * Dictionaries are kept as numbered files next to the pool and never change; each record names the
+ * one it was compressed with. Rewrites of the pool recompress older records with the newest dictionary.
+ * <p>
+ * File layout: {@code [int magic][byte version]} followed by
+ * {@code [32-byte hash][int length][int dictionary][int raw length][payload]} records, where the hash
+ * is taken over the uncompressed NBT and dictionary 0 means the payload is stored uncompressed.
+ * Version 1 files, whose records are {@code [hash][int length][nbt]}, are upgraded when opened.
+ */
+public class ItemPool {
+
+    private static final int MAGIC = 0x44434950; // "DCIP"
+    private static final byte VERSION = 2;
+    private static final byte VERSION_UNCOMPRESSED = 1;
+    private static final int HEADER_SIZE = 5;
+    private static final int HASH_LENGTH = 32;
+    private static final int RECORD_OVERHEAD = HASH_LENGTH + 12;
+    private static final int RECORD_OVERHEAD_UNCOMPRESSED = HASH_LENGTH + 4;
+    private static final long MIN_COMPACTION_GARBAGE = 1024 * 1024;
+    private static final int DICTIONARY_MAGIC = 0x44434944; // "DCID"
+    private static final String DICTIONARY_EXTENSION = ".dict";
+    private static final int REFS_MAGIC = 0x44434952; // "DCIR"
+    private static final int TRAINING_THRESHOLD = 256;
+    private static final int RETRAINING_GROWTH_SHIFT = 3;
+    private static final int TRAINING_SAMPLES = 4096;
+    private static final HexFormat HEX = HexFormat.of();
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private static final class Entry {
+        long offset;
+        final int length;
+        final int dictionaryId;
+        final int rawLength;
+        int refs;
+        SoftReference<NbtMap> cached;
+
+        Entry(long offset, int length, int dictionaryId, int rawLength) {
+            this.offset = offset;
+            this.length = length;
+            this.dictionaryId = dictionaryId;
+            this.rawLength = rawLength;
+        }
+    }
+
+    private final Path file;
+    private final Path dictionaryFolder;
+    private final boolean compress;
+    private final Logger logger;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<Integer, ItemDictionary> dictionaries = new ConcurrentHashMap<>();
+    // Serializes training and rewrites, which run mostly without holding the pool's lock
+    private final Object maintenanceLock = new Object();
+    private volatile ItemDictionary dictionary;
+    private volatile FileChannel channel;
+    private long size;
+    private boolean dirty;
+    private boolean referencesComplete;
+    private boolean referencesRestored;
+    private long compactions;
+    private long encodedItems;
+    private long encodeNanos;
+    private long decodedItems;
+    private long decodeNanos;
+
+    /**
+     * @param dictionaryFolder Folder holding the numbered dictionary files
+     * @param compress         Whether new payloads are compressed; compressed ones are readable either way
+     */
+    public ItemPool(Path file, Path dictionaryFolder, boolean compress, Logger logger) throws IOException {
+        this.file = file;
+        this.dictionaryFolder = dictionaryFolder;
+        this.compress = compress;
+        this.logger = logger;
+        loadDictionaries();
+        open();
+        restoreReferences();
+    }
+
+    private void open() throws IOException {
+        Files.deleteIfExists(compactFile());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        size = channel.size();
+        if (size == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).put(VERSION).flip();
+            writeFully(header, 0);
+            size = HEADER_SIZE;
+            channel.force(true);
+            return;
+        }
+
+        ByteBuffer header = readFully(0, HEADER_SIZE);
+        byte version = header.getInt() == MAGIC ? header.get() : 0;
+        if (version != VERSION && version != VERSION_UNCOMPRESSED) {
+            throw new IOException("Not a DeathChest item pool: " + file);
+        }
+        int overhead = version == VERSION ? RECORD_OVERHEAD : RECORD_OVERHEAD_UNCOMPRESSED;
+        long position = HEADER_SIZE;
+        ByteBuffer recordHeader = ByteBuffer.allocate(overhead);
+        while (position + overhead <= size) {
+            recordHeader.clear();
+            readFully(recordHeader, position);
+            recordHeader.flip();
+            byte[] hash = new byte[HASH_LENGTH];
+            recordHeader.get(hash);
+            int length = recordHeader.getInt();
+            int dictionaryId = version == VERSION ? recordHeader.getInt() : 0;
+            int rawLength = version == VERSION ? recordHeader.getInt() : length;
+            if (length < 0 || rawLength < 0 || position + overhead + length > size) {
+                break;
+            }
+            entries.put(HEX.formatHex(hash), new Entry(position, length, dictionaryId, rawLength));
+            position += overhead + length;
+        }
+        if (position < size) {
+            // Torn append from a crash, no stored chest can reference it yet
+            logger.warn("Truncating " + (size - position) + " bytes of incomplete data from " + file.getFileName());
+            channel.truncate(position);
+            size = position;
+        }
+        if (version == VERSION_UNCOMPRESSED) {
+            rewrite(overhead, false);
+            logger.info("Upgraded " + file.getFileName() + " to version " + VERSION + " with " + entries.size() + " items");
+        }
+    }
+
+    /**
+     * Reads the reference counts saved by the last clean {@link #close()}, then deletes them,
+     * so a crash before the next close leaves no stale counts behind.
+     */
+    private void restoreReferences() throws IOException {
+        Path refsFile = refsFile();
+        if (!Files.exists(refsFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(refsFile)))) {
+            if (in.readInt() != REFS_MAGIC) {
+                throw new IOException("Not a DeathChest reference count file");
+            }
+            int count = in.readInt();
+            byte[] hash = new byte[HASH_LENGTH];
+            Map<String, Integer> counts = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                in.readFully(hash);
+                counts.put(HEX.formatHex(hash), in.readInt());
+            }
+            for (Map.Entry<String, Integer> saved : counts.entrySet()) {
+                Entry entry = entries.get(saved.getKey());
+                if (entry != null) {
+                    entry.refs = saved.getValue();
+                }
+            }
+            referencesComplete = true;
+            referencesRestored = true;
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable " + refsFile.getFileName() + ", item pool references are counted again", e);
+        }
+        Files.delete(refsFile);
+        AtomicFiles.forceDirectory(refsFile.getParent());
+    }
+
+    /**
+     * Whether the reference counts were restored from the last clean shutdown,
+     * so every stored chest's references are already counted.
+     */
+    public synchronized boolean isReferencesRestored() {
+        return referencesRestored;
+    }
+
+    /**
+     * Stores the payload if it is new and takes one reference to it.
+     * Encoding, hashing and compressing run before the lock is taken; it is only held to look up
+     * the entry, count the reference and append a new record.
+     *
+     * @return the hash to store instead of the NBT
+     */
+    public String acquire(NbtMap nbt) throws IOException {
+        byte[] bytes = BinaryChestFormat.encodeNbt(nbt);
+        String hash = hash(bytes);
+        if (acquireExisting(hash, nbt)) {
+            return hash;
+        }
+
+        // Any dictionary stays readable, so a new one trained meanwhile does not matter
+        ItemDictionary target = compress ? dictionary : null;
+        byte[] payload = bytes;
+        long compressNanos = 0;
+        if (target != null) {
+            long start = System.nanoTime();
+            payload = target.compress(bytes);
+            compressNanos = System.nanoTime() - start;
+        }
+        synchronized (this) {
+            if (target != null) {
+                encodeNanos += compressNanos;
+                encodedItems++;
+            }
+            Entry entry = entries.get(hash);
+            if (entry == null) {
+                entry = new Entry(size, payload.length, target != null ? target.getId() : 0, bytes.length);
+                size = writeRecord(channel, hash, entry, payload, size);
+                dirty = true;
+                entries.put(hash, entry);
+            }
+            entry.refs++;
+            if (entry.cached == null || entry.cached.get() == null) {
+                entry.cached = new SoftReference<>(nbt);
+            }
+        }
+        return hash;
+    }
+
+    private synchronized boolean acquireExisting(String hash, NbtMap nbt) {
+        Entry entry = entries.get(hash);
+        if (entry == null) {
+            return false;
+        }
+        entry.refs++;
+        if (entry.cached == null || entry.cached.get() == null) {
+            entry.cached = new SoftReference<>(nbt);
+        }
+        return true;
+    }
+
+    /**
+     * Takes one reference to an existing payload.
+     *
+     * @return false if the pool does not contain it
+     */
+    public synchronized boolean acquire(String hash) {
+        Entry entry = entries.get(hash);
+        if (entry == null) {
+            return false;
+        }
+        entry.refs++;
+        return true;
+    }
+
+    /**
+     * Takes one reference per hash, e.g. for chests that were stored before this session.
+     */
+    public synchronized void acquireAll(Collection<String> hashes) {
+        for (String hash : hashes) {
+            Entry entry = entries.get(hash);
+            if (entry != null) {
+                entry.refs++;
+            }
+        }
+    }
+
+    /**
+     * Drops one reference per hash.
+     */
+    public synchronized void releaseAll(Collection<String> hashes) {
+        for (String hash : hashes) {
+            Entry entry = entries.get(hash);
+            if (entry != null && entry.refs > 0) {
+                entry.refs--;
+            }
+        }
+    }
+
+    /**
+     * Returns the payload for a hash, or null if the pool does not contain it.
+     * The lock is only held to look up the entry and cache the result; the read, decompression
+     * and decoding run without it, so loads of different players do not wait for each other.
+     */
+    public NbtMap get(String hash) throws IOException {
+        while (true) {
+            Entry entry;
+            FileChannel source;
+            synchronized (this) {
+                entry = entries.get(hash);
+                if (entry == null) {
+                    return null;
+                }
+                NbtMap cached = entry.cached != null ? entry.cached.get() : null;
+                if (cached != null) {
+                    return cached;
+                }
+                source = channel;
+            }
+
+            long start = System.nanoTime();
+            NbtMap nbt;
+            try {
+                nbt = BinaryChestFormat.decodeNbt(readRaw(source, entry, RECORD_OVERHEAD));
+            } catch (ClosedChannelException e) {
+                if (source == channel) {
+                    throw e;
+                }
+                // A rewrite replaced the file meanwhile, look the entry up again
+                continue;
+            }
+            long elapsed = System.nanoTime() - start;
+
+            synchronized (this) {
+                decodeNanos += elapsed;
+                decodedItems++;
+                Entry current = entries.get(hash);
+                if (current == null) {
+                    return nbt;
+                }
+                // Another thread may have decoded it at the same time, keep one shared instance
+                NbtMap cached = current.cached != null ? current.cached.get() : null;
+                if (cached != null) {
+                    return cached;
+                }
+                current.cached = new SoftReference<>(nbt);
+                return nbt;
+            }
+        }
+    }
+
+    /**
+     * Returns the shared instance of an equal payload if one is in memory, otherwise the argument.
+     * Does not store anything.
+     */
+    public NbtMap intern(NbtMap nbt) {
+        String hash;
+        try {
+            hash = hash(BinaryChestFormat.encodeNbt(nbt));
+        } catch (IOException e) {
+            return nbt;
+        }
+        synchronized (this) {
+            Entry entry = entries.get(hash);
+            if (entry == null) {
+                return nbt;
+            }
+            NbtMap cached = entry.cached != null ? entry.cached.get() : null;
+            if (cached != null) {
+                return cached;
+            }
+            entry.cached = new SoftReference<>(nbt);
+            return nbt;
+        }
+    }
+
+    /**
+     * Forces appended payloads to disk. Must be called before a chest referencing them is written.
+     */
+    public synchronized void flush() throws IOException {
+        if (dirty) {
+            channel.force(false);
+            dirty = false;
+        }
+    }
+
+    /**
+     * Marks the reference counts as complete, allowing unreferenced entries to be dropped.
+     */
+    public synchronized void setReferencesComplete() {
+        referencesComplete = true;
+    }
+
+    /**
+     * Rewrites the pool without unreferenced entries once they take up more than half of it.
+     */
+    public void compactIfNeeded() throws IOException {
+        synchronized (maintenanceLock) {
+            synchronized (this) {
+                if (!referencesComplete) {
+                    return;
+                }
+                long garbage = size - HEADER_SIZE - getLiveBytes();
+                if (garbage < MIN_COMPACTION_GARBAGE || garbage * 2 < size) {
+                    return;
+                }
+            }
+
+            int dropped = rewrite(RECORD_OVERHEAD, true);
+            synchronized (this) {
+                compactions++;
+            }
+            logger.info("Compacted item pool: dropped " + dropped + " unreferenced items, "
+                    + FormatConverter.formatBytes(getFileBytes()) + " left");
+        }
+    }
+
+    /**
+     * Whether the pool has grown enough since the last dictionary that {@link #trainIfNeeded()} would train one.
+     */
+    public synchronized boolean isTrainingDue() {
+        return shouldTrain();
+    }
+
+    /**
+     * Trains a new dictionary if the pool has grown enough since the last one.
+     */
+    public void trainIfNeeded() throws IOException {
+        synchronized (maintenanceLock) {
+            if (isTrainingDue()) {
+                trainDictionary();
+            }
+        }
+    }
+
+    /**
+     * Trains a new dictionary from the most referenced items and recompresses the pool with it.
+     * The lock is only held to pick the samples and to switch new items to the dictionary;
+     * reading the samples, training and recompressing run while the pool stays in use.
+     * Older dictionaries stay on disk, so chests exported or copied elsewhere are unaffected.
+     *
+     * @return the new dictionary, or null if the pool holds nothing to train on
+     */
+    public ItemDictionary trainDictionary() throws IOException {
+        synchronized (maintenanceLock) {
+            List<Entry> sampled;
+            int id;
+            synchronized (this) {
+                List<Entry> byRefs = new ArrayList<>(entries.values());
+                byRefs.sort(Comparator.comparingInt((Entry entry) -> entry.refs).reversed());
+                sampled = new ArrayList<>(byRefs.subList(0, Math.min(byRefs.size(), TRAINING_SAMPLES)));
+                id = dictionaries.keySet().stream().mapToInt(Integer::intValue).max().orElse(0) + 1;
+            }
+            // Records are only moved by rewrites, which cannot run meanwhile
+            List<byte[]> samples = new ArrayList<>(sampled.size());
+            for (Entry entry : sampled) {
+                samples.add(readRaw(channel, entry, RECORD_OVERHEAD));
+            }
+            ItemDictionary trained = ItemDictionary.train(id, samples);
+            if (trained.size() == 0) {
+                return null;
+            }
+
+            saveDictionary(trained);
+            long before;
+            synchronized (this) {
+                dictionaries.put(id, trained);
+                dictionary = trained;
+                before = size;
+            }
+            rewrite(RECORD_OVERHEAD, false);
+            logger.info("Trained item dictionary " + id + " (" + FormatConverter.formatBytes(trained.size()) + ") from "
+                    + samples.size() + " items, pool " + FormatConverter.formatBytes(before) + " -> "
+                    + FormatConverter.formatBytes(getFileBytes()));
+            return trained;
+        }
+    }
+
+    /**
+     * Whether the pool has grown enough to train its first or a better dictionary.
+     */
+    private boolean shouldTrain() {
+        int generation = dictionary != null ? dictionary.getId() : 0;
+        return compress && entries.size() >= (long) TRAINING_THRESHOLD << Math.min(40, generation * RETRAINING_GROWTH_SHIFT);
+    }
+
+    /**
+     * Writes the live entries into a new file that replaces the pool, compressing the ones that
+     * were not compressed with the current dictionary yet.
+     * <p>
+     * The entries that exist when the rewrite starts are copied without holding the pool's lock;
+     * the lock is only taken at the end, to copy what was added meanwhile, carry over the current
+     * reference counts and switch files. Callers hold {@link #maintenanceLock}, or are the constructor.
+     *
+     * @param sourceOverhead   Record header size of the current file
+     * @param dropUnreferenced Whether entries without references are left out
+     * @return the number of entries left out
+     */
+    private int rewrite(int sourceOverhead, boolean dropUnreferenced) throws IOException {
+        Path tempFile = compactFile();
+        Map<String, Entry> snapshot;
+        ItemDictionary target;
+        synchronized (this) {
+            snapshot = new HashMap<>(entries);
+            target = compress ? dictionary : null;
+        }
+        Map<String, Entry> rewritten = new HashMap<>();
+        try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).put(VERSION).flip();
+            long position = writeFully(out, header, 0);
+            for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+                // Counts may change meanwhile; entries skipped here are looked at again under the lock
+                if (dropUnreferenced && e.getValue().refs == 0) {
+                    continue;
+                }
+                Entry moved = copyRecord(out, e.getKey(), e.getValue(), sourceOverhead, target, position);
+                position = moved.offset + RECORD_OVERHEAD + moved.length;
+                rewritten.put(e.getKey(), moved);
+            }
+
+            synchronized (this) {
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    Entry entry = e.getValue();
+                    Entry moved = rewritten.get(e.getKey());
+                    if (moved == null) {
+                        if (dropUnreferenced && entry.refs == 0) {
+                            continue;
+                        }
+                        moved = copyRecord(out, e.getKey(), entry, sourceOverhead, target, position);
+                        position = moved.offset + RECORD_OVERHEAD + moved.length;
+                        rewritten.put(e.getKey(), moved);
+                    }
+                    moved.refs = entry.refs;
+                    moved.cached = entry.cached;
+                }
+                out.force(true);
+
+                channel.close();
+                AtomicFiles.replace(tempFile, file);
+                channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                size = channel.size();
+                dirty = false;
+                int dropped = entries.size() - rewritten.size();
+                entries.clear();
+                entries.putAll(rewritten);
+                return dropped;
+            }
+        }
+    }
+
+    /**
+     * Appends an entry's record to the new file, compressed with the target dictionary if it is not yet.
+     *
+     * @return the entry as stored in the new file
+     */
+    private Entry copyRecord(FileChannel out, String hash, Entry entry, int sourceOverhead, ItemDictionary target,
+                             long position) throws IOException {
+        Entry moved;
+        byte[] payload;
+        if (target != null && entry.dictionaryId != target.getId()) {
+            payload = target.compress(readRaw(channel, entry, sourceOverhead));
+            moved = new Entry(position, payload.length, target.getId(), entry.rawLength);
+        } else {
+            payload = readFully(entry.offset + sourceOverhead, entry.length).array();
+            moved = new Entry(position, entry.length, entry.dictionaryId, entry.rawLength);
+        }
+        writeRecord(out, hash, moved, payload, position);
+        return moved;
+    }
+
+    /**
+     * Forces the pool to disk and, if the reference counts are complete, saves them for the next start.
+     */
+    public synchronized void close() throws IOException {
+        flush();
+        channel.close();
+        if (referencesComplete) {
+            saveReferences();
+        }
+    }
+
+    private void saveReferences() throws IOException {
+        Path refsFile = refsFile();
+        Path tempFile = refsFile.resolveSibling(refsFile.getFileName() + ".tmp");
+        List<Map.Entry<String, Entry>> referenced = new ArrayList<>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (e.getValue().refs > 0) {
+                referenced.add(e);
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(REFS_MAGIC);
+            out.writeInt(referenced.size());
+            for (Map.Entry<String, Entry> e : referenced) {
+                out.write(HEX.parseHex(e.getKey()));
+                out.writeInt(e.getValue().refs);
+            }
+        }
+        AtomicFiles.force(tempFile);
+        AtomicFiles.replace(tempFile, refsFile);
+        AtomicFiles.forceDirectory(refsFile.getParent());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Statistics
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Number of stored chest items pointing into the pool.
+     */
+    public synchronized long getReferenceCount() {
+        long refs = 0;
+        for (Entry entry : entries.values()) {
+            refs += entry.refs;
+        }
+        return refs;
+    }
+
+    public synchronized long getFileBytes() {
+        return size;
+    }
+
+    /**
+     * Bytes of all referenced payloads, each counted once.
+     */
+    public synchronized long getLiveBytes() {
+        long bytes = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.refs > 0) {
+                bytes += RECORD_OVERHEAD + entry.length;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Bytes the referenced payloads would take if every chest item stored its own copy,
+     * divided by the bytes they take in the pool.
+     */
+    public synchronized double getDedupRatio() {
+        long logical = 0;
+        long physical = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.refs > 0) {
+                logical += (long) entry.refs * entry.rawLength;
+                physical += entry.rawLength;
+            }
+        }
+        return physical == 0 ? 1.0 : (double) logical / physical;
+    }
+
+    /**
+     * Uncompressed size of the referenced payloads divided by their stored size.
+     */
+    public synchronized double getCompressionRatio() {
+        long raw = 0;
+        long stored = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.refs > 0) {
+                raw += entry.rawLength;
+                stored += entry.length;
+            }
+        }
+        return stored == 0 ? 1.0 : (double) raw / stored;
+    }
+
+    /**
+     * Version of the dictionary new items are compressed with, 0 if none has been trained yet.
+     */
+    public synchronized int getDictionaryId() {
+        return dictionary != null ? dictionary.getId() : 0;
+    }
+
+    /**
+     * Average microseconds spent compressing one item.
+     */
+    public synchronized double getAverageEncodeMicros() {
+        return encodedItems == 0 ? 0 : encodeNanos / (double) encodedItems / 1000.0;
+    }
+
+    /**
+     * Average microseconds spent decompressing one item that was not in memory.
+     */
+    public synchronized double getAverageDecodeMicros() {
+        return decodedItems == 0 ? 0 : decodeNanos / (double) decodedItems / 1000.0;
+    }
+
+    /**
+     * One-line summary for logging.
+     */
+    public String describe() {
+        return String.format(Locale.US,
+                "items=%d refs=%d size=%s dedup=%.2fx dictionary=%d compression=%.2fx encode=%.1fus decode=%.1fus compactions=%d",
+                getEntryCount(), getReferenceCount(), FormatConverter.formatBytes(getFileBytes()),
+                getDedupRatio(), getDictionaryId(), getCompressionRatio(), getAverageEncodeMicros(),
+                getAverageDecodeMicros(), compactions);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static String hash(byte[] bytes) {
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+        return HEX.formatHex(digest.digest(bytes));
+    }
+
+    /**
+     * Reads an entry's payload and decompresses it if needed. Positional reads are safe without the lock.
+     *
+     * @param source   The pool file the entry's offset points into
+     * @param overhead Record header size of that file
+     */
+    private byte[] readRaw(FileChannel source, Entry entry, int overhead) throws IOException {
+        byte[] payload = readFully(source, entry.offset + overhead, entry.length).array();
+        if (entry.dictionaryId == 0) {
+            return payload;
+        }
+        ItemDictionary used = dictionaries.get(entry.dictionaryId);
+        if (used == null) {
+            throw new IOException("Item dictionary " + entry.dictionaryId + " is missing from " + dictionaryFolder);
+        }
+        return used.decompress(payload, entry.rawLength);
+    }
+
+    private static long writeRecord(FileChannel channel, String hash, Entry entry, byte[] payload, long position)
+            throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + payload.length);
+        record.put(HEX.parseHex(hash)).putInt(payload.length).putInt(entry.dictionaryId).putInt(entry.rawLength)
+                .put(payload).flip();
+        return writeFully(channel, record, position);
+    }
+
+    private void loadDictionaries() throws IOException {
+        if (!Files.isDirectory(dictionaryFolder)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dictionaryFolder, "*" + DICTIONARY_EXTENSION)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+                int id;
+                try {
+                    id = Integer.parseInt(name.substring(0, name.length() - DICTIONARY_EXTENSION.length()));
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring unexpected file in item dictionary folder: " + name);
+                    continue;
+                }
+                if (id <= 0 || bytes.remaining() < 4 || bytes.getInt() != DICTIONARY_MAGIC) {
+                    throw new IOException("Not a DeathChest item dictionary: " + path);
+                }
+                byte[] content = new byte[bytes.remaining()];
+                bytes.get(content);
+                dictionaries.put(id, new ItemDictionary(id, content));
+            }
+        }
+        dictionaries.keySet().stream().max(Integer::compare).ifPresent(id -> dictionary = dictionaries.get(id));
+    }
+
+    private void saveDictionary(ItemDictionary saved) throws IOException {
+        Files.createDirectories(dictionaryFolder);
+        Path target = dictionaryFolder.resolve(saved.getId() + DICTIONARY_EXTENSION);
+        Path tempFile = dictionaryFolder.resolve(saved.getId() + DICTIONARY_EXTENSION + ".tmp");
+        ByteBuffer content = ByteBuffer.allocate(4 + saved.size()).putInt(DICTIONARY_MAGIC).put(saved.getBytes());
+        Files.write(tempFile, content.array());
+        AtomicFiles.force(tempFile);
+        AtomicFiles.replace(tempFile, target);
+        AtomicFiles.forceDirectory(dictionaryFolder);
+    }
+
+    private Path refsFile() {
+        return file.resolveSibling(file.getFileName() + ".refs");
+    }
+
+    private Path compactFile() {
+        return file.resolveSibling(file.getFileName() + ".compact");
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        return readFully(channel, position, length);
+    }
+
+    private ByteBuffer readFully(FileChannel source, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(source, buffer, position);
+        buffer.flip();
+        return buffer;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        readFully(channel, buffer, position);
+    }
+
+    private void readFully(FileChannel source, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + file.getFileName());
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        writeFully(channel, buffer, position);
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return position;
+    }
+}
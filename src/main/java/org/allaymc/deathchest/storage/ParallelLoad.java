@@ -0,0 +1,72 @@
+package org.allaymc.deathchest.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Runs a task for every element of a list on a bounded number of threads, for startup loads
+ * that are dominated by parsing. Each thread takes the next element as soon as it is done with one.
+ */
+public final class ParallelLoad {
+
+    private ParallelLoad() {
+    }
+
+    /**
+     * Runs the task for every element and returns once all are done.
+     * The task should handle its own failures; the first exception that escapes it stops the
+     * remaining elements and is rethrown.
+     *
+     * @param threads    Maximum number of threads; 0 or less uses one per available processor
+     * @param threadName Name prefix of the threads
+     */
+    public static <T> void forEach(List<T> items, int threads, String threadName, Consumer<T> task) {
+        int count = Math.min(items.size(), threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        if (count <= 1) {
+            items.forEach(task);
+            return;
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Runnable worker = () -> {
+            int i;
+            while (failure.get() == null && (i = next.getAndIncrement()) < items.size()) {
+                try {
+                    task.accept(items.get(i));
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }
+        };
+        List<Thread> workers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Thread thread = new Thread(worker, threadName + "-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+            workers.add(thread);
+        }
+        try {
+            for (Thread thread : workers) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            failure.compareAndSet(null, e);
+            Thread.currentThread().interrupt();
+        }
+
+        Throwable error = failure.get();
+        if (error instanceof RuntimeException runtime) {
+            throw runtime;
+        }
+        if (error instanceof Error fatal) {
+            throw fatal;
+        }
+        if (error != null) {
+            throw new IllegalStateException("Parallel load was interrupted", error);
+        }
+    }
+}
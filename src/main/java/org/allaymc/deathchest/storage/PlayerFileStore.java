@@ -0,0 +1,247 @@
+package org.allaymc.deathchest.storage;
+
+import org.allaymc.deathchest.config.DeathChestConfig;
+import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.data.ChestSummary;
+import org.allaymc.deathchest.serialization.BinaryChestFormat;
+import org.allaymc.deathchest.serialization.ChestFormat;
+import org.allaymc.deathchest.serialization.JsonChestFormat;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Stores one file per player in the chests folder, using the configured {@link ChestFormat}.
+ * Every save rewrites the player's whole file via a temporary file and an atomic rename.
+ * {@link #sync()} forces the files written since the last sync, then the folder holding the renames.
+ * <p>
+ * Files are parsed in parallel when scanning. A file that cannot be parsed is moved to the
+ * {@code corrupt} subfolder, so it is kept for inspection and not overwritten by the next save.
+ */
+public class PlayerFileStore implements ChestStore {
+
+    public static final String NAME = "files";
+    public static final String CORRUPT_FOLDER = "corrupt";
+
+    private final Path folder;
+    private final ChestFormat format;
+    private final List<ChestFormat> legacyFormats;
+    private final Logger logger;
+    private final int loadThreads;
+    private final Set<UUID> unsynced = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param folder        Folder holding the player files
+     * @param format        Format new files are written in
+     * @param legacyFormats Other formats whose files can be converted to {@code format}
+     */
+    public PlayerFileStore(Path folder, ChestFormat format, List<ChestFormat> legacyFormats, Logger logger) {
+        this(folder, format, legacyFormats, 0, logger);
+    }
+
+    /**
+     * @param loadThreads Threads parsing files in {@link #scan}; 0 uses one per available processor
+     */
+    public PlayerFileStore(Path folder, ChestFormat format, List<ChestFormat> legacyFormats, int loadThreads, Logger logger) {
+        this.folder = folder;
+        this.format = format;
+        this.legacyFormats = legacyFormats;
+        this.loadThreads = loadThreads;
+        this.logger = logger;
+
+        File dir = folder.toFile();
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+    }
+
+    /**
+     * Creates the store with the file format selected in the config; files in the other format can be converted.
+     */
+    public static PlayerFileStore create(Path folder, DeathChestConfig config, Logger logger) {
+        ChestFormat binary = new BinaryChestFormat(config.isCompressItems());
+        ChestFormat json = new JsonChestFormat();
+        if (JsonChestFormat.NAME.equalsIgnoreCase(config.getStorageFormat())) {
+            return new PlayerFileStore(folder, json, List.of(binary), config.getLoadThreads(), logger);
+        }
+        if (!BinaryChestFormat.NAME.equalsIgnoreCase(config.getStorageFormat())) {
+            logger.warn("Unknown storage format '" + config.getStorageFormat() + "', using binary");
+        }
+        return new PlayerFileStore(folder, binary, List.of(json), config.getLoadThreads(), logger);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    public ChestFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Parses the files on {@code loadThreads} threads and hands each file's chests to the consumer at once.
+     */
+    @Override
+    public void scan(Consumer<ChestSummary> consumer) {
+        Object consumerLock = new Object();
+        ParallelLoad.forEach(listStoredPlayers(), loadThreads, "DeathChest-Load", playerId -> {
+            List<ChestSummary> summaries = new ArrayList<>();
+            try {
+                format.readSummaries(playerFile(playerId), summaries::add);
+            } catch (NoSuchFileException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                quarantine(playerId, e);
+                return;
+            }
+            synchronized (consumerLock) {
+                summaries.forEach(consumer);
+            }
+        });
+    }
+
+    /**
+     * Loads the player's chests. A file that cannot be parsed is quarantined and treated as empty.
+     */
+    @Override
+    public List<ChestData> load(UUID playerId) throws IOException {
+        Path playerFile = playerFile(playerId);
+        if (!Files.exists(playerFile)) {
+            return new ArrayList<>();
+        }
+        try {
+            return format.read(playerFile);
+        } catch (NoSuchFileException e) {
+            return new ArrayList<>();
+        } catch (IOException | RuntimeException e) {
+            quarantine(playerId, e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Moves an unreadable player file into the corrupt folder, keeping it for manual recovery.
+     */
+    private void quarantine(UUID playerId, Exception error) {
+        Path playerFile = playerFile(playerId);
+        Path corruptFolder = folder.resolve(CORRUPT_FOLDER);
+        Path target = corruptFolder.resolve(playerFile.getFileName() + "." + System.currentTimeMillis());
+        try {
+            Files.createDirectories(corruptFolder);
+            Files.move(playerFile, target);
+            logger.error("Moved unreadable chest file of player " + playerId + " to " + folder.relativize(target), error);
+        } catch (IOException e) {
+            error.addSuppressed(e);
+            logger.error("Failed to read chest file of player " + playerId + " and to move it to " + CORRUPT_FOLDER, error);
+        }
+    }
+
+    @Override
+    public void save(UUID playerId, List<ChestData> chests) throws IOException {
+        Path playerFile = playerFile(playerId);
+        unsynced.add(playerId);
+        if (chests.isEmpty()) {
+            Files.deleteIfExists(playerFile);
+            return;
+        }
+
+        Path tempFile = folder.resolve(playerId + format.getExtension() + ".tmp");
+        format.write(tempFile, chests);
+        AtomicFiles.replace(tempFile, playerFile);
+    }
+
+    @Override
+    public void sync() throws IOException {
+        if (unsynced.isEmpty()) {
+            return;
+        }
+        List<UUID> players = new ArrayList<>(unsynced);
+        // Removed before forcing, so a save racing with the sync marks its player again
+        unsynced.removeAll(players);
+        try {
+            for (UUID playerId : players) {
+                try {
+                    AtomicFiles.force(playerFile(playerId));
+                } catch (NoSuchFileException e) {
+                    // Deleted, the folder sync below persists that
+                }
+            }
+        } catch (IOException e) {
+            unsynced.addAll(players);
+            throw e;
+        }
+        AtomicFiles.forceDirectory(folder);
+    }
+
+    @Override
+    public long getStoredBytes() {
+        long total = 0;
+        File[] files = folder.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                total += file.length();
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Converts files written in any of the legacy formats to the configured one.
+     */
+    public FormatConverter.Result convertLegacyFiles() {
+        FormatConverter.Result total = new FormatConverter.Result(0, 0, 0, 0, 0, 0);
+        for (ChestFormat legacy : legacyFormats) {
+            FormatConverter.Result result = FormatConverter.convert(folder, legacy, format, logger);
+            total = new FormatConverter.Result(
+                    total.files() + result.files(),
+                    total.failed() + result.failed(),
+                    total.bytesBefore() + result.bytesBefore(),
+                    total.bytesAfter() + result.bytesAfter(),
+                    total.readNanosBefore() + result.readNanosBefore(),
+                    total.readNanosAfter() + result.readNanosAfter());
+        }
+        return total;
+    }
+
+    /**
+     * Lists the players that have a chest file in the configured format.
+     */
+    public List<UUID> listStoredPlayers() {
+        List<UUID> players = new ArrayList<>();
+        String extension = format.getExtension();
+        File[] files = folder.toFile().listFiles((dir, name) -> name.endsWith(extension));
+        if (files == null) {
+            return players;
+        }
+
+        for (File file : files) {
+            String fileName = file.getName();
+            String uuidStr = fileName.substring(0, fileName.length() - extension.length());
+            try {
+                players.add(UUID.fromString(uuidStr));
+            } catch (IllegalArgumentException e) {
+                logger.error("Invalid player UUID in filename: " + fileName);
+            }
+        }
+        return players;
+    }
+
+    private Path playerFile(UUID playerId) {
+        return folder.resolve(playerId + format.getExtension());
+    }
+}
@@ -0,0 +1,386 @@
+package org.allaymc.deathchest.storage;
+
+import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.data.ChestSummary;
+import org.allaymc.deathchest.data.ItemData;
+import org.cloudburstmc.nbt.NbtMap;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Stores item NBT in an {@link ItemPool} and only references to it in the underlying store.
+ * <p>
+ * Items are swapped for their pool hash on save and resolved back to the pooled (shared) NBT on load.
+ * Chests never change their items, so a save only acquires references for chests that are new since
+ * the player's last save and reuses the stored references of the others; chests that are gone release
+ * theirs. The references of the last save are kept per chest while the player is cached (until
+ * {@link #forget}), otherwise they are read back from the underlying store, which holds only hashes.
+ * <p>
+ * After a clean shutdown the pool restores its saved reference counts, which already include every
+ * stored chest, so startup reads no chest data for them. After a crash the references are counted
+ * again by a background pass that loads every player; until it is done, a player's stored references
+ * are only released once they have been counted, and unreferenced pool entries are not dropped.
+ * <p>
+ * With deduplication disabled, items are stored inline again but existing references still resolve.
+ */
+public class PooledChestStore implements ChestStore {
+
+    private static final long COMPACTION_INTERVAL_MINUTES = 5;
+
+    private final ChestStore inner;
+    private final ItemPool pool;
+    private final boolean deduplicate;
+    private final Logger logger;
+
+    // Pool references of the last save by chest, one per item (null for inline items), for cached players only
+    private final Map<UUID, Map<UUID, List<String>>> storedRefs = new ConcurrentHashMap<>();
+    // Whether the pool's counts include the references of every stored chest, restored or counted
+    private volatile boolean countsComplete;
+    // Players whose stored references have been counted, only needed until the counts are complete
+    private final Set<UUID> counted = ConcurrentHashMap.newKeySet();
+    private final StripedLocks refLocks = StripedLocks.forPlayers();
+    private final ScheduledExecutorService background;
+    private final AtomicBoolean trainingQueued = new AtomicBoolean();
+
+    /**
+     * @param deduplicate Whether items are written as pool references; otherwise they are stored inline
+     */
+    public PooledChestStore(ChestStore inner, ItemPool pool, boolean deduplicate, Logger logger) {
+        this.inner = inner;
+        this.pool = pool;
+        this.deduplicate = deduplicate;
+        this.logger = logger;
+        this.countsComplete = pool.isReferencesRestored();
+        this.background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DeathChest-ItemPool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.background.scheduleWithFixedDelay(() -> {
+            try {
+                pool.compactIfNeeded();
+            } catch (IOException | RuntimeException e) {
+                logger.error("Failed to compact the item pool", e);
+            }
+        }, COMPACTION_INTERVAL_MINUTES, COMPACTION_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        // The pool may already be due for a dictionary, e.g. after compression was enabled
+        requestTraining();
+    }
+
+    /**
+     * Trains a new item dictionary on the background thread if the pool is due for one.
+     * Saves keep using the current dictionary until it is done.
+     */
+    private void requestTraining() {
+        if (!pool.isTrainingDue() || !trainingQueued.compareAndSet(false, true)) {
+            return;
+        }
+        background.execute(() -> {
+            trainingQueued.set(false);
+            try {
+                pool.trainIfNeeded();
+            } catch (IOException | RuntimeException e) {
+                logger.error("Failed to train an item dictionary", e);
+            }
+        });
+    }
+
+    @Override
+    public String getName() {
+        return inner.getName();
+    }
+
+    public ChestStore getInner() {
+        return inner;
+    }
+
+    public ItemPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Scans the underlying store. Unless the pool restored its counts, the pool references of every
+     * player are then counted in the background.
+     */
+    @Override
+    public void scan(Consumer<ChestSummary> consumer) throws IOException {
+        if (countsComplete) {
+            inner.scan(consumer);
+            logger.info("Restored item pool reference counts: " + pool.describe());
+            return;
+        }
+        Set<UUID> players = new HashSet<>();
+        inner.scan(summary -> {
+            players.add(summary.getPlayerId());
+            consumer.accept(summary);
+        });
+        background.execute(() -> countReferences(players));
+    }
+
+    private void countReferences(Set<UUID> players) {
+        long start = System.nanoTime();
+        for (UUID playerId : players) {
+            if (counted.contains(playerId)) {
+                continue;
+            }
+            try {
+                count(playerId, inner.load(playerId));
+            } catch (IOException | RuntimeException e) {
+                // Without this player's references, unreferenced entries cannot be told apart safely
+                logger.error("Failed to count item pool references of player " + playerId
+                        + ", item pool cleanup stays disabled", e);
+                return;
+            }
+        }
+        countsComplete = true;
+        counted.clear();
+        pool.setReferencesComplete();
+        logger.info("Counted item pool references of " + players.size() + " players in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms: " + pool.describe());
+    }
+
+    @Override
+    public List<ChestData> load(UUID playerId) throws IOException {
+        List<ChestData> chests = inner.load(playerId);
+        count(playerId, chests);
+        for (ChestData chest : chests) {
+            if (chest.getItems() == null) {
+                continue;
+            }
+            for (ItemData item : chest.getItems()) {
+                if (item.getPoolRef() == null) {
+                    continue;
+                }
+                NbtMap nbt = pool.get(item.getPoolRef());
+                if (nbt == null) {
+                    logger.error("Item " + item.getPoolRef() + " of chest " + chest.getChestId() + " is missing from the item pool");
+                    continue;
+                }
+                item.setNbtData(nbt);
+                item.setPoolRef(null);
+            }
+        }
+        return chests;
+    }
+
+    @Override
+    public void save(UUID playerId, List<ChestData> chests) throws IOException {
+        synchronized (refLocks.get(playerId)) {
+            Map<UUID, List<String>> oldRefs = storedRefs.get(playerId);
+            boolean oldCounted = true;
+            if (oldRefs == null) {
+                // Not cached since the last save, the underlying store has the references without any item data
+                oldRefs = refsByChest(inner.load(playerId));
+                oldCounted = countsComplete || counted.contains(playerId);
+            }
+
+            Map<UUID, List<String>> newRefs = new HashMap<>();
+            List<String> acquired = new ArrayList<>();
+            List<ChestData> stored = new ArrayList<>(chests.size());
+            try {
+                for (ChestData chest : chests) {
+                    List<String> refs = oldRefs.get(chest.getChestId());
+                    int itemCount = chest.getItems() != null ? chest.getItems().size() : 0;
+                    if (refs != null && refs.size() == itemCount) {
+                        // Stored before with the same items, nothing to encode
+                        if (!oldCounted) {
+                            acquire(refs, acquired);
+                        }
+                    } else {
+                        refs = new ArrayList<>(itemCount);
+                        acquireAll(chest, refs, acquired);
+                    }
+                    stored.add(toStored(chest, refs));
+                    newRefs.put(chest.getChestId(), refs);
+                }
+                pool.flush();
+                inner.save(playerId, stored);
+            } catch (IOException | RuntimeException e) {
+                pool.releaseAll(acquired);
+                throw e;
+            }
+            if (oldCounted) {
+                for (Map.Entry<UUID, List<String>> old : oldRefs.entrySet()) {
+                    if (newRefs.get(old.getKey()) != old.getValue()) {
+                        pool.releaseAll(nonNull(old.getValue()));
+                    }
+                }
+            }
+            if (!countsComplete) {
+                // Everything stored for the player is counted now, the background pass can skip them
+                counted.add(playerId);
+            }
+            if (newRefs.isEmpty()) {
+                storedRefs.remove(playerId);
+            } else {
+                storedRefs.put(playerId, newRefs);
+            }
+        }
+        requestTraining();
+    }
+
+    /**
+     * Drops the references kept for a player that left the cache; the next save reads them back from the store.
+     */
+    public void forget(UUID playerId) {
+        synchronized (refLocks.get(playerId)) {
+            storedRefs.remove(playerId);
+        }
+    }
+
+    /**
+     * Takes one pool reference per item of a chest, storing new payloads in the pool.
+     *
+     * @param refs     Receives the reference for each item, null for items stored inline
+     * @param acquired Receives every reference taken, to release them if the save fails
+     */
+    private void acquireAll(ChestData chest, List<String> refs, List<String> acquired) throws IOException {
+        if (chest.getItems() == null) {
+            return;
+        }
+        for (ItemData item : chest.getItems()) {
+            String hash = null;
+            if (item.getNbtData() != null && deduplicate) {
+                hash = pool.acquire(item.getNbtData());
+                acquired.add(hash);
+            } else if (item.getNbtData() == null && item.getPoolRef() != null) {
+                // Still unresolved (e.g. imported as is); keep the reference, counting it if the pool has it
+                hash = item.getPoolRef();
+                if (pool.acquire(hash)) {
+                    acquired.add(hash);
+                }
+            }
+            refs.add(hash);
+        }
+    }
+
+    private void acquire(List<String> refs, List<String> acquired) {
+        for (String hash : nonNull(refs)) {
+            if (pool.acquire(hash)) {
+                acquired.add(hash);
+            }
+        }
+    }
+
+    /**
+     * Copy of the chest with its items replaced by the given pool references, or kept inline where there is none.
+     */
+    private static ChestData toStored(ChestData chest, List<String> refs) {
+        if (chest.getItems() == null) {
+            return chest;
+        }
+        List<ItemData> items = new ArrayList<>(chest.getItems().size());
+        for (int i = 0; i < chest.getItems().size(); i++) {
+            ItemData item = chest.getItems().get(i);
+            ItemData copy = new ItemData();
+            if (refs.get(i) != null) {
+                copy.setPoolRef(refs.get(i));
+            } else {
+                copy.setNbtData(item.getNbtData());
+            }
+            items.add(copy);
+        }
+
+        ChestData copy = new ChestData();
+        copy.setChestId(chest.getChestId());
+        copy.setPlayerId(chest.getPlayerId());
+        copy.setPlayerName(chest.getPlayerName());
+        copy.setWorldName(chest.getWorldName());
+        copy.setDeathTime(chest.getDeathTime());
+        copy.setX(chest.getX());
+        copy.setY(chest.getY());
+        copy.setZ(chest.getZ());
+        copy.setDimensionId(chest.getDimensionId());
+        copy.setRecovered(chest.isRecovered());
+        copy.setItems(items);
+        return copy;
+    }
+
+    /**
+     * Counts the references found in a player's stored data, once, unless the counts are complete already.
+     */
+    private void count(UUID playerId, List<ChestData> stored) {
+        if (countsComplete) {
+            return;
+        }
+        synchronized (refLocks.get(playerId)) {
+            if (!countsComplete && counted.add(playerId)) {
+                for (List<String> refs : refsByChest(stored).values()) {
+                    pool.acquireAll(nonNull(refs));
+                }
+            }
+        }
+    }
+
+    /**
+     * The pool reference of every item by chest, null for items stored inline. Must be called before items are resolved.
+     */
+    private static Map<UUID, List<String>> refsByChest(List<ChestData> stored) {
+        Map<UUID, List<String>> refs = new HashMap<>();
+        for (ChestData chest : stored) {
+            List<String> chestRefs = new ArrayList<>();
+            if (chest.getItems() != null) {
+                for (ItemData item : chest.getItems()) {
+                    chestRefs.add(item.getPoolRef());
+                }
+            }
+            refs.put(chest.getChestId(), chestRefs);
+        }
+        return refs;
+    }
+
+    private static List<String> nonNull(List<String> refs) {
+        List<String> result = new ArrayList<>(refs.size());
+        for (String ref : refs) {
+            if (ref != null) {
+                result.add(ref);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Pool entries are forced before the chests referencing them are saved, so only the inner store is synced.
+     */
+    @Override
+    public void sync() throws IOException {
+        inner.sync();
+    }
+
+    @Override
+    public long getStoredBytes() {
+        return inner.getStoredBytes() + pool.getFileBytes();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Not interrupted: an interrupt during a rewrite would close the pool's file channel
+        background.shutdown();
+        try {
+            if (!background.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("Item pool maintenance did not finish in time, it is redone on the next start");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            inner.close();
+        } finally {
+            pool.close();
+        }
+    }
+}
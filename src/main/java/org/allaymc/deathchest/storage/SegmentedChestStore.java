@@ -0,0 +1,1014 @@
+package org.allaymc.deathchest.storage;
+
+import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.data.ChestSummary;
+import org.allaymc.deathchest.data.ItemData;
+import org.allaymc.deathchest.serialization.BinaryChestFormat;
+import org.allaymc.deathchest.serialization.ByteBufferInputStream;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only chest store.
+ * <p>
+ * Every change is appended to the active segment as a small record: CREATE (full chest with items),
+ * RECOVER or EXPIRE. Saving a player therefore only writes what changed since the last save.
+ * Once the active segment grows past its size limit it is sealed with a footer that lists all its
+ * records together with the chest metadata, so startup rebuilds the index from footers and only has
+ * to scan the active segment record by record.
+ * <p>
+ * An in-memory index maps every live chest to the location of its CREATE record. A background task
+ * compacts the sealed segments into one when most of their bytes belong to recovered-and-rewritten,
+ * expired or otherwise dead records.
+ * <p>
+ * Sealed segments never change again, so they are memory-mapped read-only and chests are decoded
+ * straight from slices of the mapping. Reads from the active segment go through the file channel.
+ * <p>
+ * Record layout: {@code [int bodyLength][byte type][body][int crc32(type + body)]}.
+ */
+public class SegmentedChestStore implements ChestStore {
+
+    public static final String NAME = "log";
+
+    private static final int SEGMENT_MAGIC = 0x44434C47; // "DCLG"
+    private static final byte SEGMENT_VERSION = 1;
+    private static final int HEADER_SIZE = 5;
+    private static final long FOOTER_MAGIC = 0x44434C4746545231L; // "DCLGFTR1"
+    private static final long FOOTER_MAGIC_V2 = 0x44434C4746545232L; // "DCLGFTR2", adds the superseded segment ids
+    private static final int TRAILER_SIZE = 12; // int footer length + long magic
+    private static final int RECORD_OVERHEAD = 9; // length + type + crc
+    private static final int METADATA_PREFIX = 512; // enough for the metadata of a CREATE record with usual names
+
+    static final byte TYPE_CREATE = 1;
+    static final byte TYPE_RECOVER = 2;
+    static final byte TYPE_EXPIRE = 3;
+
+    private static final double COMPACTION_GARBAGE_RATIO = 0.5;
+    private static final long COMPACTION_INTERVAL_MINUTES = 5;
+
+    /**
+     * Location of the CREATE record of a live chest.
+     */
+    private static final class Location {
+        final UUID playerId;
+        Segment segment;
+        long offset;
+        int length;
+        boolean recovered;
+
+        Location(UUID playerId, Segment segment, long offset, int length, boolean recovered) {
+            this.playerId = playerId;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.recovered = recovered;
+        }
+    }
+
+    /**
+     * One record as listed in a segment footer.
+     *
+     * @param summary Chest metadata, only present for CREATE records
+     */
+    private record FooterEntry(byte type, UUID chestId, UUID playerId, long offset, int length, ChestSummary summary) {
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path file;
+        FileChannel channel;
+        // Read-only mapping of a sealed segment, null for the active one
+        MappedByteBuffer mapped;
+        long size;
+        long footerBytes;
+        long liveBytes;
+        boolean sealed;
+        // Records of the active segment, written out as the footer when it is sealed
+        final List<FooterEntry> entries = new ArrayList<>();
+        // Ids of the segments a compaction merged into this one, which must never be replayed again
+        final Set<Integer> superseded = new TreeSet<>();
+
+        Segment(int id, Path file) {
+            this.id = id;
+            this.file = file;
+        }
+    }
+
+    private final Path folder;
+    private final long maxSegmentBytes;
+    private final boolean compress;
+    private final Logger logger;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<UUID, Location> locations = new HashMap<>();
+    private final Map<UUID, Set<UUID>> chestsByPlayer = new HashMap<>();
+    private Segment active;
+    private volatile boolean opened;
+
+    private final ScheduledExecutorService compactor;
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong appendedRecords = new AtomicLong();
+    private final AtomicLong mappedReads = new AtomicLong();
+    private final AtomicLong channelReads = new AtomicLong();
+
+    /**
+     * @param folder          Folder holding the segment files
+     * @param maxSegmentBytes Size after which the active segment is sealed and a new one is started
+     * @param compress        Whether item payloads are deflate-compressed
+     */
+    public SegmentedChestStore(Path folder, long maxSegmentBytes, boolean compress, Logger logger) throws IOException {
+        this.folder = folder;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.compress = compress;
+        this.logger = logger;
+        Files.createDirectories(folder);
+
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DeathChest-Compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.compactor.scheduleWithFixedDelay(() -> {
+            try {
+                compactIfNeeded();
+            } catch (Exception e) {
+                logger.error("Failed to compact chest log segments", e);
+            }
+        }, COMPACTION_INTERVAL_MINUTES, COMPACTION_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Replays all segments and reports the live chests. Must be called once before any other operation;
+     * the other operations open the store on their own if it has not happened yet.
+     */
+    @Override
+    public void scan(Consumer<ChestSummary> consumer) throws IOException {
+        lock.writeLock().lock();
+        try {
+            Map<UUID, ChestSummary> summaries = open();
+            summaries.values().forEach(consumer);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ChestData> load(UUID playerId) throws IOException {
+        ensureOpen();
+        lock.readLock().lock();
+        try {
+            Set<UUID> chestIds = chestsByPlayer.get(playerId);
+            List<ChestData> chests = new ArrayList<>();
+            if (chestIds == null) {
+                return chests;
+            }
+            for (UUID chestId : chestIds) {
+                Location location = locations.get(chestId);
+                ChestData chest = readChest(location);
+                chest.setRecovered(location.recovered);
+                chests.add(chest);
+            }
+            chests.sort((a, b) -> Long.compare(a.getDeathTime(), b.getDeathTime()));
+            return chests;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends only the differences to the stored state: new chests, newly recovered chests
+     * and chests that are no longer in the list.
+     */
+    @Override
+    public void save(UUID playerId, List<ChestData> chests) throws IOException {
+        ensureOpen();
+        lock.writeLock().lock();
+        try {
+            Set<UUID> remaining = new HashSet<>(chestsByPlayer.getOrDefault(playerId, Set.of()));
+            for (ChestData chest : chests) {
+                remaining.remove(chest.getChestId());
+                Location location = locations.get(chest.getChestId());
+                if (location == null) {
+                    appendCreate(chest);
+                } else if (chest.isRecovered() && !location.recovered) {
+                    appendState(TYPE_RECOVER, chest.getChestId(), playerId);
+                    location.recovered = true;
+                }
+            }
+            for (UUID chestId : remaining) {
+                appendState(TYPE_EXPIRE, chestId, playerId);
+                removeLocation(chestId);
+            }
+            if (active.size >= maxSegmentBytes) {
+                rollSegment();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forces the appended records of the active segment to disk; sealed segments were forced when sealed.
+     */
+    @Override
+    public void sync() throws IOException {
+        ensureOpen();
+        lock.readLock().lock();
+        try {
+            active.channel.force(false);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        compactor.shutdownNow();
+        try {
+            compactor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments) {
+                if (segment.channel != null) {
+                    if (!segment.sealed) {
+                        segment.channel.force(true);
+                    }
+                    segment.channel.close();
+                    segment.channel = null;
+                }
+                segment.mapped = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Startup
+
+    private void ensureOpen() throws IOException {
+        if (opened) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!opened) {
+                open();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the in-memory index from the segment files. Caller holds the write lock.
+     *
+     * @return the metadata of all live chests
+     */
+    private Map<UUID, ChestSummary> open() throws IOException {
+        Map<UUID, ChestSummary> summaries = new LinkedHashMap<>();
+        if (opened) {
+            // Already replayed, e.g. by an on-demand load during startup: read the metadata back, not the items
+            for (Location location : locations.values()) {
+                ChestSummary summary = readSummary(location);
+                summaries.put(summary.getChestId(), summary);
+            }
+            return summaries;
+        }
+
+        List<Integer> ids = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".compact")) {
+                    // Left over from an interrupted compaction, the originals are still intact
+                    Files.deleteIfExists(file);
+                } else if (name.startsWith("segment-") && name.endsWith(".log")) {
+                    try {
+                        ids.add(Integer.parseInt(name.substring(8, name.length() - 4)));
+                    } catch (NumberFormatException e) {
+                        logger.warn("Ignoring unexpected file in chest log folder: " + name);
+                    }
+                }
+            }
+        }
+        ids.sort(Integer::compare);
+
+        Map<Segment, List<FooterEntry>> found = new LinkedHashMap<>();
+        Set<Integer> superseded = new HashSet<>();
+        for (int id : ids) {
+            Segment segment = new Segment(id, segmentFile(id));
+            segment.channel = FileChannel.open(segment.file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segment.size = segment.channel.size();
+            found.put(segment, readFooter(segment));
+            superseded.addAll(segment.superseded);
+        }
+
+        List<Segment> replayed = new ArrayList<>();
+        for (Map.Entry<Segment, List<FooterEntry>> entry : found.entrySet()) {
+            Segment segment = entry.getKey();
+            if (superseded.contains(segment.id)) {
+                // Merged by a compaction that did not get to delete it, its records must not be replayed
+                // before the merged segment, where they would bring back chests that expired since
+                segment.channel.close();
+                segment.channel = null;
+                deleteSegment(segment);
+            } else {
+                replayed.add(segment);
+            }
+        }
+
+        for (int i = 0; i < replayed.size(); i++) {
+            boolean last = i == replayed.size() - 1;
+            Segment segment = replayed.get(i);
+            List<FooterEntry> entries = found.get(segment);
+            if (entries != null) {
+                segment.sealed = true;
+                map(segment);
+            } else {
+                entries = scanRecords(segment);
+                segment.entries.addAll(entries);
+            }
+            segments.add(segment);
+            for (FooterEntry entry : entries) {
+                replay(segment, entry, summaries);
+            }
+
+            if (!segment.sealed && !last) {
+                // A segment that was not the active one when the server stopped, seal it now
+                sealSegment(segment);
+            }
+        }
+
+        if (!segments.isEmpty() && !segments.get(segments.size() - 1).sealed) {
+            active = segments.get(segments.size() - 1);
+        } else {
+            active = createSegment(segments.isEmpty() ? 1 : segments.get(segments.size() - 1).id + 1);
+        }
+
+        opened = true;
+        return summaries;
+    }
+
+    private void replay(Segment segment, FooterEntry entry, Map<UUID, ChestSummary> summaries) {
+        switch (entry.type()) {
+            case TYPE_CREATE -> {
+                removeLocation(entry.chestId());
+                Location location = new Location(entry.playerId(), segment, entry.offset(), entry.length(),
+                        entry.summary().isRecovered());
+                addLocation(entry.chestId(), location);
+                summaries.put(entry.chestId(), entry.summary());
+            }
+            case TYPE_RECOVER -> {
+                Location location = locations.get(entry.chestId());
+                if (location != null) {
+                    location.recovered = true;
+                    summaries.get(entry.chestId()).setRecovered(true);
+                }
+            }
+            case TYPE_EXPIRE -> {
+                removeLocation(entry.chestId());
+                summaries.remove(entry.chestId());
+            }
+            default -> logger.warn("Unknown record type " + entry.type() + " in " + segment.file.getFileName());
+        }
+    }
+
+    /**
+     * Reads the footer of a sealed segment, or returns null if the segment has none.
+     */
+    private List<FooterEntry> readFooter(Segment segment) throws IOException {
+        if (segment.size < HEADER_SIZE + TRAILER_SIZE) {
+            return null;
+        }
+        ByteBuffer trailer = readFully(segment.channel, segment.size - TRAILER_SIZE, TRAILER_SIZE);
+        int footerLength = trailer.getInt();
+        long magic = trailer.getLong();
+        if (magic != FOOTER_MAGIC && magic != FOOTER_MAGIC_V2 || footerLength < 4 || footerLength > segment.size - HEADER_SIZE - TRAILER_SIZE) {
+            return null;
+        }
+
+        segment.footerBytes = footerLength + TRAILER_SIZE;
+        long footerStart = segment.size - TRAILER_SIZE - footerLength;
+        ByteBuffer footer = readFully(segment.channel, footerStart, footerLength);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(footer.array()));
+        int count = in.readInt();
+        List<FooterEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte type = in.readByte();
+            UUID chestId = BinaryChestFormat.readUuid(in);
+            UUID playerId = BinaryChestFormat.readUuid(in);
+            long offset = in.readLong();
+            int length = in.readInt();
+            ChestSummary summary = null;
+            if (type == TYPE_CREATE) {
+                summary = ChestSummary.of(BinaryChestFormat.readMetadata(in));
+                summary.setItemCount(in.readInt());
+            }
+            entries.add(new FooterEntry(type, chestId, playerId, offset, length, summary));
+        }
+        if (magic == FOOTER_MAGIC_V2) {
+            int supersededCount = in.readInt();
+            for (int i = 0; i < supersededCount; i++) {
+                segment.superseded.add(in.readInt());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Scans an unsealed segment record by record. A torn or corrupt tail (from a crash mid-append)
+     * is cut off at the last valid record.
+     */
+    private List<FooterEntry> scanRecords(Segment segment) throws IOException {
+        List<FooterEntry> entries = new ArrayList<>();
+        if (segment.size < HEADER_SIZE) {
+            writeHeader(segment);
+            return entries;
+        }
+        ByteBuffer header = readFully(segment.channel, 0, HEADER_SIZE);
+        if (header.getInt() != SEGMENT_MAGIC || header.get() != SEGMENT_VERSION) {
+            throw new IOException("Not a DeathChest log segment: " + segment.file);
+        }
+
+        long position = HEADER_SIZE;
+        while (position + RECORD_OVERHEAD <= segment.size) {
+            int bodyLength = readFully(segment.channel, position, 4).getInt();
+            int length = bodyLength + RECORD_OVERHEAD;
+            if (bodyLength < 0 || position + length > segment.size) {
+                break;
+            }
+            ByteBuffer record = readFully(segment.channel, position, length);
+            FooterEntry entry = parseRecord(record, position);
+            if (entry == null) {
+                break;
+            }
+            entries.add(entry);
+            position += length;
+        }
+
+        if (position < segment.size) {
+            logger.warn("Truncating " + (segment.size - position) + " bytes of incomplete records from "
+                    + segment.file.getFileName());
+            segment.channel.truncate(position);
+            segment.size = position;
+        }
+        return entries;
+    }
+
+    /**
+     * Parses a complete record, or returns null if its checksum does not match.
+     */
+    private static FooterEntry parseRecord(ByteBuffer record, long offset) throws IOException {
+        int bodyLength = record.getInt(0);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, bodyLength + 1);
+        if ((int) crc.getValue() != record.getInt(5 + bodyLength)) {
+            return null;
+        }
+
+        byte type = record.get(4);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.array(), 5, bodyLength));
+        int length = bodyLength + RECORD_OVERHEAD;
+        if (type == TYPE_CREATE) {
+            ChestSummary summary = ChestSummary.of(BinaryChestFormat.readMetadata(in));
+            summary.setItemCount(in.readInt());
+            return new FooterEntry(type, summary.getChestId(), summary.getPlayerId(), offset, length, summary);
+        }
+        UUID chestId = BinaryChestFormat.readUuid(in);
+        UUID playerId = BinaryChestFormat.readUuid(in);
+        return new FooterEntry(type, chestId, playerId, offset, length, null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Reading
+
+    private ChestData readChest(Location location) throws IOException {
+        return decodeCreate(readRecord(location), location.segment.file);
+    }
+
+    /**
+     * Reads the metadata of a CREATE record without its item payload. For the active segment
+     * only the start of the record is read, unless the metadata turns out to be longer.
+     */
+    private ChestSummary readSummary(Location location) throws IOException {
+        ByteBuffer record;
+        if (location.segment.mapped != null) {
+            record = location.segment.mapped.slice((int) location.offset, location.length);
+        } else {
+            record = readFully(location.segment.channel, location.offset, Math.min(location.length, METADATA_PREFIX));
+        }
+        ChestSummary summary;
+        try {
+            summary = decodeSummary(record, location.length);
+        } catch (EOFException e) {
+            summary = decodeSummary(readFully(location.segment.channel, location.offset, location.length), location.length);
+        }
+        summary.setRecovered(location.recovered);
+        return summary;
+    }
+
+    private static ChestSummary decodeSummary(ByteBuffer record, int length) throws IOException {
+        int bodyLength = length - RECORD_OVERHEAD;
+        ByteBuffer body = record.slice(5, Math.min(bodyLength, record.limit() - 5));
+        DataInputStream in = new DataInputStream(new ByteBufferInputStream(body));
+        ChestSummary summary = ChestSummary.of(BinaryChestFormat.readMetadata(in));
+        summary.setItemCount(in.readInt());
+        return summary;
+    }
+
+    /**
+     * Returns the record at the location: a slice of the mapping for sealed segments,
+     * otherwise a heap copy read from the channel.
+     */
+    private ByteBuffer readRecord(Location location) throws IOException {
+        MappedByteBuffer mapped = location.segment.mapped;
+        if (mapped != null) {
+            mappedReads.incrementAndGet();
+            return mapped.slice((int) location.offset, location.length);
+        }
+        channelReads.incrementAndGet();
+        return readFully(location.segment.channel, location.offset, location.length);
+    }
+
+    /**
+     * Decodes a CREATE record. The item payload is decoded in place, so for mapped records
+     * the NBT is read directly from the page cache.
+     */
+    private static ChestData decodeCreate(ByteBuffer record, Path file) throws IOException {
+        int bodyLength = record.getInt(0);
+        CRC32 crc = new CRC32();
+        crc.update(record.slice(4, bodyLength + 1));
+        if ((int) crc.getValue() != record.getInt(5 + bodyLength) || record.get(4) != TYPE_CREATE) {
+            throw new IOException("Corrupt chest record in " + file.getFileName());
+        }
+
+        ByteBuffer body = record.slice(5, bodyLength);
+        DataInputStream in = new DataInputStream(new ByteBufferInputStream(body));
+        ChestData chest = BinaryChestFormat.readMetadata(in);
+        int itemCount = in.readInt();
+        boolean compressed = in.readBoolean();
+        int payloadLength = in.readInt();
+        chest.setItems(BinaryChestFormat.decodeItems(body.slice(body.position(), payloadLength), itemCount, compressed));
+        return chest;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Writing, caller holds the write lock
+
+    private void appendCreate(ChestData chest) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(body);
+        List<ItemData> items = chest.getItems() != null ? chest.getItems() : List.of();
+        byte[] payload = BinaryChestFormat.encodeItems(items, compress);
+        BinaryChestFormat.writeMetadata(out, chest);
+        out.writeInt(items.size());
+        out.writeBoolean(compress);
+        out.writeInt(payload.length);
+        out.write(payload);
+
+        long offset = append(TYPE_CREATE, body.toByteArray());
+        int length = body.size() + RECORD_OVERHEAD;
+        ChestSummary summary = ChestSummary.of(chest);
+        active.entries.add(new FooterEntry(TYPE_CREATE, chest.getChestId(), chest.getPlayerId(), offset, length, summary));
+        addLocation(chest.getChestId(), new Location(chest.getPlayerId(), active, offset, length, chest.isRecovered()));
+    }
+
+    private void appendState(byte type, UUID chestId, UUID playerId) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(32);
+        DataOutputStream out = new DataOutputStream(body);
+        BinaryChestFormat.writeUuid(out, chestId);
+        BinaryChestFormat.writeUuid(out, playerId);
+        long offset = append(type, body.toByteArray());
+        active.entries.add(new FooterEntry(type, chestId, playerId, offset, body.size() + RECORD_OVERHEAD, null));
+    }
+
+    /**
+     * Appends a record to the active segment and returns its offset.
+     */
+    private long append(byte type, byte[] body) throws IOException {
+        ByteBuffer record = encodeRecord(type, body);
+        long offset = active.size;
+        writeFully(active.channel, record, offset);
+        active.size += record.capacity();
+        appendedRecords.incrementAndGet();
+        return offset;
+    }
+
+    private static ByteBuffer encodeRecord(byte type, byte[] body) {
+        ByteBuffer record = ByteBuffer.allocate(body.length + RECORD_OVERHEAD);
+        record.putInt(body.length);
+        record.put(type);
+        record.put(body);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, body.length + 1);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private void addLocation(UUID chestId, Location location) {
+        locations.put(chestId, location);
+        chestsByPlayer.computeIfAbsent(location.playerId, k -> new HashSet<>()).add(chestId);
+        location.segment.liveBytes += location.length;
+    }
+
+    private void removeLocation(UUID chestId) {
+        Location location = locations.remove(chestId);
+        if (location == null) {
+            return;
+        }
+        location.segment.liveBytes -= location.length;
+        Set<UUID> chestIds = chestsByPlayer.get(location.playerId);
+        if (chestIds != null) {
+            chestIds.remove(chestId);
+            if (chestIds.isEmpty()) {
+                chestsByPlayer.remove(location.playerId);
+            }
+        }
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        Segment segment = new Segment(id, segmentFile(id));
+        segment.channel = FileChannel.open(segment.file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        writeHeader(segment);
+        segments.add(segment);
+        return segment;
+    }
+
+    private static void writeHeader(Segment segment) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(SEGMENT_MAGIC);
+        header.put(SEGMENT_VERSION);
+        header.flip();
+        segment.channel.truncate(0);
+        writeFully(segment.channel, header, 0);
+        segment.size = HEADER_SIZE;
+    }
+
+    private void rollSegment() throws IOException {
+        sealSegment(active);
+        active = createSegment(active.id + 1);
+    }
+
+    /**
+     * Writes the footer of a segment and makes it read-only from then on.
+     */
+    private void sealSegment(Segment segment) throws IOException {
+        ByteBuffer footer = encodeFooter(segment.entries, Set.of());
+        writeFully(segment.channel, footer, segment.size);
+        segment.size += footer.capacity();
+        segment.footerBytes = footer.capacity();
+        segment.channel.force(true);
+        segment.entries.clear();
+        segment.sealed = true;
+        map(segment);
+    }
+
+    /**
+     * Maps a sealed segment read-only. Segments too large for a single mapping keep using the channel.
+     */
+    private void map(Segment segment) throws IOException {
+        if (segment.size > Integer.MAX_VALUE) {
+            return;
+        }
+        segment.mapped = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.size);
+    }
+
+    private static ByteBuffer encodeFooter(List<FooterEntry> entries, Set<Integer> superseded) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() * 64 + 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(entries.size());
+        for (FooterEntry entry : entries) {
+            out.writeByte(entry.type());
+            BinaryChestFormat.writeUuid(out, entry.chestId());
+            BinaryChestFormat.writeUuid(out, entry.playerId());
+            out.writeLong(entry.offset());
+            out.writeInt(entry.length());
+            if (entry.type() == TYPE_CREATE) {
+                ChestData metadata = new ChestData();
+                ChestSummary summary = entry.summary();
+                metadata.setChestId(summary.getChestId());
+                metadata.setPlayerId(summary.getPlayerId());
+                metadata.setPlayerName(summary.getPlayerName());
+                metadata.setWorldName(summary.getWorldName());
+                metadata.setDeathTime(summary.getDeathTime());
+                metadata.setX(summary.getX());
+                metadata.setY(summary.getY());
+                metadata.setZ(summary.getZ());
+                metadata.setDimensionId(summary.getDimensionId());
+                metadata.setRecovered(summary.isRecovered());
+                BinaryChestFormat.writeMetadata(out, metadata);
+                out.writeInt(summary.getItemCount());
+            }
+        }
+        out.writeInt(superseded.size());
+        for (int id : superseded) {
+            out.writeInt(id);
+        }
+        int footerLength = bytes.size();
+        out.writeInt(footerLength);
+        out.writeLong(FOOTER_MAGIC_V2);
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private Path segmentFile(int id) {
+        return folder.resolve(String.format(Locale.ROOT, "segment-%08d.log", id));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Compaction
+
+    /**
+     * Merges all sealed segments into one, keeping only the CREATE records of live chests
+     * (with their current recovered flag folded in), if enough of their bytes are garbage.
+     * <p>
+     * The merged segment takes the id of the newest sealed segment, so it still replays before
+     * the active segment; RECOVER and EXPIRE records appended while compacting are replayed after it.
+     * Its footer lists the ids of the other merged segments, so one that is left on disk by a crash
+     * or a failed delete is skipped on open instead of replaying CREATE records whose EXPIRE is gone.
+     */
+    public void compactIfNeeded() throws IOException {
+        List<Segment> victims = new ArrayList<>();
+        Map<UUID, Location> live = new LinkedHashMap<>();
+
+        lock.writeLock().lock();
+        try {
+            if (!opened) {
+                return;
+            }
+            long total = 0;
+            long liveBytes = 0;
+            for (Segment segment : segments) {
+                if (segment.sealed) {
+                    victims.add(segment);
+                    // Footers are rebuilt anyway, only record bytes count towards the garbage ratio
+                    total += segment.size - segment.footerBytes - HEADER_SIZE;
+                    liveBytes += segment.liveBytes;
+                }
+            }
+            if (victims.isEmpty() || total == 0 || 1.0 - (double) liveBytes / total < COMPACTION_GARBAGE_RATIO) {
+                return;
+            }
+            for (Map.Entry<UUID, Location> entry : locations.entrySet()) {
+                Location location = entry.getValue();
+                if (location.segment.sealed) {
+                    live.put(entry.getKey(), new Location(location.playerId, location.segment,
+                            location.offset, location.length, location.recovered));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // Sealed segments are immutable, so they can be copied without holding the lock
+        Segment target = victims.get(victims.size() - 1);
+        Segment merged = new Segment(target.id, target.file);
+        for (Segment victim : victims) {
+            // Carry over the ids of earlier compactions that are still waiting to be deleted
+            for (int id : victim.superseded) {
+                if (Files.exists(segmentFile(id))) {
+                    merged.superseded.add(id);
+                }
+            }
+            if (victim != target) {
+                merged.superseded.add(victim.id);
+            }
+        }
+        Path tempFile = folder.resolve(target.file.getFileName() + ".compact");
+        Map<UUID, Location> moved = new HashMap<>();
+        try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(SEGMENT_MAGIC);
+            header.put(SEGMENT_VERSION);
+            header.flip();
+            writeFully(out, header, 0);
+            merged.size = HEADER_SIZE;
+
+            for (Map.Entry<UUID, Location> entry : live.entrySet()) {
+                Location location = entry.getValue();
+                ByteBuffer original = readRecord(location);
+                byte[] body = rewriteRecovered(original, location.recovered);
+                ByteBuffer record = encodeRecord(TYPE_CREATE, body);
+                long offset = merged.size;
+                int length = record.capacity();
+                FooterEntry footerEntry = parseRecord(record, offset);
+                record.rewind();
+                writeFully(out, record, offset);
+                merged.size += length;
+
+                merged.entries.add(footerEntry);
+                moved.put(entry.getKey(), new Location(location.playerId, merged, offset, length, location.recovered));
+            }
+
+            ByteBuffer footer = encodeFooter(merged.entries, merged.superseded);
+            writeFully(out, footer, merged.size);
+            merged.size += footer.capacity();
+            merged.footerBytes = footer.capacity();
+            out.force(true);
+        }
+        merged.entries.clear();
+        merged.sealed = true;
+
+        lock.writeLock().lock();
+        try {
+            for (Segment victim : victims) {
+                victim.channel.close();
+                victim.channel = null;
+                // The mapping is released once the buffer is garbage collected
+                victim.mapped = null;
+            }
+            AtomicFiles.replace(tempFile, target.file);
+            // The merged segment has to be in place before any of the segments it supersedes is gone
+            AtomicFiles.forceDirectory(folder);
+            for (Segment victim : victims) {
+                if (victim != target) {
+                    deleteSegment(victim);
+                }
+            }
+            merged.channel = FileChannel.open(merged.file, StandardOpenOption.READ);
+            map(merged);
+
+            for (Map.Entry<UUID, Location> entry : moved.entrySet()) {
+                Location current = locations.get(entry.getKey());
+                Location before = live.get(entry.getKey());
+                // Only repoint chests that did not expire or move while compacting
+                if (current != null && current.segment == before.segment && current.offset == before.offset) {
+                    current.segment = merged;
+                    current.offset = entry.getValue().offset;
+                    current.length = entry.getValue().length;
+                    merged.liveBytes += current.length;
+                }
+            }
+
+            segments.removeAll(victims);
+            segments.add(0, merged);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        compactions.incrementAndGet();
+        logger.info("Compacted " + victims.size() + " chest log segments into " + merged.file.getFileName()
+                + " (" + FormatConverter.formatBytes(merged.size) + ", " + moved.size() + " chests)");
+    }
+
+    /**
+     * Deletes a compacted segment. Some platforms refuse to delete a file that is still mapped;
+     * it is then removed on exit instead, or skipped and deleted on the next open, since the
+     * merged segment lists it as superseded.
+     */
+    private void deleteSegment(Segment segment) {
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            logger.warn("Could not delete compacted segment " + segment.file.getFileName() + ", deleting it on exit");
+            segment.file.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * Returns the body of a CREATE record with its recovered flag replaced.
+     */
+    private static byte[] rewriteRecovered(ByteBuffer record, boolean recovered) throws IOException {
+        int bodyLength = record.getInt(0);
+        DataInputStream in = new DataInputStream(new ByteBufferInputStream(record.slice(5, bodyLength)));
+        ChestData metadata = BinaryChestFormat.readMetadata(in);
+        metadata.setRecovered(recovered);
+        byte[] rest = in.readAllBytes();
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(bodyLength);
+        DataOutputStream out = new DataOutputStream(body);
+        BinaryChestFormat.writeMetadata(out, metadata);
+        out.write(rest);
+        return body.toByteArray();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Statistics
+
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Total size of all segment files in bytes.
+     */
+    public long getTotalBytes() {
+        lock.readLock().lock();
+        try {
+            return segments.stream().mapToLong(segment -> segment.size).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getStoredBytes() {
+        return getTotalBytes();
+    }
+
+    /**
+     * Bytes occupied by the CREATE records of live chests.
+     */
+    public long getLiveBytes() {
+        lock.readLock().lock();
+        try {
+            return segments.stream().mapToLong(segment -> segment.liveBytes).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getCompactionCount() {
+        return compactions.get();
+    }
+
+    /**
+     * Number of chests decoded from a memory-mapped segment.
+     */
+    public long getMappedReadCount() {
+        return mappedReads.get();
+    }
+
+    /**
+     * Number of chests read from the active segment through its file channel.
+     */
+    public long getChannelReadCount() {
+        return channelReads.get();
+    }
+
+    /**
+     * One-line summary for logging.
+     */
+    public String describe() {
+        return String.format(Locale.US, "segments=%d size=%s live=%s records=%d compactions=%d mappedReads=%d channelReads=%d",
+                getSegmentCount(), FormatConverter.formatBytes(getTotalBytes()),
+                FormatConverter.formatBytes(getLiveBytes()), appendedRecords.get(), getCompactionCount(),
+                getMappedReadCount(), getChannelReadCount());
+    }
+}
@@ -0,0 +1,308 @@
+package org.allaymc.deathchest.storage;
+
+import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.data.ChestSummary;
+import org.allaymc.deathchest.data.ItemData;
+import org.allaymc.deathchest.serialization.BinaryChestFormat;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Stores chests in an embedded H2 database file ({@code chests.mv.db}), one row per chest.
+ * <p>
+ * Metadata lives in indexed columns (chest ID, player, world and dimension, death time) so the
+ * database can be queried directly; the items are one binary column in the same encoding as the
+ * binary chest files. A save only inserts the player's new chests, updates the recovered flag of
+ * changed ones and deletes the removed ones, each as one batch of prepared statements inside a
+ * single transaction. Items of a chest never change, so they are written exactly once.
+ */
+public class SqlChestStore implements ChestStore {
+
+    public static final String NAME = "sql";
+
+    private static final String DATABASE_NAME = "chests";
+    private static final int CONNECTIONS = 4;
+
+    private static final String SCHEMA = """
+            CREATE TABLE IF NOT EXISTS chests (
+                chest_id UUID PRIMARY KEY,
+                player_id UUID NOT NULL,
+                player_name VARCHAR(64),
+                world_name VARCHAR(255),
+                dimension_id INT NOT NULL,
+                x DOUBLE PRECISION NOT NULL,
+                y DOUBLE PRECISION NOT NULL,
+                z DOUBLE PRECISION NOT NULL,
+                death_time BIGINT NOT NULL,
+                recovered BOOLEAN NOT NULL,
+                item_count INT NOT NULL,
+                items_compressed BOOLEAN NOT NULL,
+                items VARBINARY NOT NULL
+            )""";
+    private static final String[] INDEXES = {
+            "CREATE INDEX IF NOT EXISTS chests_player ON chests (player_id, death_time)",
+            "CREATE INDEX IF NOT EXISTS chests_world ON chests (world_name, dimension_id)",
+            "CREATE INDEX IF NOT EXISTS chests_death_time ON chests (death_time)"
+    };
+    private static final String METADATA_COLUMNS =
+            "chest_id, player_id, player_name, world_name, dimension_id, x, y, z, death_time, recovered, item_count";
+
+    private static final String SELECT_SUMMARIES = "SELECT " + METADATA_COLUMNS + " FROM chests";
+    private static final String SELECT_PLAYER = "SELECT " + METADATA_COLUMNS + ", items_compressed, items"
+            + " FROM chests WHERE player_id = ? ORDER BY death_time";
+    private static final String SELECT_PLAYER_STATES = "SELECT chest_id, recovered FROM chests WHERE player_id = ?";
+    private static final String INSERT = "INSERT INTO chests (" + METADATA_COLUMNS + ", items_compressed, items)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_RECOVERED = "UPDATE chests SET recovered = ? WHERE chest_id = ?";
+    private static final String DELETE = "DELETE FROM chests WHERE chest_id = ?";
+
+    private final Path folder;
+    private final boolean compress;
+    private final Logger logger;
+    private final BlockingQueue<Connection> connections = new ArrayBlockingQueue<>(CONNECTIONS);
+
+    /**
+     * @param folder   Folder holding the database file
+     * @param compress Whether item payloads of new chests are deflate-compressed
+     */
+    public SqlChestStore(Path folder, boolean compress, Logger logger) throws IOException {
+        this.folder = folder;
+        this.compress = compress;
+        this.logger = logger;
+        Files.createDirectories(folder);
+
+        // Connect through the driver directly, DriverManager does not see drivers of plugin class loaders
+        org.h2.Driver driver = new org.h2.Driver();
+        String url = "jdbc:h2:file:" + folder.resolve(DATABASE_NAME).toAbsolutePath() + ";DB_CLOSE_ON_EXIT=FALSE";
+        try {
+            for (int i = 0; i < CONNECTIONS; i++) {
+                connections.add(driver.connect(url, new Properties()));
+            }
+            try (Statement statement = connections.peek().createStatement()) {
+                statement.execute(SCHEMA);
+                for (String index : INDEXES) {
+                    statement.execute(index);
+                }
+            }
+        } catch (SQLException e) {
+            closeConnections();
+            throw new IOException("Failed to open the chest database in " + folder, e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void scan(Consumer<ChestSummary> consumer) throws IOException {
+        Connection connection = acquire();
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery(SELECT_SUMMARIES)) {
+            while (rows.next()) {
+                consumer.accept(readSummary(rows));
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to scan the chest database", e);
+        } finally {
+            release(connection);
+        }
+    }
+
+    @Override
+    public List<ChestData> load(UUID playerId) throws IOException {
+        Connection connection = acquire();
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_PLAYER)) {
+            statement.setObject(1, playerId);
+            List<ChestData> chests = new ArrayList<>();
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    ChestSummary summary = readSummary(rows);
+                    ChestData chest = new ChestData();
+                    chest.setChestId(summary.getChestId());
+                    chest.setPlayerId(summary.getPlayerId());
+                    chest.setPlayerName(summary.getPlayerName());
+                    chest.setWorldName(summary.getWorldName());
+                    chest.setDimensionId(summary.getDimensionId());
+                    chest.setX(summary.getX());
+                    chest.setY(summary.getY());
+                    chest.setZ(summary.getZ());
+                    chest.setDeathTime(summary.getDeathTime());
+                    chest.setRecovered(summary.isRecovered());
+                    chest.setItems(BinaryChestFormat.decodeItems(rows.getBytes("items"), summary.getItemCount(),
+                            rows.getBoolean("items_compressed")));
+                    chests.add(chest);
+                }
+            }
+            return chests;
+        } catch (SQLException e) {
+            throw new IOException("Failed to load chests of player " + playerId, e);
+        } finally {
+            release(connection);
+        }
+    }
+
+    @Override
+    public void save(UUID playerId, List<ChestData> chests) throws IOException {
+        Connection connection = acquire();
+        try {
+            connection.setAutoCommit(false);
+            Map<UUID, Boolean> stored = new HashMap<>();
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_PLAYER_STATES)) {
+                statement.setObject(1, playerId);
+                try (ResultSet rows = statement.executeQuery()) {
+                    while (rows.next()) {
+                        stored.put(rows.getObject(1, UUID.class), rows.getBoolean(2));
+                    }
+                }
+            }
+
+            try (PreparedStatement insert = connection.prepareStatement(INSERT);
+                 PreparedStatement update = connection.prepareStatement(UPDATE_RECOVERED);
+                 PreparedStatement delete = connection.prepareStatement(DELETE)) {
+                for (ChestData chest : chests) {
+                    Boolean recovered = stored.remove(chest.getChestId());
+                    if (recovered == null) {
+                        bindInsert(insert, chest);
+                        insert.addBatch();
+                    } else if (recovered != chest.isRecovered()) {
+                        update.setBoolean(1, chest.isRecovered());
+                        update.setObject(2, chest.getChestId());
+                        update.addBatch();
+                    }
+                }
+                // Whatever is left was recovered and dropped, or expired
+                for (UUID chestId : stored.keySet()) {
+                    delete.setObject(1, chestId);
+                    delete.addBatch();
+                }
+                insert.executeBatch();
+                update.executeBatch();
+                delete.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException | IOException | RuntimeException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackError) {
+                e.addSuppressed(rollbackError);
+            }
+            if (e instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Failed to save chests of player " + playerId, e);
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.warn("Failed to reset a chest database connection", e);
+            }
+            release(connection);
+        }
+    }
+
+    private void bindInsert(PreparedStatement insert, ChestData chest) throws SQLException, IOException {
+        List<ItemData> items = chest.getItems() != null ? chest.getItems() : List.of();
+        insert.setObject(1, chest.getChestId());
+        insert.setObject(2, chest.getPlayerId());
+        insert.setString(3, chest.getPlayerName());
+        insert.setString(4, chest.getWorldName());
+        insert.setInt(5, chest.getDimensionId());
+        insert.setDouble(6, chest.getX());
+        insert.setDouble(7, chest.getY());
+        insert.setDouble(8, chest.getZ());
+        insert.setLong(9, chest.getDeathTime());
+        insert.setBoolean(10, chest.isRecovered());
+        insert.setInt(11, items.size());
+        insert.setBoolean(12, compress);
+        insert.setBytes(13, BinaryChestFormat.encodeItems(items, compress));
+    }
+
+    private static ChestSummary readSummary(ResultSet row) throws SQLException {
+        ChestSummary summary = new ChestSummary();
+        summary.setChestId(row.getObject("chest_id", UUID.class));
+        summary.setPlayerId(row.getObject("player_id", UUID.class));
+        summary.setPlayerName(row.getString("player_name"));
+        summary.setWorldName(row.getString("world_name"));
+        summary.setDimensionId(row.getInt("dimension_id"));
+        summary.setX(row.getDouble("x"));
+        summary.setY(row.getDouble("y"));
+        summary.setZ(row.getDouble("z"));
+        summary.setDeathTime(row.getLong("death_time"));
+        summary.setRecovered(row.getBoolean("recovered"));
+        summary.setItemCount(row.getInt("item_count"));
+        return summary;
+    }
+
+    /**
+     * Writes committed transactions out of H2's buffers and forces the database file to disk.
+     */
+    @Override
+    public void sync() throws IOException {
+        Connection connection = acquire();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CHECKPOINT SYNC");
+        } catch (SQLException e) {
+            throw new IOException("Failed to sync the chest database", e);
+        } finally {
+            release(connection);
+        }
+    }
+
+    @Override
+    public long getStoredBytes() {
+        try {
+            Path file = folder.resolve(DATABASE_NAME + ".mv.db");
+            return Files.exists(file) ? Files.size(file) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        closeConnections();
+    }
+
+    private void closeConnections() {
+        Connection connection;
+        while ((connection = connections.poll()) != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.warn("Failed to close a chest database connection", e);
+            }
+        }
+    }
+
+    private Connection acquire() throws IOException {
+        try {
+            return connections.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a chest database connection", e);
+        }
+    }
+
+    private void release(Connection connection) {
+        connections.offer(connection);
+    }
+}
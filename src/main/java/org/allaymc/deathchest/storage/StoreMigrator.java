@@ -0,0 +1,106 @@
+package org.allaymc.deathchest.storage;
+
+import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.data.ItemData;
+import org.cloudburstmc.nbt.NbtMap;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Copies every player's chests from one store into another, one player at a time,
+ * so memory use does not grow with the amount of stored data.
+ */
+public final class StoreMigrator {
+
+    private static final int PROGRESS_INTERVAL = 1000;
+
+    /**
+     * @param players Players whose chests were copied
+     * @param chests  Copied chests
+     * @param failed  Players whose chests could not be read or written
+     * @param millis  Duration of the migration
+     */
+    public record Result(int players, long chests, int failed, long millis) {
+
+        public String describe() {
+            return "Copied " + chests + " chests of " + players + " players in " + millis + "ms"
+                    + (failed > 0 ? ", " + failed + " players failed (see the server log)" : "");
+        }
+    }
+
+    private StoreMigrator() {
+    }
+
+    /**
+     * @param pool     Item pool the source's item references point into, or null; items are copied with
+     *                 their NBT inline, so the target does not depend on the pool's reference counts
+     * @param progress Receives a progress line every few players
+     * @param errors   Receives each player that failed
+     */
+    public static Result migrate(ChestStore from, ChestStore to, ItemPool pool,
+                                 Consumer<String> progress, Consumer<PlayerFailure> errors) throws IOException {
+        long start = System.nanoTime();
+        // Only player IDs are kept in memory, chests are loaded one player at a time
+        Set<UUID> players = new TreeSet<>();
+        from.scan(summary -> players.add(summary.getPlayerId()));
+
+        int copied = 0;
+        int failed = 0;
+        long chests = 0;
+        for (UUID playerId : players) {
+            try {
+                List<ChestData> loaded = from.load(playerId);
+                if (pool != null) {
+                    resolvePoolRefs(loaded, pool);
+                }
+                to.save(playerId, loaded);
+                chests += loaded.size();
+                copied++;
+            } catch (IOException | RuntimeException e) {
+                failed++;
+                errors.accept(new PlayerFailure(playerId, e));
+            }
+            if ((copied + failed) % PROGRESS_INTERVAL == 0) {
+                progress.accept("Migrated " + (copied + failed) + "/" + players.size() + " players");
+            }
+        }
+        return new Result(copied, chests, failed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Replaces every item's pool reference with its NBT, so the chests no longer depend on the pool.
+     *
+     * @return whether any reference was resolved
+     * @throws IOException if a referenced item is missing from the pool
+     */
+    public static boolean resolvePoolRefs(List<ChestData> chests, ItemPool pool) throws IOException {
+        boolean resolved = false;
+        for (ChestData chest : chests) {
+            if (chest.getItems() == null) {
+                continue;
+            }
+            for (ItemData item : chest.getItems()) {
+                if (item.getNbtData() == null && item.getPoolRef() != null) {
+                    NbtMap nbt = pool.get(item.getPoolRef());
+                    if (nbt == null) {
+                        throw new IOException("Item " + item.getPoolRef() + " of chest " + chest.getChestId()
+                                + " is missing from the item pool");
+                    }
+                    item.setNbtData(nbt);
+                    item.setPoolRef(null);
+                    resolved = true;
+                }
+            }
+        }
+        return resolved;
+    }
+
+    public record PlayerFailure(UUID playerId, Exception error) {
+    }
+}
@@ -0,0 +1,46 @@
+package org.allaymc.deathchest.storage;
+
+/**
+ * Fixed set of monitor objects that keys are hashed onto.
+ * <p>
+ * Work on the same key is serialized, while work on different keys only contends when
+ * the keys share a stripe. Unlike one lock per key nothing has to be created or cleaned up.
+ */
+public final class StripedLocks {
+
+    private final Object[] locks;
+    private final int mask;
+
+    /**
+     * @param minStripes Minimum number of stripes, rounded up to a power of two
+     */
+    public StripedLocks(int minStripes) {
+        int stripes = Integer.highestOneBit(Math.max(1, minStripes - 1)) << 1;
+        this.locks = new Object[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new Object();
+        }
+        this.mask = stripes - 1;
+    }
+
+    /**
+     * Default stripe count for locks keyed by player, enough that concurrent players rarely collide.
+     */
+    public static StripedLocks forPlayers() {
+        return new StripedLocks(Math.max(64, Runtime.getRuntime().availableProcessors() * 8));
+    }
+
+    /**
+     * Returns the monitor to synchronize on for the key.
+     */
+    public Object get(Object key) {
+        int hash = key.hashCode();
+        // Spread the high bits, UUID hash codes are well mixed but other keys may not be
+        hash ^= hash >>> 16;
+        return locks[hash & mask];
+    }
+
+    public int size() {
+        return locks.length;
+    }
+}
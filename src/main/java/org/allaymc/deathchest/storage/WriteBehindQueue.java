@@ -0,0 +1,418 @@
+package org.allaymc.deathchest.storage;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Write-behind queue for player chest files.
+ * Callers only mark a player as dirty; a background thread performs the actual write.
+ * Repeated saves for the same player are merged into a single write while the player
+ * is still waiting in the queue.
+ * <p>
+ * Writes are group-committed: a writer thread takes every player that becomes dirty within a short
+ * window, writes them one after another and then syncs the store once for the whole group, so a
+ * mass death costs one sync instead of one per player. The future returned by {@link #markDirty}
+ * completes when the change is durable according to the configured {@link Durability}.
+ * <p>
+ * Writes are serialized per player through {@link StripedLocks}, so the writer threads and
+ * callers flushing on their own thread only wait for each other when they write the same player.
+ */
+public class WriteBehindQueue {
+
+    private static final long RETRY_DELAY_MS = 1000;
+    // Once the writer threads are gone, failed writes are retried inline this often before they are given up
+    private static final int INLINE_ATTEMPTS = 3;
+    private static final long INLINE_RETRY_DELAY_MS = 200;
+    private static final int MAX_BATCH = 256;
+
+    /**
+     * Forces written data to stable storage, see {@link ChestStore#sync()}.
+     */
+    @FunctionalInterface
+    public interface Syncer {
+        void sync() throws IOException;
+    }
+
+    /**
+     * A player's change that has not been written yet.
+     */
+    private static final class Pending {
+        final UUID playerId;
+        final long dirtySince;
+        final CompletableFuture<Void> durable = new CompletableFuture<>();
+        volatile Exception failure;
+
+        Pending(UUID playerId, long dirtySince) {
+            this.playerId = playerId;
+            this.dirtySince = dirtySince;
+        }
+    }
+
+    private final Logger logger;
+    private final Consumer<UUID> writer;
+    private final Syncer syncer;
+    private final Durability durability;
+    private final long windowNanos;
+    private final Map<UUID, Pending> dirtyPlayers = new ConcurrentHashMap<>();
+    // Players whose write has been taken from dirtyPlayers but has not returned yet
+    private final Set<UUID> writing = ConcurrentHashMap.newKeySet();
+    private final LinkedBlockingQueue<UUID> queue = new LinkedBlockingQueue<>();
+    private final StripedLocks writeLocks = StripedLocks.forPlayers();
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running = true;
+
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * @param logger       Logger used to report write failures
+     * @param writer       Performs the actual disk write for a player; called concurrently for different players
+     * @param syncer       Forces written data to disk, called according to {@code durability}
+     * @param windowMillis How long a writer thread collects further saves before writing a {@link Durability#BATCH} group
+     * @param threads      Number of background writer threads
+     */
+    public WriteBehindQueue(Logger logger, Consumer<UUID> writer, Syncer syncer, Durability durability,
+                            long windowMillis, int threads) {
+        this.logger = logger;
+        this.writer = writer;
+        this.syncer = syncer;
+        this.durability = durability;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, windowMillis));
+        for (int i = 0; i < Math.max(1, threads); i++) {
+            Thread thread = new Thread(this::run, "DeathChest-Writer-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+            this.threads.add(thread);
+        }
+    }
+
+    /**
+     * Marks a player's chests as changed. Never blocks on disk I/O.
+     *
+     * @return completes once the change is written and, unless durability is {@link Durability#NONE}, synced
+     */
+    public CompletableFuture<Void> markDirty(UUID playerId) {
+        Pending created = new Pending(playerId, System.nanoTime());
+        Pending pending = dirtyPlayers.putIfAbsent(playerId, created);
+        if (pending == null) {
+            queue.offer(playerId);
+            return created.durable;
+        }
+        coalesced.incrementAndGet();
+        return pending.durable;
+    }
+
+    /**
+     * Returns whether the player has changes that have not reached disk yet,
+     * including a write that is running right now.
+     */
+    public boolean isDirty(UUID playerId) {
+        return dirtyPlayers.containsKey(playerId) || writing.contains(playerId);
+    }
+
+    /**
+     * Writes the player's pending changes on the calling thread, if there are any.
+     */
+    public void flush(UUID playerId) {
+        writeInline(() -> List.of(playerId));
+    }
+
+    /**
+     * Writes every pending change on the calling thread, as one group.
+     */
+    public void flushAll() {
+        writeInline(() -> new ArrayList<>(dirtyPlayers.keySet()));
+    }
+
+    /**
+     * Writes the players on the calling thread. While the queue is running, a failed write is left to the
+     * writer threads; after {@link #close()} it is retried here a few times and then given up.
+     */
+    private void writeInline(Supplier<Collection<UUID>> players) {
+        for (int attempt = 1; ; attempt++) {
+            Collection<UUID> pending = players.get();
+            List<Pending> written = new ArrayList<>(pending.size());
+            boolean succeeded = true;
+            for (UUID playerId : pending) {
+                succeeded &= write(playerId, written);
+            }
+            succeeded &= commit(written);
+            if (succeeded || running) {
+                return;
+            }
+            if (attempt == INLINE_ATTEMPTS) {
+                pending.forEach(this::giveUp);
+                return;
+            }
+            try {
+                Thread.sleep(INLINE_RETRY_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Drops a player's change that could not be written after the queue was closed and fails its future.
+     */
+    private void giveUp(UUID playerId) {
+        Pending pending = dirtyPlayers.remove(playerId);
+        if (pending == null) {
+            return;
+        }
+        logger.error("Giving up writing chests for player " + playerId + " after " + INLINE_ATTEMPTS
+                + " attempts, their latest chest changes are lost");
+        Exception failure = pending.failure;
+        pending.durable.completeExceptionally(failure != null ? failure
+                : new IOException("Chests of player " + playerId + " could not be written"));
+    }
+
+    /**
+     * Stops the background threads and writes everything that is still pending.
+     */
+    public void close() {
+        running = false;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        try {
+            for (Thread thread : threads) {
+                thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushAll();
+        queue.clear();
+    }
+
+    private void run() {
+        while (running) {
+            List<UUID> batch = nextBatch();
+            if (batch.isEmpty()) {
+                continue;
+            }
+            List<Pending> written = new ArrayList<>(batch.size());
+            boolean succeeded = true;
+            for (UUID playerId : batch) {
+                succeeded &= write(playerId, written);
+            }
+            succeeded &= commit(written);
+            if (!succeeded && running) {
+                try {
+                    Thread.sleep(RETRY_DELAY_MS);
+                } catch (InterruptedException ignored) {
+                    // Shutting down, close() flushes the rest
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the next dirty player, then collects whoever else becomes dirty within the window.
+     */
+    private List<UUID> nextBatch() {
+        List<UUID> batch = new ArrayList<>();
+        try {
+            UUID first = queue.poll(100, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                return batch;
+            }
+            batch.add(first);
+            if (durability == Durability.BATCH) {
+                long deadline = System.nanoTime() + windowNanos;
+                long remaining;
+                while (batch.size() < MAX_BATCH && (remaining = deadline - System.nanoTime()) > 0) {
+                    UUID next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            }
+            queue.drainTo(batch, MAX_BATCH - batch.size());
+        } catch (InterruptedException e) {
+            // Shutting down; write what was already taken, close() flushes the rest
+        }
+        return batch;
+    }
+
+    /**
+     * @param written Receives the written change
+     * @return false if the write failed and the player was queued again
+     */
+    private boolean write(UUID playerId, List<Pending> written) {
+        synchronized (writeLocks.get(playerId)) {
+            // Marked as writing before the dirty mark is dropped, so isDirty never reports a gap
+            // in which the cache could evict the entry the writer is about to read
+            writing.add(playerId);
+            try {
+                Pending pending = dirtyPlayers.remove(playerId);
+                if (pending == null) {
+                    // Already written by an earlier flush
+                    return true;
+                }
+
+                try {
+                    writer.accept(playerId);
+                    if (durability == Durability.WRITE) {
+                        syncer.sync();
+                        syncs.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    logger.error("Failed to write chests for player: " + playerId, e);
+                    pending.failure = e;
+                    requeue(pending);
+                    return false;
+                }
+                written.add(pending);
+                return true;
+            } finally {
+                writing.remove(playerId);
+            }
+        }
+    }
+
+    /**
+     * Syncs a group of written changes if the durability asks for it, then acknowledges them all.
+     *
+     * @return false if the sync failed and the players were queued again
+     */
+    private boolean commit(List<Pending> written) {
+        if (written.isEmpty()) {
+            return true;
+        }
+        if (durability == Durability.BATCH) {
+            try {
+                syncer.sync();
+                syncs.incrementAndGet();
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                logger.error("Failed to sync " + written.size() + " chest writes", e);
+                for (Pending pending : written) {
+                    pending.failure = e;
+                    requeue(pending);
+                }
+                return false;
+            }
+        }
+
+        long now = System.nanoTime();
+        for (Pending pending : written) {
+            long waited = now - pending.dirtySince;
+            totalWaitNanos.addAndGet(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            pending.durable.complete(null);
+        }
+        writes.addAndGet(written.size());
+        batches.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Puts a change whose write or sync failed back into the queue, or attaches it to a newer change of the player.
+     * After {@link #close()} it is only marked dirty again, for {@link #writeInline} to retry.
+     */
+    private void requeue(Pending pending) {
+        Pending newer = dirtyPlayers.putIfAbsent(pending.playerId, pending);
+        if (newer == null) {
+            if (running) {
+                queue.offer(pending.playerId);
+            }
+        } else {
+            // The newer write contains this change as well
+            newer.durable.whenComplete((ignored, failure) -> {
+                if (failure == null) {
+                    pending.durable.complete(null);
+                } else {
+                    pending.durable.completeExceptionally(failure);
+                }
+            });
+        }
+    }
+
+    /**
+     * Number of players whose changes have not reached disk yet.
+     */
+    public int getQueueDepth() {
+        return dirtyPlayers.size();
+    }
+
+    public long getWriteCount() {
+        return writes.get();
+    }
+
+    /**
+     * Number of saves that were merged into an already pending write.
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Average time between a player becoming dirty and the write completing.
+     */
+    public double getAverageWaitMillis() {
+        long count = writes.get();
+        return count == 0 ? 0 : totalWaitNanos.get() / (double) count / 1_000_000.0;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Number of groups of writes that were committed together.
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * Average number of player writes per committed group.
+     */
+    public double getAverageBatchSize() {
+        long count = batches.get();
+        return count == 0 ? 0 : writes.get() / (double) count;
+    }
+
+    public long getSyncCount() {
+        return syncs.get();
+    }
+
+    /**
+     * One-line summary for logging.
+     */
+    public String describe() {
+        return String.format(Locale.US,
+                "durability=%s queue=%d writes=%d coalesced=%d batches=%d avgBatch=%.1f syncs=%d failures=%d avgWait=%.1fms maxWait=%.1fms",
+                durability.getName(), getQueueDepth(), getWriteCount(), getCoalescedCount(), getBatchCount(),
+                getAverageBatchSize(), getSyncCount(), getFailureCount(), getAverageWaitMillis(), getMaxWaitMillis());
+    }
+}
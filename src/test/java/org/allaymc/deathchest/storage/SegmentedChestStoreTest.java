@@ -0,0 +1,65 @@
+package org.allaymc.deathchest.storage;
+
+import org.allaymc.deathchest.data.ChestData;
+import org.allaymc.deathchest.data.ChestSummary;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.helpers.NOPLogger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class SegmentedChestStoreTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void segmentLeftOverByCompactionIsNotReplayed() throws IOException {
+        UUID playerId = UUID.randomUUID();
+        ChestData expired = chest(playerId, 1);
+        ChestData kept = chest(playerId, 2);
+
+        // A segment size of one byte seals the segment after every save
+        SegmentedChestStore store = new SegmentedChestStore(folder, 1, true, NOPLogger.NOP_LOGGER);
+        store.scan(summary -> { });
+        store.save(playerId, List.of(expired, kept));
+        store.save(playerId, List.of(kept));
+        Path victim = folder.resolve("segment-00000001.log");
+        byte[] victimBytes = Files.readAllBytes(victim);
+
+        store.compactIfNeeded();
+        assertEquals(1, store.getCompactionCount());
+        assertFalse(Files.exists(victim));
+        store.close();
+
+        // As if the server crashed before the compaction could delete it
+        Files.write(victim, victimBytes);
+
+        SegmentedChestStore reopened = new SegmentedChestStore(folder, 1, true, NOPLogger.NOP_LOGGER);
+        List<ChestSummary> live = new ArrayList<>();
+        reopened.scan(live::add);
+        assertEquals(List.of(kept.getChestId()), live.stream().map(ChestSummary::getChestId).toList());
+        assertEquals(List.of(kept.getChestId()), reopened.load(playerId).stream().map(ChestData::getChestId).toList());
+        assertFalse(Files.exists(victim));
+        reopened.close();
+    }
+
+    private static ChestData chest(UUID playerId, long deathTime) {
+        ChestData chest = new ChestData();
+        chest.setChestId(UUID.randomUUID());
+        chest.setPlayerId(playerId);
+        chest.setPlayerName("Steve");
+        chest.setWorldName("world");
+        chest.setDeathTime(deathTime);
+        chest.setItems(new ArrayList<>());
+        return chest;
+    }
+}